@@ -0,0 +1,125 @@
+package enterprises.iwakura.akasha.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+
+import enterprises.iwakura.akasha.AkashaConfiguration;
+import enterprises.iwakura.akasha.config.FileCacheConfiguration;
+import enterprises.iwakura.akasha.object.ReadContext;
+import io.javalin.Javalin;
+
+/**
+ * Compares throughput of serving a cached file as a plain input stream and as memory mapped buffers. Run with
+ * {@code ./gradlew benchmark}.
+ */
+public class ResponseThroughputBenchmark {
+
+    private static final long FILE_SIZE_BYTES = 512L * 1024 * 1024;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        var file = Files.createTempFile("akasha-throughput", ".bin");
+        writeRandomFile(file);
+
+        var fileCacheConfiguration = new FileCacheConfiguration();
+        var configuration = new AkashaConfiguration(new Gson()) {
+            @Override
+            public FileCacheConfiguration getFileCache() {
+                return fileCacheConfiguration;
+            }
+        };
+        var responseHandlerService = new ResponseHandlerService(configuration, new Gson());
+
+        var javalin = Javalin.create()
+            .get("/stream", ctx -> {
+                var readContext = new ReadContext(Files.newInputStream(file), "file.bin", FILE_SIZE_BYTES);
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx));
+            })
+            .get("/mapped", ctx -> {
+                var fileChannel = FileChannel.open(file);
+                var readContext = new ReadContext(Channels.newInputStream(fileChannel), "file.bin", FILE_SIZE_BYTES);
+                readContext.setFileChannel(fileChannel);
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx));
+            })
+            .start(0);
+
+        try (var httpClient = HttpClient.newHttpClient()) {
+            var baseUri = "http://localhost:%d".formatted(javalin.port());
+            // Warm up the page cache and JIT
+            download(httpClient, baseUri + "/stream");
+            download(httpClient, baseUri + "/mapped");
+
+            for (String path : new String[] {"/stream", "/mapped"}) {
+                long totalNanos = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    var startNanos = System.nanoTime();
+                    var bytesReceived = download(httpClient, baseUri + path);
+                    totalNanos += System.nanoTime() - startNanos;
+                    if (bytesReceived != FILE_SIZE_BYTES) {
+                        throw new IllegalStateException("Received %d of %d bytes from %s".formatted(bytesReceived,
+                            FILE_SIZE_BYTES, path));
+                    }
+                }
+                var megabytesPerSecond = (FILE_SIZE_BYTES * ITERATIONS / 1024.0 / 1024.0) / (totalNanos / 1e9);
+                System.out.printf("%s: %.0f MB/s%n", path, megabytesPerSecond);
+            }
+        } finally {
+            javalin.stop();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void writeRandomFile(Path file) throws IOException {
+        var buffer = ByteBuffer.allocate(1024 * 1024);
+        try (var fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < FILE_SIZE_BYTES; written += buffer.capacity()) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    buffer.putLong(written ^ buffer.position() * 0x9E3779B97F4A7C15L);
+                }
+                buffer.flip();
+                fileChannel.write(buffer);
+            }
+        }
+    }
+
+    private static long download(HttpClient httpClient, String uri) throws Exception {
+        var bytesReceived = new AtomicLong();
+        var bodyHandler = (HttpResponse.BodyHandler<Void>) responseInfo -> HttpResponse.BodySubscribers.fromSubscriber(
+            new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(List<ByteBuffer> item) {
+                    item.forEach(buffer -> bytesReceived.addAndGet(buffer.remaining()));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+        httpClient.send(HttpRequest.newBuilder(URI.create(uri)).build(), bodyHandler);
+        return bytesReceived.get();
+    }
+}
@@ -4,6 +4,8 @@ import enterprises.iwakura.akasha.controller.DataSourceController;
 import enterprises.iwakura.akasha.service.CacheService;
 import enterprises.iwakura.akasha.service.DataSourceService;
 import enterprises.iwakura.akasha.service.FileCacheService;
+import enterprises.iwakura.akasha.service.MetadataCacheService;
+import enterprises.iwakura.akasha.service.PrefetchService;
 import enterprises.iwakura.akasha.service.PrometheusService;
 import enterprises.iwakura.ganyu.Ganyu;
 import enterprises.iwakura.sigewine.core.annotations.Bean;
@@ -23,6 +25,8 @@ public class Akasha {
     private final PrometheusService prometheusService;
     private final FileCacheService fileCacheService;
     private final CacheService cacheService;
+    private final MetadataCacheService metadataCacheService;
+    private final PrefetchService prefetchService;
     private final Ganyu ganyu;
 
     public void start(String[] args) {
@@ -32,8 +36,10 @@ public class Akasha {
         ganyu.run();
         cacheService.init();
         fileCacheService.init();
+        metadataCacheService.init();
         dataSourceService.validateDataSources();
         dataSourceController.registerRoutes();
         prometheusService.init();
+        prefetchService.init();
     }
 }
@@ -4,9 +4,13 @@ import java.nio.file.Path;
 
 import com.google.gson.Gson;
 
+import enterprises.iwakura.akasha.config.CircuitBreakerConfiguration;
+import enterprises.iwakura.akasha.config.CompressionConfiguration;
 import enterprises.iwakura.akasha.config.DataSourceConfiguration;
 import enterprises.iwakura.akasha.config.FileCacheConfiguration;
 import enterprises.iwakura.akasha.config.JavalinConfiguration;
+import enterprises.iwakura.akasha.config.MetadataCacheConfiguration;
+import enterprises.iwakura.akasha.config.PrefetchConfiguration;
 import enterprises.iwakura.akasha.config.PrometheusConfiguration;
 import enterprises.iwakura.akasha.object.SftpDataSource;
 import enterprises.iwakura.jean.Jean;
@@ -39,6 +43,10 @@ public class AkashaConfiguration extends Jean {
         this.getJavalin();
         this.getFileCache();
         this.getDataSource();
+        this.getPrefetch();
+        this.getCompression();
+        this.getMetadataCache();
+        this.getCircuitBreaker();
         log.info("Akasha configurations initialized.");
     }
 
@@ -77,6 +85,42 @@ public class AkashaConfiguration extends Jean {
         return dataSourceConfiguration;
     }
 
+    /**
+     * {@link #getOrLoad(String, Class)}s and returns the {@link PrefetchConfiguration}.
+     *
+     * @return the prefetch configuration
+     */
+    public PrefetchConfiguration getPrefetch() {
+        return this.getOrLoad("prefetch", PrefetchConfiguration.class);
+    }
+
+    /**
+     * {@link #getOrLoad(String, Class)}s and returns the {@link CompressionConfiguration}.
+     *
+     * @return the compression configuration
+     */
+    public CompressionConfiguration getCompression() {
+        return this.getOrLoad("compression", CompressionConfiguration.class);
+    }
+
+    /**
+     * {@link #getOrLoad(String, Class)}s and returns the {@link MetadataCacheConfiguration}.
+     *
+     * @return the metadata cache configuration
+     */
+    public MetadataCacheConfiguration getMetadataCache() {
+        return this.getOrLoad("metadata_cache", MetadataCacheConfiguration.class);
+    }
+
+    /**
+     * {@link #getOrLoad(String, Class)}s and returns the {@link CircuitBreakerConfiguration}.
+     *
+     * @return the circuit breaker configuration
+     */
+    public CircuitBreakerConfiguration getCircuitBreaker() {
+        return this.getOrLoad("circuit_breaker", CircuitBreakerConfiguration.class);
+    }
+
     /**
      * {@link #getOrLoad(String, Class)}s and returns the {@link PrometheusConfiguration}.
      *
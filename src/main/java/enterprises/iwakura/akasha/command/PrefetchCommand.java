@@ -0,0 +1,25 @@
+package enterprises.iwakura.akasha.command;
+
+import enterprises.iwakura.akasha.service.PrefetchService;
+import enterprises.iwakura.ganyu.GanyuCommand;
+import enterprises.iwakura.ganyu.annotation.Command;
+import enterprises.iwakura.ganyu.annotation.DefaultCommand;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Bean
+@Slf4j
+@Command("prefetch")
+@RequiredArgsConstructor
+public class PrefetchCommand implements GanyuCommand {
+
+    private final PrefetchService prefetchService;
+
+    @DefaultCommand
+    public void prefetch(String dataSourceName, String prefix) {
+        if (prefetchService.prefetchPrefix(dataSourceName, prefix)) {
+            log.info("Prefetching files with prefix {} from data source {}...", prefix, dataSourceName);
+        }
+    }
+}
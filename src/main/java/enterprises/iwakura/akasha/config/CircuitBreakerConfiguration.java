@@ -0,0 +1,14 @@
+package enterprises.iwakura.akasha.config;
+
+import enterprises.iwakura.akasha.service.handler.CircuitBreaker;
+import lombok.Data;
+
+@Data
+public class CircuitBreakerConfiguration implements CircuitBreaker.Settings {
+
+    private boolean enabled = true;
+    private int failureThreshold = 5;
+    private long initialBackoffSeconds = 1;
+    private long maxBackoffSeconds = 60;
+
+}
@@ -0,0 +1,13 @@
+package enterprises.iwakura.akasha.config;
+
+import lombok.Data;
+
+@Data
+public class CompressionConfiguration {
+
+    private boolean enabled = true;
+    private int level = 6;
+    private long minSizeBytes = 1024; // 1 KB
+    private int maxConcurrent = 2;
+
+}
@@ -1,5 +1,6 @@
 package enterprises.iwakura.akasha.config;
 
+import enterprises.iwakura.akasha.object.EvictionPolicyType;
 import lombok.Data;
 
 @Data
@@ -7,10 +8,24 @@ public class FileCacheConfiguration {
 
     private boolean enabled = true;
     private boolean resetTtlOnAccess = true;
+    private boolean persistentIndexEnabled = true;
     private String directory = "./file_cache/";
     private long ttlSeconds = 3600; // 1 hour
     private long maxSizePerFileBytes = 10 * 1024 * 1024; // 10 MB
     private long maxTotalSizeBytes = 1000 * 1024 * 1024; // 1000 MB
+    private EvictionPolicyType evictionPolicy = EvictionPolicyType.W_TINY_LFU;
     private long httpCacheMaxAgeSeconds = 3600; // 1 hour
+    private boolean memoryTierEnabled = true;
+    private long memoryTierMaxSizePerFileBytes = 256 * 1024; // 256 KB
+    private long memoryTierMaxTotalSizeBytes = 64 * 1024 * 1024; // 64 MB
+    private int memoryTierPromotionHits = 2;
+    private boolean detachedFillEnabled = false;
+    private int detachedFillMaxConcurrent = 4;
+    private boolean revalidationEnabled = true;
+    private long revalidateAfterSeconds = 60; // 1 minute
+    private int revalidationMaxConcurrent = 4;
+    private boolean writeThroughEnabled = false;
+    private boolean blockCacheEnabled = false;
+    private long blockSizeBytes = 4 * 1024 * 1024; // 4 MB
 
 }
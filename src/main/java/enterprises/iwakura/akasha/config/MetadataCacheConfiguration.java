@@ -0,0 +1,13 @@
+package enterprises.iwakura.akasha.config;
+
+import lombok.Data;
+
+@Data
+public class MetadataCacheConfiguration {
+
+    private boolean enabled = true;
+    private long maxEntries = 100_000;
+    private long positiveTtlSeconds = 60;
+    private long negativeTtlSeconds = 30;
+
+}
@@ -0,0 +1,26 @@
+package enterprises.iwakura.akasha.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class PrefetchConfiguration {
+
+    private boolean enabled = true;
+    private boolean prefetchOnStartup = true;
+    private int maxConcurrent = 2;
+    private long maxBytesPerSecond = 10 * 1024 * 1024; // 10 MB/s
+    private int topAccessedFiles = 100;
+    private String topAccessedFilesPath = "./top_accessed_files.json";
+    private long topAccessedFilesSaveIntervalSeconds = 300; // 5 minutes
+    private List<Entry> entries = new ArrayList<>();
+
+    @Data
+    public static class Entry {
+
+        private String dataSourceName;
+        private List<String> paths = new ArrayList<>();
+    }
+}
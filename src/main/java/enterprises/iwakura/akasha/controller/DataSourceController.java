@@ -1,5 +1,6 @@
 package enterprises.iwakura.akasha.controller;
 
+import java.io.BufferedInputStream;
 import java.io.InputStream;
 
 import enterprises.iwakura.akasha.service.DataSourceService;
@@ -15,6 +16,8 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class DataSourceController {
 
+    public static final int RAW_UPLOAD_BUFFER_SIZE_BYTES = 64 * 1024; // 64 KB
+
     private final Javalin javalin;
     private final DataSourceService dataSourceService;
 
@@ -29,9 +32,30 @@ public class DataSourceController {
             dataSourceService.read(dataSourceName, PathUtils.normalizePath(filePath), ctx);
         });
 
+        javalin.head("/data-source/{dataSourceName}/<filepath>", ctx -> {
+            String dataSourceName = ctx.pathParam("dataSourceName");
+            String filePath = ctx.pathParam("filepath");
+
+            // SECURITY: Must normalize the file path to prevent directory traversal attacks
+            dataSourceService.head(dataSourceName, PathUtils.normalizePath(filePath), ctx);
+        });
+
         javalin.put("/data-source/{dataSourceName}/<filepath>", ctx -> {
             String dataSourceName = ctx.pathParam("dataSourceName");
             String filePath = ctx.pathParam("filepath");
+
+            // Raw bodies are streamed directly into the data source, without being spooled by multipart parsing
+            if (!ctx.isMultipartFormData() || "true".equals(ctx.queryParam("raw"))) {
+                try (InputStream inputStream = new BufferedInputStream(ctx.req().getInputStream(),
+                    RAW_UPLOAD_BUFFER_SIZE_BYTES)) {
+                    // SECURITY: Must normalize the file path to prevent directory traversal attacks
+                    // Content length is -1 for chunked bodies of unknown length
+                    dataSourceService.write(dataSourceName, PathUtils.normalizePath(filePath), inputStream,
+                        ctx.req().getContentLengthLong(), ctx);
+                }
+                return;
+            }
+
             UploadedFile file = ctx.uploadedFile("file");
 
             if (file == null) {
@@ -41,7 +65,8 @@ public class DataSourceController {
 
             try (InputStream inputStream = file.content()) {
                 // SECURITY: Must normalize the file path to prevent directory traversal attacks
-                dataSourceService.write(dataSourceName, PathUtils.normalizePath(filePath), inputStream, ctx);
+                dataSourceService.write(dataSourceName, PathUtils.normalizePath(filePath), inputStream, file.size(),
+                    ctx);
             }
         });
     }
@@ -8,6 +8,8 @@ import lombok.Setter;
 public class HandledException extends RuntimeException {
 
     private boolean notFound;
+    private boolean unavailable;
+    private long retryAfterSeconds;
 
     public HandledException(String message, Exception cause) {
         super(message, cause);
@@ -17,4 +19,22 @@ public class HandledException extends RuntimeException {
         this.notFound = true;
         return this;
     }
+
+    public HandledException asUnavailable(long retryAfterSeconds) {
+        this.unavailable = true;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Returns the HTTP status code the exception should be answered with.
+     *
+     * @return 404 if not found, 503 if unavailable, 400 otherwise
+     */
+    public int getStatusCode() {
+        if (notFound) {
+            return 404;
+        }
+        return unavailable ? 503 : 400;
+    }
 }
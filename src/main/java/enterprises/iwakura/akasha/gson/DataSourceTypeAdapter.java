@@ -12,6 +12,10 @@ import com.google.gson.JsonSerializer;
 
 import enterprises.iwakura.akasha.object.DataSource;
 import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.HttpDataSource;
+import enterprises.iwakura.akasha.object.LocalDataSource;
+import enterprises.iwakura.akasha.object.ReplicatedDataSource;
+import enterprises.iwakura.akasha.object.S3DataSource;
 import enterprises.iwakura.akasha.object.SftpDataSource;
 
 public class DataSourceTypeAdapter implements JsonDeserializer<DataSource> {
@@ -31,6 +35,18 @@ public class DataSourceTypeAdapter implements JsonDeserializer<DataSource> {
             case SFTP -> {
                 return context.deserialize(json, SftpDataSource.class);
             }
+            case LOCAL -> {
+                return context.deserialize(json, LocalDataSource.class);
+            }
+            case S3 -> {
+                return context.deserialize(json, S3DataSource.class);
+            }
+            case HTTP -> {
+                return context.deserialize(json, HttpDataSource.class);
+            }
+            case REPLICATED -> {
+                return context.deserialize(json, ReplicatedDataSource.class);
+            }
             default -> throw new JsonParseException("Unsupported DataSource type: " + type);
         }
     }
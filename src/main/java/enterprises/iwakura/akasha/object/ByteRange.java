@@ -0,0 +1,30 @@
+package enterprises.iwakura.akasha.object;
+
+import lombok.Data;
+
+@Data
+public class ByteRange {
+
+    private final long start;
+    private final long end; // Inclusive
+
+    /**
+     * Returns the number of bytes in the range.
+     *
+     * @return Length of the range
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Formats the range as a value of the Content-Range header.
+     *
+     * @param fileSizeBytes Size of the whole file
+     *
+     * @return Content-Range header value
+     */
+    public String toContentRange(long fileSizeBytes) {
+        return "bytes %d-%d/%d".formatted(start, end, fileSizeBytes);
+    }
+}
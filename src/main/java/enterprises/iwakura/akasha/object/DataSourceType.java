@@ -1,5 +1,9 @@
 package enterprises.iwakura.akasha.object;
 
 public enum DataSourceType {
-    SFTP;
+    SFTP,
+    LOCAL,
+    S3,
+    HTTP,
+    REPLICATED;
 }
@@ -0,0 +1,17 @@
+package enterprises.iwakura.akasha.object;
+
+public enum EvictionPolicyType {
+    /**
+     * New files are not cached once the cache is full.
+     */
+    NONE,
+    /**
+     * Least recently used files are evicted to make room for new files.
+     */
+    LRU,
+    /**
+     * Size-aware Window TinyLFU. New files are always admitted into a small recency window, files leaving the window
+     * stay cached only if they are accessed more frequently than the files they would evict.
+     */
+    W_TINY_LFU;
+}
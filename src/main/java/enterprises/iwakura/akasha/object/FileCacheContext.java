@@ -1,7 +1,10 @@
 package enterprises.iwakura.akasha.object;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
@@ -9,11 +12,24 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class FileCacheContext {
 
-    private final DataSource dataSource;
-    private final String filePath;
+    private final FileCacheKey key;
     private UUID fileId = UUID.randomUUID();
     private long fileSizeBytes;
-    private long lastAccessAtMillis = System.currentTimeMillis();
+
+    /**
+     * Size of the whole file in the data source, differs from the cached size for blocks.
+     */
+    private long remoteFileSizeBytes;
+    private long remoteLastModifiedMillis;
+
+    /**
+     * Strong entity tag of the file, derived from its attributes in the data source or from its content hash.
+     */
+    private String entityTag;
+    private volatile long lastAccessAtMillis = System.currentTimeMillis();
+    private volatile long lastValidatedAtMillis = System.currentTimeMillis();
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicBoolean revalidating = new AtomicBoolean();
 
     /**
      * Determine if the cache entry should be deleted based on its age and the provided TTL.
@@ -29,6 +45,55 @@ public class FileCacheContext {
         return ageMillis > ttlMillis;
     }
 
+    /**
+     * Determine if the cache entry should be revalidated against the data source.
+     *
+     * @param revalidateAfterSeconds Number of seconds the cache entry is considered fresh after being validated
+     *
+     * @return true if the cache entry should be revalidated, false otherwise
+     */
+    public boolean shouldRevalidate(long revalidateAfterSeconds) {
+        var ageMillis = System.currentTimeMillis() - lastValidatedAtMillis;
+        return ageMillis > revalidateAfterSeconds * 1000;
+    }
+
+    /**
+     * Checks if the specified metadata from the data source matches the cached file. Entity tags are compared as well
+     * if both are known, as data sources such as HTTP origins may change them without changing the modification time.
+     *
+     * @param fileMetadata File metadata
+     *
+     * @return true if the cached file is up-to-date, false otherwise
+     */
+    public boolean matches(FileMetadata fileMetadata) {
+        if (entityTag != null && fileMetadata.getEntityTag() != null && !entityTag.equals(fileMetadata.getEntityTag())) {
+            return false;
+        }
+        return fileMetadata.getFileSizeBytes() == remoteFileSizeBytes
+            && fileMetadata.getLastModifiedMillis() == remoteLastModifiedMillis;
+    }
+
+    /**
+     * Returns the entity tag of the representation of the file with the specified content encoding.
+     *
+     * @param contentEncoding Content encoding, null for the file as is
+     *
+     * @return Quoted entity tag, or null if unknown
+     */
+    public String getEntityTag(String contentEncoding) {
+        if (entityTag == null || contentEncoding == null) {
+            return entityTag;
+        }
+        return ConditionalRequestUtils.createEntityTag(entityTag, contentEncoding);
+    }
+
+    /**
+     * Updates the last validation time to the current time.
+     */
+    public void updateLastValidatedTime() {
+        this.lastValidatedAtMillis = System.currentTimeMillis();
+    }
+
     /**
      * Updates the last access time to the current time.
      */
@@ -0,0 +1,98 @@
+package enterprises.iwakura.akasha.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FileCacheKey {
+
+    private final String dataSourceName;
+    private final String filePath;
+
+    /**
+     * Index of the cached block of the file, null if the whole file is cached.
+     */
+    private final Integer blockIndex;
+
+    /**
+     * Content encoding of the cached variant of the file, null if the file is cached as is.
+     */
+    private final String contentEncoding;
+
+    public FileCacheKey(String dataSourceName, String filePath) {
+        this(dataSourceName, filePath, null, null);
+    }
+
+    /**
+     * Creates a file cache key for the specified data source and file path.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     *
+     * @return File cache key
+     */
+    public static FileCacheKey of(DataSource dataSource, String filePath) {
+        return new FileCacheKey(dataSource.getName(), filePath);
+    }
+
+    /**
+     * Creates a file cache key for the specified block of this file.
+     *
+     * @param blockIndex Block index
+     *
+     * @return File cache key of the block
+     */
+    public FileCacheKey withBlockIndex(int blockIndex) {
+        return new FileCacheKey(dataSourceName, filePath, blockIndex, null);
+    }
+
+    /**
+     * Creates a file cache key for the variant of this file with the specified content encoding.
+     *
+     * @param contentEncoding Content encoding
+     *
+     * @return File cache key of the variant
+     */
+    public FileCacheKey withContentEncoding(String contentEncoding) {
+        return new FileCacheKey(dataSourceName, filePath, null, contentEncoding);
+    }
+
+    /**
+     * Creates a file cache key for the whole file this key belongs to, without its block index and content encoding.
+     *
+     * @return File cache key of the whole file
+     */
+    public FileCacheKey toFileKey() {
+        return new FileCacheKey(dataSourceName, filePath);
+    }
+
+    /**
+     * Checks if this key belongs to a block of a file.
+     *
+     * @return true if this key belongs to a block, false if it belongs to the whole file
+     */
+    public boolean isBlock() {
+        return blockIndex != null;
+    }
+
+    /**
+     * Checks if this key belongs to an encoded variant of a file.
+     *
+     * @return true if this key belongs to an encoded variant, false otherwise
+     */
+    public boolean isVariant() {
+        return contentEncoding != null;
+    }
+
+    /**
+     * Checks if this key belongs to the same file as the specified key, ignoring blocks and variants.
+     *
+     * @param other File cache key
+     *
+     * @return true if both keys belong to the same file, false otherwise
+     */
+    public boolean isSameFile(FileCacheKey other) {
+        return dataSourceName.equals(other.dataSourceName) && filePath.equals(other.filePath);
+    }
+}
@@ -0,0 +1,12 @@
+package enterprises.iwakura.akasha.object;
+
+import lombok.Data;
+
+@Data
+public class FileMetadata {
+
+    private final long fileSizeBytes;
+    private final long lastModifiedMillis;
+    private String entityTag;
+    private boolean directory;
+}
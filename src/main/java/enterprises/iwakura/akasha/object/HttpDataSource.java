@@ -0,0 +1,20 @@
+package enterprises.iwakura.akasha.object;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Data;
+
+@Data
+public class HttpDataSource implements DataSource {
+
+    private final DataSourceType type = DataSourceType.HTTP;
+    private String name;
+    private String baseUrl;
+    private Map<String, String> headers = new HashMap<>();
+    private boolean http2Enabled = true;
+    private long connectTimeoutSeconds = 10;
+    private long requestTimeoutSeconds = 60;
+    private Permission permission = new Permission();
+
+}
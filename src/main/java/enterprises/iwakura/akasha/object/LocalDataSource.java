@@ -0,0 +1,13 @@
+package enterprises.iwakura.akasha.object;
+
+import lombok.Data;
+
+@Data
+public class LocalDataSource implements DataSource {
+
+    private final DataSourceType type = DataSourceType.LOCAL;
+    private String name;
+    private String rootDirectory;
+    private Permission permission = new Permission();
+
+}
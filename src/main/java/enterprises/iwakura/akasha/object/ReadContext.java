@@ -1,11 +1,12 @@
 package enterprises.iwakura.akasha.object;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
-@AllArgsConstructor
 @Data
 public class ReadContext {
 
@@ -13,4 +14,50 @@ public class ReadContext {
     private final String fileName;
     private final long fileSizeBytes;
 
+    /**
+     * Last modification time of the file in the data source, 0 if unknown.
+     */
+    private long lastModifiedMillis;
+
+    /**
+     * Strong entity tag of the file, quoted, null if unknown.
+     */
+    private String entityTag;
+
+    /**
+     * Content encoding of the input stream, null if the file is read as is.
+     */
+    private String contentEncoding;
+
+    /**
+     * File channel of a local file backing the input stream, if any. Allows the file to be sent without copying it
+     * through the heap.
+     */
+    private FileChannel fileChannel;
+
+    /**
+     * Buffer holding the whole file backing the input stream, if any.
+     */
+    private ByteBuffer byteBuffer;
+
+    /**
+     * Opens ranges of the file without reading the preceding bytes, if supported.
+     */
+    private RangeOpener rangeOpener;
+
+    public ReadContext(InputStream inputStream, String fileName, long fileSizeBytes) {
+        this.inputStream = inputStream;
+        this.fileName = fileName;
+        this.fileSizeBytes = fileSizeBytes;
+    }
+
+    /**
+     * Opens a range of a file.
+     */
+    @FunctionalInterface
+    public interface RangeOpener {
+
+        InputStream open(long offset, long length) throws IOException;
+
+    }
 }
@@ -0,0 +1,39 @@
+package enterprises.iwakura.akasha.object;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ReplicatedDataSource implements DataSource {
+
+    private final DataSourceType type = DataSourceType.REPLICATED;
+    private String name;
+    private List<DataSource> members = new ArrayList<>();
+    private int writeQuorum = 0; // 0 means a majority of members
+    private Hedging hedging = new Hedging();
+    private Permission permission = new Permission();
+
+    /**
+     * Returns the number of members a write has to succeed on.
+     *
+     * @return Write quorum, a majority of members if not configured
+     */
+    public int getEffectiveWriteQuorum() {
+        return writeQuorum > 0 ? Math.min(writeQuorum, members.size()) : members.size() / 2 + 1;
+    }
+
+    /**
+     * Settings of hedged requests, which are sent to the next fastest member when the fastest one does not respond in
+     * time.
+     */
+    @Data
+    public static class Hedging {
+
+        private boolean enabled = true;
+        private double percentile = 95;
+        private long minDelayMillis = 20;
+        private long maxDelayMillis = 1000;
+    }
+}
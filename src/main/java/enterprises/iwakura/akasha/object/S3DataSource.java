@@ -0,0 +1,31 @@
+package enterprises.iwakura.akasha.object;
+
+import lombok.Data;
+
+@Data
+public class S3DataSource implements DataSource {
+
+    private final DataSourceType type = DataSourceType.S3;
+    private String name;
+    private String endpoint;
+    private String region = "us-east-1";
+    private String bucket;
+    private String keyPrefix = "";
+    private String accessKeyId;
+    private String secretAccessKey;
+    private boolean pathStyleAccess = true;
+    private long connectTimeoutSeconds = 10;
+    private long requestTimeoutSeconds = 60;
+    private MultipartUpload multipartUpload = new MultipartUpload();
+    private Permission permission = new Permission();
+
+    /**
+     * Settings of uploading large files as parts sent concurrently.
+     */
+    @Data
+    public static class MultipartUpload {
+
+        private int partSizeBytes = 16 * 1024 * 1024; // 16 MB
+        private int maxInFlightParts = 4;
+    }
+}
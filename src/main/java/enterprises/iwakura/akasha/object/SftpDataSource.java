@@ -15,6 +15,10 @@ public class SftpDataSource implements DataSource {
     private int port;
     private String username;
     private String password;
+    private int writeChunkSizeBytes = 32 * 1024; // 32 KB
+    private int maxUnconfirmedWrites = 64;
+    private Pool pool = new Pool();
+    private ParallelDownload parallelDownload = new ParallelDownload();
     private Permission permission = new Permission();
 
     /**
@@ -36,4 +40,31 @@ public class SftpDataSource implements DataSource {
         source.getPermission().getEntries().add(entry);
         return source;
     }
+
+    /**
+     * Settings of the pool of SSH connections and SFTP channels of the data source.
+     */
+    @Data
+    public static class Pool {
+
+        private int minSessions = 1;
+        private int maxSessions = 4;
+        private int maxChannelsPerSession = 8;
+        private int minIdleChannels = 1;
+        private long borrowTimeoutSeconds = 30;
+        private long idleTimeoutSeconds = 300;
+        private long validateAfterIdleSeconds = 30;
+    }
+
+    /**
+     * Settings of downloading large files as segments over multiple SFTP channels concurrently.
+     */
+    @Data
+    public static class ParallelDownload {
+
+        private boolean enabled = true;
+        private long minSizeBytes = 64 * 1024 * 1024; // 64 MB
+        private int segmentSizeBytes = 4 * 1024 * 1024; // 4 MB
+        private int maxInFlightSegments = 4;
+    }
 }
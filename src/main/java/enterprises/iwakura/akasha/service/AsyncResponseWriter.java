@@ -0,0 +1,203 @@
+package enterprises.iwakura.akasha.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.eclipse.jetty.server.HttpOutput;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the byte buffers of publishers into a servlet output stream in non-blocking mode, one publisher after
+ * another. A byte buffer is only written once the output is ready for it, and a replacement is requested from the
+ * publisher once it is handed over, so a slow client holds back the publisher while the next byte buffer is read ahead
+ * as the previous one is sent. No thread is blocked while waiting for the client or the publisher.
+ */
+@Slf4j
+public class AsyncResponseWriter implements WriteListener {
+
+    public static final int PREFETCH_BUFFERS = 2;
+
+    private final ServletOutputStream outputStream;
+    private final Deque<Flow.Publisher<ByteBuffer>> publishers;
+    private final Deque<ByteBuffer> pendingBuffers = new ArrayDeque<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private boolean publisherCompleted = true;
+    private boolean draining;
+    private boolean finished;
+
+    private AsyncResponseWriter(ServletOutputStream outputStream, List<Flow.Publisher<ByteBuffer>> publishers) {
+        this.outputStream = outputStream;
+        this.publishers = new ArrayDeque<>(publishers);
+    }
+
+    /**
+     * Writes the byte buffers of the publishers into the output stream. The request must be in asynchronous mode.
+     *
+     * @param outputStream Servlet output stream, not written to by anything else
+     * @param publishers   Publishers written in order, each subscribed to once the previous one completed
+     *
+     * @return Future completed once all byte buffers were written, or completed exceptionally if a publisher or the
+     * client failed, in which case the remaining publishers are cancelled
+     */
+    public static CompletableFuture<Void> write(ServletOutputStream outputStream,
+        List<Flow.Publisher<ByteBuffer>> publishers) {
+        var asyncResponseWriter = new AsyncResponseWriter(outputStream, publishers);
+        // Output stream calls onWritePossible once it is ready
+        outputStream.setWriteListener(asyncResponseWriter);
+        return asyncResponseWriter.completion;
+    }
+
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    /**
+     * Writes pending byte buffers while the output stream is ready, subscribing to the next publisher once the
+     * current one completed.
+     */
+    private synchronized void drain() {
+        if (draining) {
+            // Publishers signalling from within a request are picked up by the outer loop
+            return;
+        }
+        draining = true;
+        try {
+            while (!finished && outputStream.isReady()) {
+                var buffer = pendingBuffers.poll();
+                if (buffer != null) {
+                    write(buffer);
+                    subscription.request(1);
+                    continue;
+                }
+
+                if (!publisherCompleted) {
+                    // Waits for the next byte buffer of the current publisher
+                    return;
+                }
+
+                var publisher = publishers.poll();
+                if (publisher == null) {
+                    finished = true;
+                    completion.complete(null);
+                    return;
+                }
+                publisherCompleted = false;
+                publisher.subscribe(new BufferSubscriber());
+            }
+        } catch (IOException | RuntimeException exception) {
+            fail(exception);
+        } finally {
+            draining = false;
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (outputStream instanceof HttpOutput httpOutput) {
+            // Buffers, including memory mapped ones, are handed over to Jetty without being copied
+            httpOutput.write(buffer);
+        } else if (buffer.hasArray()) {
+            outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            var bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Fails the write, cancelling the current publisher and the publishers not written yet, so they release what
+     * they hold.
+     *
+     * @param throwable Failure
+     */
+    private synchronized void fail(Throwable throwable) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        pendingBuffers.clear();
+        if (subscription != null && !publisherCompleted) {
+            subscription.cancel();
+        }
+
+        Flow.Publisher<ByteBuffer> publisher;
+        while ((publisher = publishers.poll()) != null) {
+            publisher.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.cancel();
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+        }
+        completion.completeExceptionally(throwable);
+    }
+
+    /**
+     * Subscriber of the publisher currently being written.
+     */
+    private class BufferSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (AsyncResponseWriter.this) {
+                if (finished) {
+                    subscription.cancel();
+                    return;
+                }
+                AsyncResponseWriter.this.subscription = subscription;
+            }
+            subscription.request(PREFETCH_BUFFERS);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            synchronized (AsyncResponseWriter.this) {
+                if (finished) {
+                    return;
+                }
+                pendingBuffers.add(item);
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (AsyncResponseWriter.this) {
+                publisherCompleted = true;
+            }
+            drain();
+        }
+    }
+}
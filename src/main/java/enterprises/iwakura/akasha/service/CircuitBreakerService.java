@@ -0,0 +1,70 @@
+package enterprises.iwakura.akasha.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import enterprises.iwakura.akasha.AkashaConfiguration;
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.service.handler.CircuitBreaker;
+import enterprises.iwakura.akasha.service.handler.CircuitBreakingDataSourceHandler;
+import enterprises.iwakura.akasha.service.handler.DataSourceHandler;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Maintains a circuit breaker per data source, so unavailable data sources fail fast instead of every request waiting
+ * for its own connection attempt to time out.
+ */
+@Bean
+@Slf4j
+@RequiredArgsConstructor
+public class CircuitBreakerService {
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final AkashaConfiguration configuration;
+    private final PrometheusService prometheusService;
+
+    /**
+     * Wraps the data source handler, so its calls are guarded by the circuit breaker of the data source, if circuit
+     * breakers are enabled.
+     *
+     * @param handler Data source handler
+     * @param <T>     Data source type
+     *
+     * @return Guarded data source handler
+     */
+    public <T extends DataSource> DataSourceHandler<T> guard(DataSourceHandler<T> handler) {
+        if (!configuration.getCircuitBreaker().isEnabled()) {
+            return handler;
+        }
+        return new CircuitBreakingDataSourceHandler<>(handler, this::getCircuitBreaker, dataSource ->
+            prometheusService.getCollectors().getCircuitBreakerRejections().labelValues(dataSource.getName()).inc());
+    }
+
+    /**
+     * Returns the circuit breaker of the data source, creating it if needed.
+     *
+     * @param dataSource Data source
+     *
+     * @return Circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(DataSource dataSource) {
+        return circuitBreakers.computeIfAbsent(dataSource.getName(), name -> {
+            var circuitBreaker = new CircuitBreaker(name, configuration.getCircuitBreaker(),
+                () -> publishState(name));
+            prometheusService.getCollectors().getCircuitBreakerState().labelValues(name)
+                .set(CircuitBreaker.State.CLOSED.ordinal());
+            return circuitBreaker;
+        });
+    }
+
+    private void publishState(String dataSourceName) {
+        var circuitBreaker = circuitBreakers.get(dataSourceName);
+        if (circuitBreaker != null) {
+            prometheusService.getCollectors().getCircuitBreakerState().labelValues(dataSourceName)
+                .set(circuitBreaker.getState().ordinal());
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package enterprises.iwakura.akasha.service;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.jetbrains.annotations.NotNull;
 
 import enterprises.iwakura.akasha.AkashaConfiguration;
 import enterprises.iwakura.akasha.exception.HandledException;
 import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.FileMetadata;
 import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.service.handler.AsyncDataSourceHandler;
+import enterprises.iwakura.akasha.service.handler.BlockingDataSourceHandlerAdapter;
 import enterprises.iwakura.akasha.service.handler.DataSourceHandler;
 import enterprises.iwakura.sigewine.core.annotations.Bean;
 import io.javalin.http.Context;
@@ -21,9 +29,15 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class DataSourceService {
 
+    // Runs blocking calls of data source handlers off request threads
+    private final ExecutorService dataSourceExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("DataSource-", 0).factory());
+
     private final AkashaConfiguration configuration;
     private final PermissionService permissionService;
     private final FileCacheService fileCacheService;
+    private final MetadataCacheService metadataCacheService;
+    private final CircuitBreakerService circuitBreakerService;
     private final ResponseHandlerService responseHandlerService;
     private final PrometheusService prometheusService;
 
@@ -70,7 +84,8 @@ public class DataSourceService {
 
     /**
      * Reads a file from the specified data source and file path, verifying permissions, utilizing caching and
-     * then responding via the provided Javalin context with input stream and appropriate headers.
+     * then responding via the provided Javalin context with the file content and appropriate headers. The request is
+     * handled asynchronously, so no request thread is held while the file is opened and its content is written.
      *
      * @param dataSourceName Data source name
      * @param filePath       File path
@@ -84,33 +99,166 @@ public class DataSourceService {
 
             if (optionalDataSourceHandler.isPresent()) {
                 var handler = optionalDataSourceHandler.get();
-                ReadContext readContext;
+
+                ctx.future(() -> openReadContext(handler, dataSource, filePath, ctx)
+                    .thenCompose(readContext -> readContext != null
+                        ? responseHandlerService.respondWithReadContext(readContext, ctx)
+                        : CompletableFuture.<Void>completedFuture(null))
+                    .exceptionally(throwable -> {
+                        var exception = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable;
+                        if (exception instanceof HandledException handledException) {
+                            respondWithHandledException(ctx, handledException, "Error reading from data source: " + handledException.getMessage());
+                            log.warn("Handled error reading data source: {} with file path: {}: {}", dataSourceName,
+                                filePath, handledException.getMessage());
+                        } else {
+                            responseHandlerService.respondWithMessage(ctx, 500, "An unexpected error occurred while reading the file");
+                            log.error("Error reading data source: {} with file path: {}", dataSourceName, filePath,
+                                exception);
+                        }
+                        return null;
+                    })
+                    .whenComplete((ignored, throwable) -> prometheusService.getCollectors().getReads()
+                        .labelValues(dataSource.getName(), filePath).inc()));
+            } else {
+                responseHandlerService.respondWithMessage(ctx, 500, "No handler found for data source type: " + dataSource.getType());
+                log.error("[{}] [{}] BUG! No handler found for data source type: {}", dataSourceName, ctx.ip(), dataSource.getType());
+            }
+        }
+    }
+
+    /**
+     * Opens a file from the data source, utilizing caching. Conditional requests for files that did not change are
+     * answered right away.
+     *
+     * @param handler    Data source handler
+     * @param dataSource Data source
+     * @param filePath   File path
+     * @param ctx        Javalin context
+     * @param <T>        Data source type
+     *
+     * @return Future of the read context to respond with, or of null if the request was answered
+     */
+    private <T extends DataSource> CompletableFuture<ReadContext> openReadContext(DataSourceHandler<T> handler,
+        T dataSource, String filePath, Context ctx) {
+        // Requests for files recently found missing are answered without reaching the data source
+        if (metadataCacheService.isMissing(dataSource, filePath)) {
+            return CompletableFuture.failedFuture(new HandledException("No such file", null).asNotFound());
+        }
+
+        if (!handler.isCacheable()) {
+            return loadReadContext(toAsyncDataSourceHandler(handler), dataSource, filePath)
+                .thenApply(readContext -> {
+                    log.info("[{}] [{}] Reading file {} of size {} bytes", dataSource.getName(), ctx.ip(), filePath,
+                        readContext.getFileSizeBytes());
+                    return readContext;
+                });
+        }
+
+        // File cache reads the data source through blocking loaders, so it is run off the request thread
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return openCachedReadContext(handler, dataSource, filePath, ctx);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, dataSourceExecutor);
+    }
+
+    /**
+     * Opens a file from the data source through the file cache.
+     *
+     * @param handler    Data source handler
+     * @param dataSource Data source
+     * @param filePath   File path
+     * @param ctx        Javalin context
+     * @param <T>        Data source type
+     *
+     * @return Read context to respond with, or null if the request was answered
+     *
+     * @throws IOException If opening the file failed
+     */
+    private <T extends DataSource> ReadContext openCachedReadContext(DataSourceHandler<T> handler, T dataSource,
+        String filePath, Context ctx) throws IOException {
+        var dataSourceName = dataSource.getName();
+        ReadContext readContext;
+
+        FileCacheService.ReadContextLoader readContextLoader = () -> loadReadContext(handler, dataSource, filePath);
+        var contentEncoding = responseHandlerService.negotiateContentEncoding(ctx, filePath);
+        var fileCacheContext = fileCacheService.getFileCacheContext(dataSource, filePath,
+            () -> handler.stat(dataSource, filePath), readContextLoader);
+        // Conditional requests for cached files are answered from the cached metadata alone
+        if (fileCacheContext.isPresent() && responseHandlerService.respondWithNotModified(ctx,
+            fileCacheContext.get().getEntityTag(contentEncoding),
+            fileCacheContext.get().getRemoteLastModifiedMillis())) {
+            log.info("[{}] [{}] Cache file {} was not modified", dataSourceName, ctx.ip(), filePath);
+            return null;
+        }
+
+        var fileCacheReadContext = fileCacheContext.flatMap(context -> contentEncoding != null
+            ? fileCacheService.openCompressedVariant(context, filePath, contentEncoding)
+            .or(() -> fileCacheService.openCacheFile(context, filePath))
+            : fileCacheService.openCacheFile(context, filePath));
+        if (fileCacheContext.isEmpty() && isConditionalRequest(ctx)) {
+            // Conditional requests for files that are not cached are answered from the file metadata
+            var fileMetadata = metadataCacheService.stat(dataSource, filePath,
+                () -> handler.stat(dataSource, filePath));
+            if (!fileMetadata.isDirectory() && responseHandlerService.respondWithNotModified(ctx,
+                fileMetadata.getEntityTag(), fileMetadata.getLastModifiedMillis())) {
+                log.info("[{}] [{}] File {} was not modified", dataSourceName, ctx.ip(), filePath);
+                return null;
+            }
+        }
+
+        if (fileCacheReadContext.isPresent()) {
+            readContext = fileCacheReadContext.get();
+            log.info("[{}] [{}] Loading cache file {} of size {} bytes", dataSourceName, ctx.ip(), filePath,
+                readContext.getFileSizeBytes());
+        } else {
+            readContext = fileCacheService.readThroughCache(dataSource, filePath, readContextLoader);
+            log.info("[{}] [{}] Downloading file {} of size {} bytes", dataSourceName, ctx.ip(), filePath,
+                readContext.getFileSizeBytes());
+        }
+        return readContext;
+    }
+
+    /**
+     * Responds with the headers of a file from the specified data source and file path, verifying permissions, without
+     * sending its content. Metadata is served from the metadata cache when possible, so the data source is not reached.
+     *
+     * @param dataSourceName Data source name
+     * @param filePath       File path
+     * @param ctx            Javalin context
+     */
+    public void head(String dataSourceName, String filePath, Context ctx) {
+        var dataSource = getDataSource(dataSourceName, filePath, false, ctx);
+
+        if (dataSource != null) {
+            var optionalDataSourceHandler = findDataSourceHandler(dataSource);
+
+            if (optionalDataSourceHandler.isPresent()) {
+                var handler = optionalDataSourceHandler.get();
 
                 try {
-                    var fileCacheReadContext = fileCacheService.getFileInputStreamFromCache(dataSource, filePath);
-                    if (fileCacheReadContext.isPresent()) {
-                        readContext = fileCacheReadContext.get();
-                        log.info("[{}] [{}] Loading cache file {} of size {} bytes", dataSourceName, ctx.ip(), filePath,
-                            readContext.getFileSizeBytes());
-                    } else {
-                        readContext = handler.read(dataSource, filePath);
-                        log.info("[{}] [{}] Downloading file {} of size {} bytes", dataSourceName, ctx.ip(), filePath,
-                            readContext.getFileSizeBytes());
-                        readContext.setInputStream(
-                            fileCacheService.cacheFileInputStream(dataSource, filePath, readContext));
+                    var fileMetadata = metadataCacheService.stat(dataSource, filePath,
+                        () -> handler.stat(dataSource, filePath));
+                    if (fileMetadata.isDirectory()) {
+                        throw new HandledException("Not a file", null).asNotFound();
                     }
-
-                    responseHandlerService.respondWithReadContext(readContext, ctx);
+                    if (responseHandlerService.respondWithNotModified(ctx, fileMetadata.getEntityTag(),
+                        fileMetadata.getLastModifiedMillis())) {
+                        return;
+                    }
+                    responseHandlerService.respondWithFileMetadata(ctx, filePath, fileMetadata);
                 } catch (HandledException exception) {
-                    responseHandlerService.respondWithMessage(ctx, exception.isNotFound() ? 404 : 400, "Error reading from data source: " + exception.getMessage());
-                    log.warn("Handled error reading data source: {} with file path: {}: {}", dataSourceName,
-                        filePath, exception.getMessage());
+                    respondWithHandledException(ctx, exception, "Error reading from data source: " + exception.getMessage());
+                    log.warn("Handled error reading metadata from data source: {} with file path: {}: {}",
+                        dataSourceName, filePath, exception.getMessage());
                 } catch (Exception exception) {
                     responseHandlerService.respondWithMessage(ctx, 500, "An unexpected error occurred while reading the file");
-                    log.error("Error reading data source: {} with file path: {}", dataSourceName, filePath,
-                        exception);
-                } finally {
-                    prometheusService.getCollectors().getReads().labelValues(dataSource.getName(), filePath).inc();
+                    log.error("Error reading metadata from data source: {} with file path: {}", dataSourceName,
+                        filePath, exception);
                 }
             } else {
                 responseHandlerService.respondWithMessage(ctx, 500, "No handler found for data source type: " + dataSource.getType());
@@ -126,9 +274,11 @@ public class DataSourceService {
      * @param dataSourceName Data source name
      * @param filePath       File path
      * @param inputStream    Input stream
+     * @param fileSizeBytes  File size, -1 if unknown
      * @param ctx            Javalin context
      */
-    public void write(String dataSourceName, String filePath, InputStream inputStream, @NotNull Context ctx) {
+    public void write(String dataSourceName, String filePath, InputStream inputStream, long fileSizeBytes,
+        @NotNull Context ctx) {
         var dataSource = getDataSource(dataSourceName, filePath, true, ctx);
 
         if (dataSource != null) {
@@ -138,13 +288,17 @@ public class DataSourceService {
                 var handler = optionalDataSourceHandler.get();
 
                 try {
-                    var fileSizeBytes = Long.parseLong(ctx.req().getHeader("Content-Length"));
-                    log.info("[{}] [{}] Uploading file of size {} bytes to path {}", dataSourceName, ctx.ip(), fileSizeBytes,
-                        filePath);
-                    handler.write(dataSource, filePath, inputStream);
+                    log.info("[{}] [{}] Uploading file of size {} bytes to path {}", dataSourceName, ctx.ip(),
+                        fileSizeBytes >= 0 ? fileSizeBytes : "unknown", filePath);
+                    if (handler.isCacheable()) {
+                        fileCacheService.writeThroughCache(dataSource, filePath, fileSizeBytes, inputStream,
+                            data -> handler.write(dataSource, filePath, data), () -> handler.stat(dataSource, filePath));
+                    } else {
+                        handler.write(dataSource, filePath, inputStream);
+                    }
                     responseHandlerService.respondWithMessage(ctx, 200, "File written successfully");
                 } catch (HandledException exception) {
-                    responseHandlerService.respondWithMessage(ctx, exception.isNotFound() ? 404 : 400, "Error writing to data source: " + exception.getMessage());
+                    respondWithHandledException(ctx, exception, "Error writing to data source: " + exception.getMessage());
                     log.error("Error writing to data source: {} with file path: {}: {}", dataSourceName, filePath,
                         exception.getMessage());
                 } catch (Exception exception) {
@@ -152,6 +306,7 @@ public class DataSourceService {
                     log.error("Error writing to data source: {} with file path: {}", dataSourceName, filePath,
                         exception);
                 } finally {
+                    metadataCacheService.invalidate(dataSource, filePath);
                     prometheusService.getCollectors().getWrites().labelValues(dataSource.getName(), filePath).inc();
                 }
             } else {
@@ -162,21 +317,105 @@ public class DataSourceService {
     }
 
     /**
-     * Finds the appropriate data source handler for the given data source.
+     * Reads a file from the data source, recording its metadata, or the fact that it is missing, into the metadata
+     * cache.
+     *
+     * @param handler    Data source handler
+     * @param dataSource Data source
+     * @param filePath   File path
+     * @param <T>        Data source type
+     *
+     * @return Read context
+     *
+     * @throws IOException If reading the file failed
+     */
+    private <T extends DataSource> ReadContext loadReadContext(DataSourceHandler<T> handler, T dataSource,
+        String filePath) throws IOException {
+        try {
+            var readContext = handler.read(dataSource, filePath);
+            recordMetadata(dataSource, filePath, readContext);
+            return readContext;
+        } catch (HandledException exception) {
+            if (exception.isNotFound()) {
+                metadataCacheService.recordMissing(dataSource, filePath);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Reads a file from the data source asynchronously, recording its metadata, or the fact that it is missing, into
+     * the metadata cache.
+     *
+     * @param handler    Asynchronous data source handler
+     * @param dataSource Data source
+     * @param filePath   File path
+     * @param <T>        Data source type
+     *
+     * @return Future of the read context
+     */
+    private <T extends DataSource> CompletableFuture<ReadContext> loadReadContext(AsyncDataSourceHandler<T> handler,
+        T dataSource, String filePath) {
+        return handler.readAsync(dataSource, filePath).whenComplete((readContext, throwable) -> {
+            if (readContext != null) {
+                recordMetadata(dataSource, filePath, readContext);
+            } else if ((throwable instanceof CompletionException ? throwable.getCause() : throwable)
+                instanceof HandledException handledException && handledException.isNotFound()) {
+                metadataCacheService.recordMissing(dataSource, filePath);
+            }
+        });
+    }
+
+    private void recordMetadata(DataSource dataSource, String filePath, ReadContext readContext) {
+        if (readContext.getFileSizeBytes() < 0) {
+            // HEAD requests for files of unknown size are answered by the data source
+            return;
+        }
+        var fileMetadata = new FileMetadata(readContext.getFileSizeBytes(), readContext.getLastModifiedMillis());
+        fileMetadata.setEntityTag(readContext.getEntityTag());
+        metadataCacheService.record(dataSource, filePath, fileMetadata);
+    }
+
+    private void respondWithHandledException(Context ctx, HandledException exception, String message) {
+        if (exception.isUnavailable() && exception.getRetryAfterSeconds() > 0) {
+            ctx.header("Retry-After", String.valueOf(exception.getRetryAfterSeconds()));
+        }
+        responseHandlerService.respondWithMessage(ctx, exception.getStatusCode(), message);
+    }
+
+    private static boolean isConditionalRequest(Context ctx) {
+        return ctx.header("If-None-Match") != null || ctx.header("If-Modified-Since") != null;
+    }
+
+    /**
+     * Finds the appropriate data source handler for the given data source, guarded by its circuit breaker.
      *
      * @param dataSource Data source
      * @param <T>        Data source type
      *
      * @return Optional data source handler
      */
-    private <T extends DataSource> Optional<DataSourceHandler<T>> findDataSourceHandler(T dataSource) {
+    <T extends DataSource> Optional<DataSourceHandler<T>> findDataSourceHandler(T dataSource) {
         //noinspection unchecked
         return dataSourceHandlers.stream()
             .filter(handler -> handler.getType() == dataSource.getType())
-            .map(handler -> (DataSourceHandler<T>) handler)
+            .map(handler -> circuitBreakerService.guard((DataSourceHandler<T>) handler))
             .findFirst();
     }
 
+    /**
+     * Returns the asynchronous variant of the data source handler. Blocking handlers are adapted, running their calls
+     * on the data source executor.
+     *
+     * @param handler Data source handler, as returned by {@link #findDataSourceHandler}
+     * @param <T>     Data source type
+     *
+     * @return Asynchronous data source handler
+     */
+    <T extends DataSource> AsyncDataSourceHandler<T> toAsyncDataSourceHandler(DataSourceHandler<T> handler) {
+        return new BlockingDataSourceHandlerAdapter<>(handler, dataSourceExecutor);
+    }
+
     /**
      * Validates data source configurations.
      */
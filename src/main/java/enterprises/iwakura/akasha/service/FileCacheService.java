@@ -1,22 +1,59 @@
 package enterprises.iwakura.akasha.service;
 
 import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Timer;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import enterprises.iwakura.akasha.AkashaConfiguration;
+import enterprises.iwakura.akasha.exception.HandledException;
 import enterprises.iwakura.akasha.object.DataSource;
 import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+import enterprises.iwakura.akasha.object.FileMetadata;
 import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.service.cache.AccessCounter;
+import enterprises.iwakura.akasha.service.cache.BlockInputStream;
+import enterprises.iwakura.akasha.service.cache.ByteBufferInputStream;
+import enterprises.iwakura.akasha.service.cache.CacheFill;
+import enterprises.iwakura.akasha.service.cache.EvictionPolicy;
+import enterprises.iwakura.akasha.service.cache.FileCacheCatalog;
+import enterprises.iwakura.akasha.service.cache.FileCacheJournal;
+import enterprises.iwakura.akasha.service.cache.LruEvictionPolicy;
+import enterprises.iwakura.akasha.service.cache.MemoryCacheTier;
+import enterprises.iwakura.akasha.service.cache.NoEvictionPolicy;
+import enterprises.iwakura.akasha.service.cache.WindowTinyLfuEvictionPolicy;
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
+import enterprises.iwakura.akasha.util.ContentEncodingUtils;
 import enterprises.iwakura.sigewine.core.annotations.Bean;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -26,17 +63,144 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class FileCacheService {
 
-    private final List<FileCacheContext> fileCacheContexts = Collections.synchronizedList(new ArrayList<>());
+    public static final int MAX_EVICTION_ATTEMPTS = 3;
+    public static final String EVICTION_REASON_SIZE = "size";
+    public static final String EVICTION_REASON_EXPIRED = "expired";
+    public static final String EVICTION_REASON_CHANGED = "changed";
+    public static final String EVICTION_REASON_INVALIDATED = "invalidated";
+    public static final String PART_FILE_SUFFIX = ".part";
+    public static final int MAX_TRACKED_ACCESSED_FILES = 10_000;
+    public static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private final FileCacheCatalog fileCacheCatalog = new FileCacheCatalog();
+    private final Map<FileCacheKey, CacheFill> cacheFills = new ConcurrentHashMap<>();
+    private final Set<FileCacheKey> compressingVariantKeys = ConcurrentHashMap.newKeySet();
+    private final AccessCounter accessCounter = new AccessCounter(MAX_TRACKED_ACCESSED_FILES);
     private final Timer cacheCleanupTimer = new Timer("FileCacheCleanupTimer");
 
     private final AkashaConfiguration configuration;
+    private final PrometheusService prometheusService;
+
+    private EvictionPolicy evictionPolicy;
+    private MemoryCacheTier memoryCacheTier;
+    private FileCacheJournal fileCacheJournal;
+    private ThreadPoolExecutor detachedFillExecutor;
+    private ThreadPoolExecutor revalidationExecutor;
+    private ThreadPoolExecutor compressionExecutor;
 
     public void init() {
         log.info("Initializing FileCacheService...");
+        evictionPolicy = createEvictionPolicy();
+        memoryCacheTier = new MemoryCacheTier(configuration.getFileCache().getMemoryTierMaxTotalSizeBytes());
+
+        if (configuration.getFileCache().isDetachedFillEnabled()) {
+            log.info("Using up to {} detached file cache fills",
+                configuration.getFileCache().getDetachedFillMaxConcurrent());
+            detachedFillExecutor = createExecutor("FileCacheDetachedFill-%d",
+                configuration.getFileCache().getDetachedFillMaxConcurrent());
+        }
+
+        if (configuration.getFileCache().isRevalidationEnabled()) {
+            log.info("Revalidating file cache entries after {} seconds",
+                configuration.getFileCache().getRevalidateAfterSeconds());
+            revalidationExecutor = createExecutor("FileCacheRevalidation-%d",
+                configuration.getFileCache().getRevalidationMaxConcurrent());
+        }
+
+        if (configuration.getCompression().isEnabled()) {
+            log.info("Using up to {} concurrent compressions of cached files",
+                configuration.getCompression().getMaxConcurrent());
+            compressionExecutor = createExecutor("FileCacheCompression-%d",
+                configuration.getCompression().getMaxConcurrent());
+        }
+
+        if (configuration.getFileCache().isPersistentIndexEnabled()) {
+            fileCacheJournal = new FileCacheJournal(prepareCacheDirectory());
+            restoreFromJournal();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                fileCacheJournal.compact(fileCacheCatalog.values());
+                fileCacheJournal.close();
+            }, "FileCacheJournalShutdownHook"));
+        }
+
         cleanUpOldCacheEntries();
         setupPeriodicCleanup();
     }
 
+    /**
+     * Creates the eviction policy based on the configuration.
+     *
+     * @return Eviction policy
+     */
+    private EvictionPolicy createEvictionPolicy() {
+        var fileCacheConfiguration = configuration.getFileCache();
+        log.info("Using {} file cache eviction policy", fileCacheConfiguration.getEvictionPolicy());
+
+        return switch (fileCacheConfiguration.getEvictionPolicy()) {
+            case NONE -> new NoEvictionPolicy();
+            case LRU -> new LruEvictionPolicy();
+            case W_TINY_LFU -> new WindowTinyLfuEvictionPolicy(fileCacheConfiguration.getMaxTotalSizeBytes());
+        };
+    }
+
+    /**
+     * Creates an executor for background cache tasks. The executor has no queue, so tasks exceeding the specified
+     * maximum are rejected instead of piling up.
+     *
+     * @param nameFormat    Thread name format
+     * @param maxConcurrent Maximum number of concurrently running tasks
+     *
+     * @return Executor
+     */
+    private static ThreadPoolExecutor createExecutor(String nameFormat, int maxConcurrent) {
+        var executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Restores cache entries from the journal. Entries whose cache files are incomplete, missing, have unexpected size
+     * or are expired are discarded.
+     */
+    private void restoreFromJournal() {
+        var fileCacheConfiguration = configuration.getFileCache();
+        var cacheDirectoryPath = prepareCacheDirectory();
+        int restoredEntries = 0;
+
+        var entries = fileCacheJournal.replay();
+        // Restores the entries in access order, so the eviction policy sees the least recently used ones first
+        entries.sort(Comparator.comparingLong(FileCacheJournal.Entry::getLastAccessAtMillis));
+
+        for (var entry : entries) {
+            var fileCacheContext = entry.toFileCacheContext();
+            var fileCachePath = cacheDirectoryPath.resolve(fileCacheContext.getFileId().toString());
+
+            try {
+                if (entry.isComplete()
+                    && Files.exists(fileCachePath)
+                    && Files.size(fileCachePath) == fileCacheContext.getFileSizeBytes()
+                    && !fileCacheContext.shouldDelete(fileCacheConfiguration.getTtlSeconds())
+                    && fileCacheCatalog.tryReserve(fileCacheContext, fileCacheConfiguration.getMaxTotalSizeBytes())) {
+                    fileCacheCatalog.commit(fileCacheContext).ifPresent(this::deleteCacheFile);
+                    evictionPolicy.onAdd(fileCacheContext);
+                    restoredEntries++;
+                } else {
+                    log.debug("Discarding invalid journal entry for cache file: {}", fileCachePath.toAbsolutePath());
+                    deleteCacheFile(fileCacheContext);
+                }
+            } catch (IOException exception) {
+                log.error("Failed to restore cache file at {}", fileCachePath.toAbsolutePath(), exception);
+            }
+        }
+
+        // Rewrites the journal, so it does not contain discarded entries
+        fileCacheJournal.compact(fileCacheCatalog.values());
+        log.info("Restored {} file cache entries ({} bytes) from the journal", restoredEntries,
+            fileCacheCatalog.getTotalSizeBytes());
+    }
+
     private void setupPeriodicCleanup() {
         cacheCleanupTimer.scheduleAtFixedRate(new java.util.TimerTask() {
             @Override
@@ -51,39 +215,352 @@ public class FileCacheService {
     }
 
     /**
-     * Retrieves a file input stream from the cache if it exists.
+     * Retrieves the cache entry of a file if it exists, counting it as a hit, without opening the cache file, so
+     * conditional requests can be answered from the cached metadata alone. Cache entries that were not validated for
+     * a while are revalidated against the data source in the background, while the cached file is still served.
      *
-     * @param dataSource The data source of the file
-     * @param filePath   The path of the file
+     * @param dataSource        The data source of the file
+     * @param filePath          The path of the file
+     * @param metadataLoader    Loads the file metadata from the data source
+     * @param readContextLoader Loads the file from the data source, if it changed
      *
-     * @return An Optional containing the InputStream if found, otherwise empty
+     * @return Optional cache entry
      */
-    public Optional<ReadContext> getFileInputStreamFromCache(DataSource dataSource, String filePath) {
-        var optionalFileCacheContext = getFileCacheContext(dataSource, filePath);
+    public Optional<FileCacheContext> getFileCacheContext(DataSource dataSource, String filePath,
+        FileMetadataLoader metadataLoader, ReadContextLoader readContextLoader) {
+        var fileCacheKey = FileCacheKey.of(dataSource, filePath);
+        var optionalFileCacheContext = fileCacheCatalog.get(fileCacheKey);
+        evictionPolicy.recordAccess(fileCacheKey);
+        accessCounter.record(fileCacheKey);
 
-        if (optionalFileCacheContext.isPresent()) {
-            var fileCacheContext = optionalFileCacheContext.get();
-            var cacheDirectoryPath = prepareCacheDirectory();
-            var fileCachePath = cacheDirectoryPath.resolve(fileCacheContext.getFileId().toString());
+        optionalFileCacheContext.ifPresent(fileCacheContext -> {
+            fileCacheContext.updateLastAccessTime();
+            evictionPolicy.onHit(fileCacheContext);
+            fileCacheContext.getHitCount().incrementAndGet();
+            revalidateIfStale(dataSource, filePath, fileCacheContext, metadataLoader, readContextLoader);
+        });
 
-            try {
-                if (Files.exists(fileCachePath)) {
-                    fileCacheContext.updateLastAccessTime();
-                    var fileInputStream = Files.newInputStream(fileCachePath);
-                    var fileName = Path.of(filePath).getFileName().toString();
-                    var fileSizeBytes = Files.size(fileCachePath);
-                    return Optional.of(new ReadContext(fileInputStream, fileName, fileSizeBytes));
-                } else {
-                    fileCacheContexts.remove(fileCacheContext);
+        return optionalFileCacheContext;
+    }
+
+    /**
+     * Opens the cache file of the specified cache entry. Small files that are hit repeatedly are promoted into the
+     * memory tier and served from there.
+     *
+     * @param fileCacheContext Cache entry
+     * @param filePath         The path of the file
+     *
+     * @return Optional read context of the cache file, empty if the cache file could not be opened
+     */
+    public Optional<ReadContext> openCacheFile(FileCacheContext fileCacheContext, String filePath) {
+        var fileName = Path.of(filePath).getFileName().toString();
+        var fileSizeBytes = fileCacheContext.getFileSizeBytes();
+        var hitCount = fileCacheContext.getHitCount().get();
+
+        var optionalByteBuffer = memoryCacheTier.get(fileCacheContext.getFileId());
+        if (optionalByteBuffer.isPresent()) {
+            return Optional.of(createReadContext(optionalByteBuffer.get(), fileCacheContext, fileName));
+        }
+
+        // Cache directory is already created, so there is no need to prepare it on every hit
+        var fileCachePath = Path.of(configuration.getFileCache().getDirectory())
+            .resolve(fileCacheContext.getFileId().toString());
+
+        try {
+            if (shouldPromoteToMemoryTier(fileCacheContext, hitCount)) {
+                optionalByteBuffer = memoryCacheTier.load(fileCacheContext.getFileId(), fileCachePath,
+                    fileSizeBytes);
+                if (optionalByteBuffer.isPresent()) {
+                    log.debug("Promoted cache file {} into memory tier", fileCachePath.toAbsolutePath());
+                    return Optional.of(createReadContext(optionalByteBuffer.get(), fileCacheContext, fileName));
                 }
-            } catch (IOException exception) {
-                log.error("Failed to read cached file at {}", fileCachePath.toAbsolutePath(), exception);
             }
+
+            var fileChannel = FileChannel.open(fileCachePath);
+            var readContext = new ReadContext(Channels.newInputStream(fileChannel), fileName, fileSizeBytes);
+            readContext.setLastModifiedMillis(fileCacheContext.getRemoteLastModifiedMillis());
+            readContext.setEntityTag(fileCacheContext.getEntityTag());
+            readContext.setContentEncoding(fileCacheContext.getKey().getContentEncoding());
+            readContext.setFileChannel(fileChannel);
+            return Optional.of(readContext);
+        } catch (NoSuchFileException exception) {
+            log.warn("Cache file {} is missing, removing cache entry", fileCachePath.toAbsolutePath());
+            removeCacheEntry(fileCacheContext);
+        } catch (IOException exception) {
+            log.error("Failed to read cached file at {}", fileCachePath.toAbsolutePath(), exception);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Opens the encoded variant of a cached file. If there is none or if it does not match the cached file anymore,
+     * the cached file is compressed into a new variant in the background, and the file is served unencoded until the
+     * variant is ready. The variant is cached as an entry of its own, so each file is compressed only once.
+     *
+     * @param fileCacheContext Cache entry of the file
+     * @param filePath         The path of the file
+     * @param contentEncoding  Content encoding of the variant
+     *
+     * @return Optional read context of the variant, empty if the variant is not available
+     */
+    public Optional<ReadContext> openCompressedVariant(FileCacheContext fileCacheContext, String filePath,
+        String contentEncoding) {
+        if (compressionExecutor == null
+            || !ContentEncodingUtils.GZIP.equals(contentEncoding)
+            || fileCacheContext.getEntityTag() == null
+            || fileCacheContext.getKey().isBlock()
+            || fileCacheContext.getFileSizeBytes() < configuration.getCompression().getMinSizeBytes()) {
+            return Optional.empty();
         }
 
+        var variantKey = fileCacheContext.getKey().withContentEncoding(contentEncoding);
+        var variantEntityTag = fileCacheContext.getEntityTag(contentEncoding);
+        evictionPolicy.recordAccess(variantKey);
+
+        var optionalVariantContext = fileCacheCatalog.get(variantKey)
+            .filter(variantContext -> variantEntityTag.equals(variantContext.getEntityTag()));
+        if (optionalVariantContext.isPresent()) {
+            var variantContext = optionalVariantContext.get();
+            variantContext.updateLastAccessTime();
+            evictionPolicy.onHit(variantContext);
+            variantContext.getHitCount().incrementAndGet();
+            return openCacheFile(variantContext, filePath);
+        }
+
+        submitCompression(fileCacheContext, variantKey, variantEntityTag);
         return Optional.empty();
     }
 
+    /**
+     * Submits compression of the cached file into a new variant, unless the variant is being compressed already or
+     * too many compressions are in progress.
+     *
+     * @param fileCacheContext Cache entry of the file
+     * @param variantKey       File cache key of the variant
+     * @param variantEntityTag Entity tag of the variant
+     */
+    private void submitCompression(FileCacheContext fileCacheContext, FileCacheKey variantKey,
+        String variantEntityTag) {
+        var compressions = prometheusService.getCollectors().getFileCacheCompressions();
+
+        if (!compressingVariantKeys.add(variantKey)) {
+            compressions.labelValues("in_progress").inc();
+            return;
+        }
+
+        try {
+            compressionExecutor.execute(() -> {
+                try {
+                    var optionalCompressedContext = compressCacheFile(fileCacheContext, variantKey,
+                        variantEntityTag);
+                    compressions.labelValues(optionalCompressedContext.isPresent() ? "compressed" : "failed").inc();
+                } finally {
+                    compressingVariantKeys.remove(variantKey);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // Too many compressions in progress, the variant is compressed on one of the next requests
+            compressingVariantKeys.remove(variantKey);
+            compressions.labelValues("rejected").inc();
+        }
+    }
+
+    /**
+     * Compresses the cache file of the specified cache entry into a new gzip variant.
+     *
+     * @param fileCacheContext Cache entry of the file
+     * @param variantKey       File cache key of the variant
+     * @param variantEntityTag Entity tag of the variant
+     *
+     * @return Optional committed cache entry of the variant, empty if the file could not be compressed or cached
+     */
+    private Optional<FileCacheContext> compressCacheFile(FileCacheContext fileCacheContext, FileCacheKey variantKey,
+        String variantEntityTag) {
+        var variantContext = new FileCacheContext(variantKey);
+        variantContext.setRemoteFileSizeBytes(fileCacheContext.getRemoteFileSizeBytes());
+        variantContext.setRemoteLastModifiedMillis(fileCacheContext.getRemoteLastModifiedMillis());
+        variantContext.setEntityTag(variantEntityTag);
+
+        var cacheDirectoryPath = prepareCacheDirectory();
+        var fileCachePath = getFileCachePath(cacheDirectoryPath, fileCacheContext);
+        var partFileCachePath = getPartFileCachePath(cacheDirectoryPath, variantContext);
+        var level = configuration.getCompression().getLevel();
+
+        try {
+            try (var inputStream = Files.newInputStream(fileCachePath);
+                var outputStream = new GZIPOutputStream(Files.newOutputStream(partFileCachePath)) {
+                    {
+                        def.setLevel(level);
+                    }
+                }) {
+                inputStream.transferTo(outputStream);
+            }
+            variantContext.setFileSizeBytes(Files.size(partFileCachePath));
+        } catch (IOException exception) {
+            // Cache file was most likely evicted in the meantime
+            log.debug("Failed to compress cache file {}: {}", fileCachePath.toAbsolutePath(), exception.getMessage());
+            deleteCacheFile(variantContext);
+            return Optional.empty();
+        }
+
+        if (!reserveCacheEntry(variantContext)) {
+            deleteCacheFile(variantContext);
+            return Optional.empty();
+        }
+        if (!movePartFile(variantContext)) {
+            abortCacheEntry(variantContext);
+            return Optional.empty();
+        }
+
+        commitCacheEntry(variantContext);
+        log.debug("Compressed cache file {} from {} to {} bytes", fileCachePath.toAbsolutePath(),
+            fileCacheContext.getFileSizeBytes(), variantContext.getFileSizeBytes());
+        return Optional.of(variantContext);
+    }
+
+    /**
+     * Checks if the specified file is cached, without counting it as an access.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     *
+     * @return true if the file is cached, false otherwise
+     */
+    public boolean isCached(DataSource dataSource, String filePath) {
+        return fileCacheCatalog.get(FileCacheKey.of(dataSource, filePath)).isPresent();
+    }
+
+    /**
+     * Returns the most accessed files, most accessed first.
+     *
+     * @param limit Maximum number of files
+     *
+     * @return Most accessed files
+     */
+    public List<FileCacheKey> getMostAccessedFiles(int limit) {
+        return accessCounter.getMostAccessed(limit);
+    }
+
+    /**
+     * Creates a read context backed by the specified buffer.
+     *
+     * @param byteBuffer       Buffer holding the whole file
+     * @param fileCacheContext Cache entry
+     * @param fileName         File name
+     *
+     * @return Read context
+     */
+    private ReadContext createReadContext(ByteBuffer byteBuffer, FileCacheContext fileCacheContext,
+        String fileName) {
+        var readContext = new ReadContext(new ByteBufferInputStream(byteBuffer.duplicate()), fileName,
+            fileCacheContext.getFileSizeBytes());
+        readContext.setLastModifiedMillis(fileCacheContext.getRemoteLastModifiedMillis());
+        readContext.setEntityTag(fileCacheContext.getEntityTag());
+        readContext.setContentEncoding(fileCacheContext.getKey().getContentEncoding());
+        readContext.setByteBuffer(byteBuffer);
+        return readContext;
+    }
+
+    /**
+     * Submits revalidation of the specified cache entry, if it was not validated within the configured freshness
+     * window and is not being revalidated already.
+     *
+     * @param dataSource        Data source
+     * @param filePath          File path
+     * @param fileCacheContext  Cache entry
+     * @param metadataLoader    Loads the file metadata from the data source
+     * @param readContextLoader Loads the file from the data source
+     */
+    private void revalidateIfStale(DataSource dataSource, String filePath, FileCacheContext fileCacheContext,
+        FileMetadataLoader metadataLoader, ReadContextLoader readContextLoader) {
+        if (revalidationExecutor == null
+            || !fileCacheContext.shouldRevalidate(configuration.getFileCache().getRevalidateAfterSeconds())
+            || !fileCacheContext.getRevalidating().compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            revalidationExecutor.execute(() -> {
+                try {
+                    revalidateCacheEntry(dataSource, filePath, fileCacheContext, metadataLoader, readContextLoader);
+                } finally {
+                    fileCacheContext.getRevalidating().set(false);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // Too many revalidations in progress, the entry is revalidated on one of the next hits
+            fileCacheContext.getRevalidating().set(false);
+        }
+    }
+
+    /**
+     * Revalidates the specified cache entry against the metadata of the file in the data source. Changed files are
+     * evicted and downloaded into the cache again, removed files are evicted. If the data source cannot be reached,
+     * the cached file is kept.
+     *
+     * @param dataSource        Data source
+     * @param filePath          File path
+     * @param fileCacheContext  Cache entry
+     * @param metadataLoader    Loads the file metadata from the data source
+     * @param readContextLoader Loads the file from the data source
+     */
+    private void revalidateCacheEntry(DataSource dataSource, String filePath, FileCacheContext fileCacheContext,
+        FileMetadataLoader metadataLoader, ReadContextLoader readContextLoader) {
+        var revalidations = prometheusService.getCollectors().getFileCacheRevalidations();
+
+        try {
+            var fileMetadata = metadataLoader.load();
+            if (fileCacheContext.matches(fileMetadata)) {
+                fileCacheContext.updateLastValidatedTime();
+                revalidations.labelValues("unchanged").inc();
+                return;
+            }
+        } catch (HandledException exception) {
+            if (!exception.isNotFound()) {
+                log.warn("Failed to revalidate cached file {} from data source {}: {}", filePath,
+                    dataSource.getName(), exception.getMessage());
+                revalidations.labelValues("failed").inc();
+                return;
+            }
+            log.info("Cached file {} no longer exists in data source {}, removing it", filePath, dataSource.getName());
+            revalidations.labelValues("removed").inc();
+            evictCacheEntry(fileCacheContext, EVICTION_REASON_CHANGED);
+            return;
+        } catch (Exception exception) {
+            log.warn("Failed to revalidate cached file {} from data source {}", filePath, dataSource.getName(),
+                exception);
+            revalidations.labelValues("failed").inc();
+            return;
+        }
+
+        log.info("Cached file {} has changed in data source {}, downloading it again", filePath, dataSource.getName());
+        revalidations.labelValues("changed").inc();
+        evictCacheEntry(fileCacheContext, EVICTION_REASON_CHANGED);
+
+        try (var inputStream = readThroughCache(dataSource, filePath, readContextLoader).getInputStream()) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        } catch (Exception exception) {
+            log.warn("Failed to download changed file {} from data source {}", filePath, dataSource.getName(),
+                exception);
+        }
+    }
+
+    /**
+     * Determines if the cache entry should be promoted into the memory tier.
+     *
+     * @param fileCacheContext Cache entry
+     * @param hitCount         Number of hits of the cache entry
+     *
+     * @return true if the cache entry should be promoted, false otherwise
+     */
+    private boolean shouldPromoteToMemoryTier(FileCacheContext fileCacheContext, int hitCount) {
+        var fileCacheConfiguration = configuration.getFileCache();
+        return fileCacheConfiguration.isMemoryTierEnabled()
+            && hitCount >= fileCacheConfiguration.getMemoryTierPromotionHits()
+            && fileCacheContext.getFileSizeBytes() <= fileCacheConfiguration.getMemoryTierMaxSizePerFileBytes();
+    }
+
     /**
      * Cleans up old cache entries based on TTL configuration.
      */
@@ -93,16 +570,30 @@ public class FileCacheService {
         try (var fileStream = Files.list(cacheDirectoryPath)) {
             fileStream.forEach(fileCachePath -> {
                 var fileName = fileCachePath.getFileName().toString();
+                var partFile = fileName.endsWith(PART_FILE_SUFFIX);
                 UUID fileId;
 
+                if (FileCacheJournal.isJournalFile(fileName)) {
+                    return;
+                }
+
                 try {
-                    fileId = UUID.fromString(fileName);
+                    fileId = UUID.fromString(partFile
+                        ? fileName.substring(0, fileName.length() - PART_FILE_SUFFIX.length())
+                        : fileName);
                 } catch (Exception exception) {
                     log.warn("Failed to parse file ID from cache file name: {}", fileName, exception);
                     return;
                 }
 
-                var optionalFileCacheContext = getFileCacheContext(fileId);
+                if (fileCacheCatalog.isPending(fileId)) {
+                    // File is still being written
+                    return;
+                }
+
+                // Part files are renamed upon completion, so the ones left behind are never going to be completed
+                var optionalFileCacheContext = partFile ? Optional.<FileCacheContext>empty()
+                    : fileCacheCatalog.get(fileId);
 
                 if (optionalFileCacheContext.isEmpty()) {
                     log.warn("Removing stale cache file: {}", fileCachePath.toAbsolutePath());
@@ -115,37 +606,215 @@ public class FileCacheService {
                     var fileCacheContext = optionalFileCacheContext.get();
                     if (fileCacheContext.shouldDelete(configuration.getFileCache().getTtlSeconds())) {
                         log.info("Removing expired cache file: {}", fileCachePath.toAbsolutePath());
-                        try {
-                            Files.deleteIfExists(fileCachePath);
-                            fileCacheContexts.remove(fileCacheContext);
-                        } catch (IOException exception) {
-                            log.error("Failed to delete expired cache file at {}", fileCachePath.toAbsolutePath(),
-                                exception);
-                        }
+                        evictCacheEntry(fileCacheContext, EVICTION_REASON_EXPIRED);
                     }
                 }
             });
         } catch (Exception exception) {
             log.error("Failed to list files in cache directory at {}", cacheDirectoryPath.toAbsolutePath(), exception);
         }
+
+        if (fileCacheJournal != null) {
+            // Persists last access times and keeps the journal from growing indefinitely
+            fileCacheJournal.compact(fileCacheCatalog.values());
+        }
+    }
+
+    /**
+     * Reserves space for the specified cache entry and journals it as incomplete. If the cache is full, entries
+     * selected by the eviction policy are evicted to make room for it.
+     *
+     * @param fileCacheContext Cache entry
+     *
+     * @return true if the space was reserved, false otherwise
+     */
+    private boolean reserveCacheEntry(FileCacheContext fileCacheContext) {
+        var maxTotalSizeBytes = configuration.getFileCache().getMaxTotalSizeBytes();
+
+        for (int attempt = 0; attempt < MAX_EVICTION_ATTEMPTS; attempt++) {
+            if (fileCacheCatalog.tryReserve(fileCacheContext, maxTotalSizeBytes)) {
+                if (fileCacheJournal != null) {
+                    fileCacheJournal.appendPut(fileCacheContext, false);
+                }
+                return true;
+            }
+
+            var bytesToFree = fileCacheCatalog.getTotalSizeBytes() + fileCacheContext.getFileSizeBytes()
+                - maxTotalSizeBytes + 1;
+            var victims = evictionPolicy.selectVictims(fileCacheContext, bytesToFree);
+
+            if (victims.isEmpty()) {
+                break;
+            }
+
+            victims.forEach(victim -> evictCacheEntry(victim, EVICTION_REASON_SIZE));
+        }
+
+        prometheusService.getCollectors().getFileCacheRejections().inc();
+        return false;
+    }
+
+    /**
+     * Evicts the specified committed cache entry and deletes its file.
+     *
+     * @param fileCacheContext Cache entry
+     * @param reason           Eviction reason
+     */
+    private void evictCacheEntry(FileCacheContext fileCacheContext, String reason) {
+        if (removeCacheEntry(fileCacheContext)) {
+            log.debug("Evicting cache file {} ({}): {}", fileCacheContext.getFileId(), reason,
+                fileCacheContext.getKey());
+            deleteCacheFile(fileCacheContext);
+            var collectors = prometheusService.getCollectors();
+            collectors.getFileCacheEvictions().labelValues(reason).inc();
+            collectors.getFileCacheEvictedBytes().labelValues(reason).inc(fileCacheContext.getFileSizeBytes());
+        }
+    }
+
+    /**
+     * Commits the specified cache entry once its file is fully written. Replaced entry is removed.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    private void commitCacheEntry(FileCacheContext fileCacheContext) {
+        if (fileCacheJournal != null) {
+            fileCacheJournal.appendPut(fileCacheContext, true);
+        }
+        fileCacheCatalog.commit(fileCacheContext).ifPresent(replacedFileCacheContext -> {
+            if (fileCacheJournal != null) {
+                fileCacheJournal.appendRemove(replacedFileCacheContext);
+            }
+            evictionPolicy.onRemove(replacedFileCacheContext);
+            memoryCacheTier.remove(replacedFileCacheContext.getFileId());
+            deleteCacheFile(replacedFileCacheContext);
+        });
+        evictionPolicy.onAdd(fileCacheContext);
+    }
+
+    /**
+     * Aborts the specified reserved cache entry and deletes its incomplete file.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    private void abortCacheEntry(FileCacheContext fileCacheContext) {
+        fileCacheCatalog.abort(fileCacheContext);
+        if (fileCacheJournal != null) {
+            fileCacheJournal.appendRemove(fileCacheContext);
+        }
+        deleteCacheFile(fileCacheContext);
+    }
+
+    /**
+     * Removes the specified committed cache entry.
+     *
+     * @param fileCacheContext Cache entry
+     *
+     * @return true if the entry was removed, false if it was already removed or replaced
+     */
+    private boolean removeCacheEntry(FileCacheContext fileCacheContext) {
+        if (!fileCacheCatalog.remove(fileCacheContext)) {
+            return false;
+        }
+        if (fileCacheJournal != null) {
+            fileCacheJournal.appendRemove(fileCacheContext);
+        }
+        evictionPolicy.onRemove(fileCacheContext);
+        memoryCacheTier.remove(fileCacheContext.getFileId());
+        return true;
+    }
+
+    /**
+     * Deletes the cache file and the part file of the specified cache entry.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    private void deleteCacheFile(FileCacheContext fileCacheContext) {
+        var cacheDirectoryPath = prepareCacheDirectory();
+
+        for (var fileCachePath : List.of(getFileCachePath(cacheDirectoryPath, fileCacheContext),
+            getPartFileCachePath(cacheDirectoryPath, fileCacheContext))) {
+            try {
+                Files.deleteIfExists(fileCachePath);
+            } catch (IOException exception) {
+                log.error("Failed to delete cache file at {}", fileCachePath.toAbsolutePath(), exception);
+            }
+        }
+    }
+
+    /**
+     * Returns the path to the cache file of the specified cache entry.
+     *
+     * @param cacheDirectoryPath Path to the cache directory
+     * @param fileCacheContext   Cache entry
+     *
+     * @return Path to the cache file
+     */
+    private static Path getFileCachePath(Path cacheDirectoryPath, FileCacheContext fileCacheContext) {
+        return cacheDirectoryPath.resolve(fileCacheContext.getFileId().toString());
     }
 
-    private Optional<FileCacheContext> getFileCacheContext(UUID fileId) {
-        return fileCacheContexts.stream()
-            .filter(context -> context.getFileId().equals(fileId))
-            .findFirst();
+    /**
+     * Returns the path to the part file the cache file of the specified cache entry is written to, before being
+     * renamed upon completion.
+     *
+     * @param cacheDirectoryPath Path to the cache directory
+     * @param fileCacheContext   Cache entry
+     *
+     * @return Path to the part file
+     */
+    private static Path getPartFileCachePath(Path cacheDirectoryPath, FileCacheContext fileCacheContext) {
+        return cacheDirectoryPath.resolve(fileCacheContext.getFileId() + PART_FILE_SUFFIX);
     }
 
-    private Optional<FileCacheContext> getFileCacheContext(DataSource dataSource, String filePath) {
-        return fileCacheContexts.stream()
-            .filter(context -> context.getDataSource().equals(dataSource) && context.getFilePath().equals(filePath))
-            .findFirst();
+    /**
+     * Moves the completely written part file of the specified cache entry to its final path.
+     *
+     * @param fileCacheContext Cache entry
+     *
+     * @return true if the file was moved, false otherwise
+     */
+    private boolean movePartFile(FileCacheContext fileCacheContext) {
+        var cacheDirectoryPath = prepareCacheDirectory();
+        var partFileCachePath = getPartFileCachePath(cacheDirectoryPath, fileCacheContext);
+
+        try {
+            Files.move(partFileCachePath, getFileCachePath(cacheDirectoryPath, fileCacheContext),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException exception) {
+            log.error("Failed to move cache file at {}", partFileCachePath.toAbsolutePath(), exception);
+            return false;
+        }
     }
 
-    private long countCachedFileSizes() {
-        return fileCacheContexts.stream()
-            .mapToLong(FileCacheContext::getFileSizeBytes)
-            .sum();
+    /**
+     * Continues the cache fill in the background after the client disconnected, if enabled and under the limit of
+     * concurrent detached fills.
+     *
+     * @param fileCacheKey File cache key
+     * @param task         Task that reads the rest of the file into the cache
+     *
+     * @return true if the task was submitted, false otherwise
+     */
+    private boolean submitDetachedFill(FileCacheKey fileCacheKey, Runnable task) {
+        if (detachedFillExecutor == null) {
+            return false;
+        }
+
+        var detachedFills = prometheusService.getCollectors().getFileCacheDetachedFills();
+
+        try {
+            detachedFillExecutor.execute(task);
+            log.info("Client disconnected, caching file: {} from data source: {} in background",
+                fileCacheKey.getFilePath(), fileCacheKey.getDataSourceName());
+            detachedFills.labelValues("started").inc();
+            return true;
+        } catch (RejectedExecutionException exception) {
+            log.debug("Too many detached cache fills, not caching file: {} from data source: {}",
+                fileCacheKey.getFilePath(), fileCacheKey.getDataSourceName());
+            detachedFills.labelValues("rejected").inc();
+            return false;
+        }
     }
 
     /**
@@ -165,65 +834,503 @@ public class FileCacheService {
         }
     }
 
+    /**
+     * Reads a file through the cache. Concurrent reads of the same file are coalesced, so only the first reader loads
+     * the file from the data source and writes it into the cache, while the other readers tail the cache file. Files
+     * too large to be cached as a whole are cached as blocks, if enabled and the data source supports ranges.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     * @param loader     Loads the file from the data source
+     *
+     * @return Read context whose input stream caches data while being read or tails an in-progress cache fill
+     *
+     * @throws IOException If loading the file failed
+     */
+    public ReadContext readThroughCache(DataSource dataSource, String filePath, ReadContextLoader loader)
+        throws IOException {
+        if (!configuration.getFileCache().isEnabled()) {
+            return loader.load();
+        }
+
+        var fileCacheKey = FileCacheKey.of(dataSource, filePath);
+        var cacheFill = new CacheFill();
+        var existingCacheFill = cacheFills.putIfAbsent(fileCacheKey, cacheFill);
+
+        if (existingCacheFill != null) {
+            var optionalReadContext = existingCacheFill.follow();
+            if (optionalReadContext.isPresent()) {
+                log.info("Coalescing read of file {} from data source {} with in-progress cache fill", filePath,
+                    dataSource.getName());
+                return optionalReadContext.get();
+            }
+            // File is not being cached, so it has to be loaded separately
+            return loadBlocks(fileCacheKey, loader.load());
+        }
+
+        try {
+            var readContext = loader.load();
+            if (shouldCacheBlocks(readContext)) {
+                cacheFill.abandon();
+                cacheFills.remove(fileCacheKey, cacheFill);
+                return loadBlocks(fileCacheKey, readContext);
+            }
+            readContext.setInputStream(cacheFileInputStream(fileCacheKey, readContext,
+                readContext.getFileSizeBytes(), cacheFill));
+            return readContext;
+        } catch (IOException | RuntimeException exception) {
+            cacheFill.fail(exception);
+            cacheFills.remove(fileCacheKey, cacheFill);
+            throw exception;
+        }
+    }
+
+    /**
+     * Determines if the file should be cached as blocks, because it is too large to be cached as a whole.
+     *
+     * @param readContext Read context of the file
+     *
+     * @return true if the file should be cached as blocks, false otherwise
+     */
+    private boolean shouldCacheBlocks(ReadContext readContext) {
+        var fileCacheConfiguration = configuration.getFileCache();
+        return readContext.getRangeOpener() != null
+            && fileCacheConfiguration.isBlockCacheEnabled()
+            && fileCacheConfiguration.getBlockSizeBytes() < fileCacheConfiguration.getMaxSizePerFileBytes()
+            && readContext.getFileSizeBytes() >= fileCacheConfiguration.getMaxSizePerFileBytes();
+    }
+
+    /**
+     * Replaces the input stream and the range opener of the read context with ones that read the file block by block,
+     * serving cached blocks and caching the missing ones, if the file should be cached as blocks.
+     *
+     * @param fileCacheKey File cache key
+     * @param readContext  Read context of the file
+     *
+     * @return Read context
+     */
+    private ReadContext loadBlocks(FileCacheKey fileCacheKey, ReadContext readContext) {
+        if (shouldCacheBlocks(readContext)) {
+            var blockSizeBytes = configuration.getFileCache().getBlockSizeBytes();
+            var rangeOpener = readContext.getRangeOpener();
+            var fileInputStream = readContext.getInputStream();
+
+            readContext.setInputStream(new BlockInputStream(
+                new CachingBlockOpener(fileCacheKey, readContext, rangeOpener, fileInputStream, blockSizeBytes),
+                blockSizeBytes, 0, readContext.getFileSizeBytes()));
+            readContext.setRangeOpener((offset, length) -> new BlockInputStream(
+                new CachingBlockOpener(fileCacheKey, readContext, rangeOpener, null, blockSizeBytes),
+                blockSizeBytes, offset, length));
+        }
+        return readContext;
+    }
+
+    /**
+     * Invalidates the cached file and any in-progress cache fill of the specified file, so the next read loads it from
+     * the data source.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     */
+    public void invalidate(DataSource dataSource, String filePath) {
+        var fileCacheKey = FileCacheKey.of(dataSource, filePath);
+
+        cacheFills.forEach((cacheFillKey, cacheFill) -> {
+            if (cacheFillKey.isSameFile(fileCacheKey)) {
+                cacheFill.invalidate();
+            }
+        });
+
+        fileCacheCatalog.get(fileCacheKey).ifPresent(fileCacheContext -> {
+            log.info("Invalidating cached file: {} from data source: {}", filePath, dataSource.getName());
+            evictCacheEntry(fileCacheContext, EVICTION_REASON_INVALIDATED);
+        });
+
+        fileCacheCatalog.getBlocksAndVariants(fileCacheKey)
+            .forEach(fileCacheContext -> evictCacheEntry(fileCacheContext, EVICTION_REASON_INVALIDATED));
+    }
+
+    /**
+     * Writes a file through the cache. The cached copy of the file is invalidated and, if write-through is enabled,
+     * replaced with the written data once the write succeeds.
+     *
+     * @param dataSource     Data source
+     * @param filePath       File path
+     * @param fileSizeBytes  Size of the written file, -1 if unknown
+     * @param inputStream    Input stream of the written file
+     * @param writer         Writes the file to the data source
+     * @param metadataLoader Loads the metadata of the written file from the data source
+     *
+     * @return Number of bytes written, as reported by the writer
+     *
+     * @throws IOException If writing the file failed
+     */
+    public long writeThroughCache(DataSource dataSource, String filePath, long fileSizeBytes, InputStream inputStream,
+        DataWriter writer, FileMetadataLoader metadataLoader) throws IOException {
+        var fileCacheConfiguration = configuration.getFileCache();
+
+        if (!fileCacheConfiguration.isEnabled()) {
+            return writer.write(inputStream);
+        }
+
+        FileCacheContext fileCacheContext = null;
+
+        // Files of unknown size cannot reserve space in the cache up front, so they are only invalidated
+        if (fileCacheConfiguration.isWriteThroughEnabled()
+            && fileSizeBytes >= 0
+            && fileCacheConfiguration.getMaxSizePerFileBytes() > fileSizeBytes) {
+            fileCacheContext = new FileCacheContext(FileCacheKey.of(dataSource, filePath));
+            fileCacheContext.setFileSizeBytes(fileSizeBytes);
+            fileCacheContext.setRemoteFileSizeBytes(fileSizeBytes);
+
+            if (!reserveCacheEntry(fileCacheContext)) {
+                fileCacheContext = null;
+            }
+        }
+
+        var partFileCachePath = fileCacheContext != null
+            ? getPartFileCachePath(prepareCacheDirectory(), fileCacheContext)
+            : null;
+        OutputStream fileOutputStream = null;
+
+        if (fileCacheContext != null) {
+            try {
+                fileOutputStream = Files.newOutputStream(partFileCachePath);
+            } catch (IOException exception) {
+                abortCacheEntry(fileCacheContext);
+                log.error("Failed to create cache file at {}, not caching", partFileCachePath.toAbsolutePath(),
+                    exception);
+            }
+        }
+
+        if (fileOutputStream == null) {
+            try {
+                return writer.write(inputStream);
+            } finally {
+                invalidate(dataSource, filePath);
+            }
+        }
+
+        var committed = false;
+
+        try {
+            long bytesWritten;
+
+            try (var cachingInputStream = new CachingInputStream(inputStream, fileOutputStream, bytes -> {}, () -> {},
+                () -> {})) {
+                bytesWritten = writer.write(cachingInputStream);
+            }
+
+            invalidate(dataSource, filePath);
+
+            if (Files.size(partFileCachePath) == fileSizeBytes) {
+                var fileMetadata = metadataLoader.load();
+                if (fileMetadata.getFileSizeBytes() == fileSizeBytes && movePartFile(fileCacheContext)) {
+                    fileCacheContext.setRemoteLastModifiedMillis(fileMetadata.getLastModifiedMillis());
+                    fileCacheContext.setEntityTag(Optional.ofNullable(fileMetadata.getEntityTag())
+                        .orElseGet(() -> ConditionalRequestUtils.createEntityTag(fileMetadata.getFileSizeBytes(),
+                            fileMetadata.getLastModifiedMillis())));
+                    commitCacheEntry(fileCacheContext);
+                    committed = true;
+                    log.info("Cached written file: {} to data source: {}", filePath, dataSource.getName());
+                }
+            }
+
+            return bytesWritten;
+        } finally {
+            if (!committed) {
+                abortCacheEntry(fileCacheContext);
+                invalidate(dataSource, filePath);
+            }
+        }
+    }
+
     /**
      * Caches the file input stream if caching is enabled and conditions are met.
      *
-     * @param dataSource  Data source
-     * @param filePath    File path
-     * @param readContext Read context containing the input stream and file size
+     * @param fileCacheKey        File cache key
+     * @param readContext         Read context containing the input stream and file size
+     * @param remoteFileSizeBytes Size of the whole file in the data source
+     * @param cacheFill           Cache fill followed by concurrent readers of the same file
      *
      * @return InputStream that caches data while being read
      */
-    public InputStream cacheFileInputStream(DataSource dataSource, String filePath, ReadContext readContext) {
+    private InputStream cacheFileInputStream(FileCacheKey fileCacheKey, ReadContext readContext,
+        long remoteFileSizeBytes, CacheFill cacheFill) {
         var fileCacheConfiguration = configuration.getFileCache();
 
-        // File cache enabled?
-        if (fileCacheConfiguration.isEnabled()) {
-            // Is the file size within limits?
-            if (fileCacheConfiguration.getMaxSizePerFileBytes() > readContext.getFileSizeBytes()) {
-                // Will adding this file exceed total cache size?
-                var totalFileCacheSizeBytesWithNewFile = countCachedFileSizes() + readContext.getFileSizeBytes();
-                if (fileCacheConfiguration.getMaxTotalSizeBytes() > totalFileCacheSizeBytesWithNewFile) {
-                    // Create new InputStream, that will accept the original one. It will write to cache while being
-                    // read.
-                    var cacheDirectoryPath = prepareCacheDirectory();
-                    var fileCacheContext = new FileCacheContext(dataSource, filePath);
-                    var fileCachePath = cacheDirectoryPath.resolve(fileCacheContext.getFileId().toString());
-                    try {
-                        var fileOutputStream = Files.newOutputStream(fileCachePath);
-                        var cachingInputStream = new CachingInputStream(readContext.getInputStream(), fileOutputStream,
-                            () -> {
-                                fileCacheContext.setFileSizeBytes(readContext.getFileSizeBytes());
-                                fileCacheContexts.add(fileCacheContext);
-                            });
-                        log.info("Caching file: {} from data source: {} to {}", filePath, dataSource.getName(),
-                            fileCachePath.toAbsolutePath());
-                        return cachingInputStream;
-                    } catch (Exception exception) {
-                        log.error("Failed to create cache file at {}, not caching", fileCachePath.toAbsolutePath(),
-                            exception);
+        // Is the file size known and within limits?
+        if (readContext.getFileSizeBytes() >= 0
+            && fileCacheConfiguration.getMaxSizePerFileBytes() > readContext.getFileSizeBytes()) {
+            var fileCacheContext = new FileCacheContext(fileCacheKey);
+            fileCacheContext.setFileSizeBytes(readContext.getFileSizeBytes());
+            fileCacheContext.setRemoteFileSizeBytes(remoteFileSizeBytes);
+            fileCacheContext.setRemoteLastModifiedMillis(readContext.getLastModifiedMillis());
+            fileCacheContext.setEntityTag(readContext.getEntityTag());
+
+            // Reserves the space, unless adding this file would exceed total cache size
+            if (reserveCacheEntry(fileCacheContext)) {
+                // Create new InputStream, that will accept the original one. It will write to cache while being
+                // read. The file is written under a part name and renamed once complete.
+                var cacheDirectoryPath = prepareCacheDirectory();
+                var fileCachePath = getPartFileCachePath(cacheDirectoryPath, fileCacheContext);
+                try {
+                    OutputStream fileOutputStream = Files.newOutputStream(fileCachePath);
+                    // Files without attributes to derive the entity tag from get one from their content hash
+                    var messageDigest = fileCacheContext.getEntityTag() == null && !fileCacheKey.isBlock()
+                        ? MessageDigest.getInstance(CONTENT_HASH_ALGORITHM) : null;
+                    if (messageDigest != null) {
+                        fileOutputStream = new DigestOutputStream(fileOutputStream, messageDigest);
                     }
+                    var cachingInputStream = new CachingInputStream(readContext.getInputStream(), fileOutputStream,
+                        fileCacheContext.getFileSizeBytes(), cacheFill::progress, cacheFill::isFollowed,
+                        () -> {
+                            if (messageDigest != null) {
+                                fileCacheContext.setEntityTag(
+                                    ConditionalRequestUtils.createEntityTag(messageDigest.digest()));
+                            }
+                            if (cacheFill.isInvalidated() || !movePartFile(fileCacheContext)) {
+                                abortCacheEntry(fileCacheContext);
+                                cacheFill.fail(new IOException("Cache fill was invalidated or could not be moved"));
+                                cacheFills.remove(fileCacheKey, cacheFill);
+                                return;
+                            }
+                            commitCacheEntry(fileCacheContext);
+                            cacheFill.complete(getFileCachePath(cacheDirectoryPath, fileCacheContext));
+                            cacheFills.remove(fileCacheKey, cacheFill);
+                        },
+                        () -> {
+                            abortCacheEntry(fileCacheContext);
+                            cacheFill.fail(new IOException("Cache fill was aborted"));
+                            cacheFills.remove(fileCacheKey, cacheFill);
+                        },
+                        // Blocks share the input stream of the file, which is closed together with the response
+                        task -> !fileCacheKey.isBlock() && submitDetachedFill(fileCacheKey, task));
+                    cacheFill.start(fileCachePath, readContext);
+                    log.info("Caching file: {} from data source: {} to {}", fileCacheKey.getFilePath(),
+                        fileCacheKey.getDataSourceName(), fileCachePath.toAbsolutePath());
+                    return cachingInputStream;
+                } catch (Exception exception) {
+                    abortCacheEntry(fileCacheContext);
+                    log.error("Failed to create cache file at {}, not caching", fileCachePath.toAbsolutePath(),
+                        exception);
                 }
             }
         }
 
-        // Ignore caching if disabled
+        // File will not be cached
+        cacheFill.abandon();
+        cacheFills.remove(fileCacheKey, cacheFill);
         return readContext.getInputStream();
     }
 
     /**
-     * InputStream that caches data to a file while being read.
+     * Opens blocks of a large file, serving cached blocks from the cache and caching the missing ones while being read.
+     * Missing blocks are read from the already opened input stream of the file while it is positioned at them,
+     * otherwise they are opened as ranges. Parts of blocks are served from the cache if cached, but are not cached
+     * themselves.
+     */
+    private class CachingBlockOpener implements BlockInputStream.BlockOpener {
+
+        private final FileCacheKey fileCacheKey;
+        private final ReadContext readContext;
+        private final ReadContext.RangeOpener rangeOpener;
+        private final long blockSizeBytes;
+        private InputStream fileInputStream;
+        private long fileInputStreamPosition;
+
+        private CachingBlockOpener(FileCacheKey fileCacheKey, ReadContext readContext,
+            ReadContext.RangeOpener rangeOpener, InputStream fileInputStream, long blockSizeBytes) {
+            this.fileCacheKey = fileCacheKey;
+            this.readContext = readContext;
+            this.rangeOpener = rangeOpener;
+            this.fileInputStream = fileInputStream;
+            this.blockSizeBytes = blockSizeBytes;
+        }
+
+        @Override
+        public InputStream open(int blockIndex, long offsetInBlock, long partLength) throws IOException {
+            var blockKey = fileCacheKey.withBlockIndex(blockIndex);
+            var offset = blockIndex * blockSizeBytes;
+            var length = Math.min(blockSizeBytes, readContext.getFileSizeBytes() - offset);
+            var blockReads = prometheusService.getCollectors().getFileCacheBlockReads();
+
+            evictionPolicy.recordAccess(blockKey);
+
+            var optionalInputStream = openCachedBlock(blockKey);
+            if (optionalInputStream.isPresent()) {
+                blockReads.labelValues("hit").inc();
+                var inputStream = optionalInputStream.get();
+                inputStream.skipNBytes(offsetInBlock);
+                return ByteStreams.limit(inputStream, partLength);
+            }
+
+            if (offsetInBlock != 0 || partLength != length) {
+                blockReads.labelValues("partial").inc();
+                return openRange(offset + offsetInBlock, partLength);
+            }
+
+            var cacheFill = new CacheFill();
+            var existingCacheFill = cacheFills.putIfAbsent(blockKey, cacheFill);
+
+            if (existingCacheFill != null) {
+                var optionalReadContext = existingCacheFill.follow();
+                blockReads.labelValues("coalesced").inc();
+                if (optionalReadContext.isPresent()) {
+                    return optionalReadContext.get().getInputStream();
+                }
+                return openRange(offset, length);
+            }
+
+            try {
+                var blockReadContext = new ReadContext(openRange(offset, length), readContext.getFileName(), length);
+                blockReadContext.setLastModifiedMillis(readContext.getLastModifiedMillis());
+                // Followers of the block read the rest of it from the data source if the fill fails
+                blockReadContext.setRangeOpener((rangeOffset, rangeLength) ->
+                    rangeOpener.open(offset + rangeOffset, rangeLength));
+                blockReads.labelValues("miss").inc();
+                return cacheFileInputStream(blockKey, blockReadContext, readContext.getFileSizeBytes(), cacheFill);
+            } catch (IOException | RuntimeException exception) {
+                cacheFill.fail(exception);
+                cacheFills.remove(blockKey, cacheFill);
+                throw exception;
+            }
+        }
+
+        /**
+         * Opens the cached block, if it is cached and belongs to the same version of the file.
+         *
+         * @param blockKey File cache key of the block
+         *
+         * @return Optional input stream of the cached block
+         */
+        private Optional<InputStream> openCachedBlock(FileCacheKey blockKey) {
+            var optionalFileCacheContext = fileCacheCatalog.get(blockKey);
+
+            if (optionalFileCacheContext.isEmpty()) {
+                return Optional.empty();
+            }
+
+            var fileCacheContext = optionalFileCacheContext.get();
+
+            if (fileCacheContext.getRemoteFileSizeBytes() != readContext.getFileSizeBytes()
+                || fileCacheContext.getRemoteLastModifiedMillis() != readContext.getLastModifiedMillis()) {
+                // File has changed since the block was cached
+                evictCacheEntry(fileCacheContext, EVICTION_REASON_CHANGED);
+                return Optional.empty();
+            }
+
+            var fileCachePath = getFileCachePath(Path.of(configuration.getFileCache().getDirectory()),
+                fileCacheContext);
+
+            try {
+                var inputStream = Files.newInputStream(fileCachePath);
+                fileCacheContext.updateLastAccessTime();
+                evictionPolicy.onHit(fileCacheContext);
+                fileCacheContext.getHitCount().incrementAndGet();
+                return Optional.of(inputStream);
+            } catch (NoSuchFileException exception) {
+                log.warn("Cache file {} is missing, removing cache entry", fileCachePath.toAbsolutePath());
+                removeCacheEntry(fileCacheContext);
+            } catch (IOException exception) {
+                log.error("Failed to read cached file at {}", fileCachePath.toAbsolutePath(), exception);
+            }
+
+            return Optional.empty();
+        }
+
+        /**
+         * Opens the specified range of the file, reusing the input stream of the file if it is positioned at it.
+         *
+         * @param offset Offset of the range
+         * @param length Length of the range
+         *
+         * @return Input stream of the range
+         *
+         * @throws IOException If loading the range failed
+         */
+        private InputStream openRange(long offset, long length) throws IOException {
+            if (fileInputStream != null && fileInputStreamPosition == offset) {
+                fileInputStreamPosition += length;
+                return new FilterInputStream(ByteStreams.limit(fileInputStream, length)) {
+                    @Override
+                    public void close() {
+                        // Input stream of the file is closed together with the block input stream
+                    }
+                };
+            }
+
+            // Input stream of the file is not positioned at the range anymore
+            closeFileInputStream();
+            return rangeOpener.open(offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeFileInputStream();
+        }
+
+        private void closeFileInputStream() throws IOException {
+            if (fileInputStream != null) {
+                fileInputStream.close();
+                fileInputStream = null;
+            }
+        }
+    }
+
+    /**
+     * InputStream that caches data to a file while being read. If the stream is closed before being fully read, the
+     * rest of the file may be read into the cache in the background.
      */
     public static class CachingInputStream extends InputStream {
 
+        private static final int DETACHED_READ_BUFFER_SIZE = 64 * 1024;
+        private static final int PROGRESS_THRESHOLD_BYTES = 1024 * 1024;
+
         private final InputStream originalInputStream;
         private final OutputStream fileCacheOutputStream;
+        private final long expectedSizeBytes;
+        private final LongConsumer onProgress;
+        private final BooleanSupplier isFollowed;
         private final Runnable onFullyDownloaded;
+        private final Runnable onAborted;
+        private final Predicate<Runnable> onClosedEarly;
+        private long bytesWritten;
+        private long bytesPublished;
+        private boolean finished;
+        private boolean detached;
 
-        public CachingInputStream(InputStream originalInputStream, OutputStream fileCacheOutputStream, Runnable onFullyDownloaded) {
+        public CachingInputStream(InputStream originalInputStream, OutputStream fileCacheOutputStream, LongConsumer onProgress, Runnable onFullyDownloaded, Runnable onAborted) {
+            this(originalInputStream, fileCacheOutputStream, -1, onProgress, () -> false, onFullyDownloaded, onAborted,
+                task -> false);
+        }
+
+        /**
+         * Creates a new caching input stream.
+         *
+         * @param originalInputStream   Input stream to cache
+         * @param fileCacheOutputStream Output stream of the cache file
+         * @param expectedSizeBytes     Number of bytes the original input stream must provide for the cache file to
+         *                              be complete, or -1 if unknown
+         * @param onProgress            Called with the number of bytes flushed to the cache file
+         * @param isFollowed            Returns true if readers are tailing the cache file, so written bytes are
+         *                              flushed after every read instead of once enough of them accumulated
+         * @param onFullyDownloaded     Called once the cache file is fully written and closed
+         * @param onAborted             Called if the cache file is not going to be fully written, including when the
+         *                              original input stream ended early or the cache file failed to close
+         * @param onClosedEarly         Called with a task that reads the rest of the original input stream if the
+         *                              stream is closed before being fully read, returns true if the task was
+         *                              accepted to be run in the background
+         */
+        public CachingInputStream(InputStream originalInputStream, OutputStream fileCacheOutputStream, long expectedSizeBytes, LongConsumer onProgress, BooleanSupplier isFollowed, Runnable onFullyDownloaded, Runnable onAborted, Predicate<Runnable> onClosedEarly) {
             this.originalInputStream = originalInputStream;
             this.fileCacheOutputStream = new BufferedOutputStream(fileCacheOutputStream);
+            this.expectedSizeBytes = expectedSizeBytes;
+            this.onProgress = onProgress;
+            this.isFollowed = isFollowed;
             this.onFullyDownloaded = onFullyDownloaded;
+            this.onAborted = onAborted;
+            this.onClosedEarly = onClosedEarly;
         }
 
         @Override
@@ -231,6 +1338,7 @@ public class FileCacheService {
             int byteRead = originalInputStream.read();
             if (byteRead != -1) {
                 fileCacheOutputStream.write(byteRead);
+                onWritten(1);
             } else {
                 closeStreams();
             }
@@ -242,23 +1350,81 @@ public class FileCacheService {
             int bytesRead = originalInputStream.read(b, off, len);
             if (bytesRead != -1) {
                 fileCacheOutputStream.write(b, off, bytesRead);
+                onWritten(bytesRead);
             } else {
                 closeStreams();
             }
             return bytesRead;
         }
 
+        /**
+         * Publishes the written bytes once readers are tailing the cache file or enough of them accumulated.
+         *
+         * @param count Number of bytes written
+         *
+         * @throws IOException If flushing the cache file failed
+         */
+        private void onWritten(int count) throws IOException {
+            bytesWritten += count;
+            if (isFollowed.getAsBoolean() || bytesWritten - bytesPublished >= PROGRESS_THRESHOLD_BYTES) {
+                // Flushes the written bytes, so they are visible to readers tailing the cache file
+                fileCacheOutputStream.flush();
+                bytesPublished = bytesWritten;
+                onProgress.accept(bytesPublished);
+            }
+        }
+
         @Override
         public void close() throws IOException {
+            if (detached) {
+                return;
+            }
+            if (!finished && onClosedEarly.test(this::readRemaining)) {
+                // The rest of the file is read into the cache in the background
+                detached = true;
+                return;
+            }
+            closeAndAbort();
+        }
+
+        private void closeAndAbort() throws IOException {
             try {
                 fileCacheOutputStream.close();
             } catch (IOException e) {
                 log.error("Failed to close file cache output stream during close", e);
             }
+            if (!finished) {
+                // Stream was closed before being fully read, the cache file is incomplete
+                finished = true;
+                onAborted.run();
+            }
             originalInputStream.close();
         }
 
+        /**
+         * Reads the rest of the original input stream into the cache file.
+         */
+        private void readRemaining() {
+            var buffer = new byte[DETACHED_READ_BUFFER_SIZE];
+            try {
+                while (read(buffer, 0, buffer.length) != -1) {
+                    // Data is written to the cache file while being read
+                }
+            } catch (IOException e) {
+                log.error("Failed to read the rest of the file into the cache", e);
+                try {
+                    closeAndAbort();
+                } catch (IOException closeException) {
+                    log.error("Failed to close original input stream", closeException);
+                }
+            }
+        }
+
         private void closeStreams() {
+            if (finished) {
+                return;
+            }
+            finished = true;
             try {
                 originalInputStream.close();
             } catch (IOException e) {
@@ -267,9 +1433,49 @@ public class FileCacheService {
             try {
                 fileCacheOutputStream.close();
             } catch (IOException e) {
-                log.error("Failed to close file cache output stream", e);
+                // Cache file may be missing buffered bytes
+                log.error("Failed to close file cache output stream, not caching", e);
+                onAborted.run();
+                return;
+            }
+            if (expectedSizeBytes >= 0 && bytesWritten != expectedSizeBytes) {
+                log.error("Original input stream ended after {} of {} bytes, not caching", bytesWritten,
+                    expectedSizeBytes);
+                onAborted.run();
+                return;
             }
+            onProgress.accept(bytesWritten);
             onFullyDownloaded.run();
         }
     }
+
+    /**
+     * Loads a file from a data source.
+     */
+    @FunctionalInterface
+    public interface ReadContextLoader {
+
+        ReadContext load() throws IOException;
+
+    }
+
+    /**
+     * Writes a file to a data source.
+     */
+    @FunctionalInterface
+    public interface DataWriter {
+
+        long write(InputStream data) throws IOException;
+
+    }
+
+    /**
+     * Loads file metadata from a data source.
+     */
+    @FunctionalInterface
+    public interface FileMetadataLoader {
+
+        FileMetadata load() throws IOException;
+
+    }
 }
@@ -0,0 +1,154 @@
+package enterprises.iwakura.akasha.service;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import com.google.common.cache.Cache;
+
+import enterprises.iwakura.akasha.AkashaConfiguration;
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches metadata of files in data sources, so repeated metadata lookups and requests for missing files do not reach
+ * the data source. Existing and missing files are cached separately, each with its own time to live.
+ */
+@Bean
+@Slf4j
+@RequiredArgsConstructor
+public class MetadataCacheService {
+
+    private final AkashaConfiguration configuration;
+    private final PrometheusService prometheusService;
+
+    private Cache<FileCacheKey, FileMetadata> metadataCache;
+    private Cache<FileCacheKey, Boolean> missingFileCache;
+
+    /**
+     * Initializes the metadata cache service
+     */
+    public void init() {
+        var metadataCacheConfiguration = configuration.getMetadataCache();
+
+        if (!metadataCacheConfiguration.isEnabled()) {
+            log.info("Metadata cache is disabled.");
+            return;
+        }
+
+        log.info("Initializing MetadataCacheService...");
+        metadataCache = CacheService.createCache(cacheBuilder -> cacheBuilder
+            .maximumSize(metadataCacheConfiguration.getMaxEntries())
+            .expireAfterWrite(Duration.ofSeconds(metadataCacheConfiguration.getPositiveTtlSeconds())));
+        missingFileCache = CacheService.createCache(cacheBuilder -> cacheBuilder
+            .maximumSize(metadataCacheConfiguration.getMaxEntries())
+            .expireAfterWrite(Duration.ofSeconds(metadataCacheConfiguration.getNegativeTtlSeconds())));
+    }
+
+    /**
+     * Returns the metadata of the file, loading it from the data source if it is not cached. Files known to be missing
+     * are reported as not found without loading them.
+     *
+     * @param dataSource     Data source
+     * @param filePath       File path
+     * @param metadataLoader Loads the file metadata from the data source
+     *
+     * @return File metadata
+     *
+     * @throws IOException If loading the metadata failed
+     */
+    public FileMetadata stat(DataSource dataSource, String filePath, FileCacheService.FileMetadataLoader metadataLoader)
+        throws IOException {
+        if (metadataCache == null) {
+            return metadataLoader.load();
+        }
+
+        var key = FileCacheKey.of(dataSource, filePath);
+        var lookups = prometheusService.getCollectors().getMetadataCacheLookups();
+
+        if (isMissing(dataSource, filePath)) {
+            throw new HandledException("No such file", null).asNotFound();
+        }
+
+        var fileMetadata = metadataCache.getIfPresent(key);
+        if (fileMetadata != null) {
+            lookups.labelValues("hit").inc();
+            return fileMetadata;
+        }
+
+        lookups.labelValues("miss").inc();
+        try {
+            fileMetadata = metadataLoader.load();
+        } catch (HandledException exception) {
+            if (exception.isNotFound()) {
+                recordMissing(dataSource, filePath);
+            }
+            throw exception;
+        }
+        metadataCache.put(key, fileMetadata);
+        return fileMetadata;
+    }
+
+    /**
+     * Checks if the file is known to be missing in the data source.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     *
+     * @return true if the file was recently found missing, false otherwise
+     */
+    public boolean isMissing(DataSource dataSource, String filePath) {
+        if (missingFileCache == null || missingFileCache.getIfPresent(FileCacheKey.of(dataSource, filePath)) == null) {
+            return false;
+        }
+        prometheusService.getCollectors().getMetadataCacheLookups().labelValues("negative_hit").inc();
+        return true;
+    }
+
+    /**
+     * Records metadata of the file learned while reading it from the data source.
+     *
+     * @param dataSource   Data source
+     * @param filePath     File path
+     * @param fileMetadata File metadata
+     */
+    public void record(DataSource dataSource, String filePath, FileMetadata fileMetadata) {
+        if (metadataCache != null) {
+            var key = FileCacheKey.of(dataSource, filePath);
+            missingFileCache.invalidate(key);
+            metadataCache.put(key, fileMetadata);
+        }
+    }
+
+    /**
+     * Records that the file is missing in the data source.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     */
+    public void recordMissing(DataSource dataSource, String filePath) {
+        if (missingFileCache != null) {
+            var key = FileCacheKey.of(dataSource, filePath);
+            metadataCache.invalidate(key);
+            missingFileCache.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Invalidates cached metadata of the file, for example after it was written.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     */
+    public void invalidate(DataSource dataSource, String filePath) {
+        if (metadataCache != null) {
+            var key = FileCacheKey.of(dataSource, filePath);
+            metadataCache.invalidate(key);
+            missingFileCache.invalidate(key);
+        }
+    }
+}
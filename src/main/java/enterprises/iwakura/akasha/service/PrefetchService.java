@@ -0,0 +1,330 @@
+package enterprises.iwakura.akasha.service;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import enterprises.iwakura.akasha.AkashaConfiguration;
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+import enterprises.iwakura.akasha.service.handler.DataSourceHandler;
+import enterprises.iwakura.akasha.util.PathUtils;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Warms up the file cache by prefetching configured paths, the most accessed files and paths requested on demand.
+ * Prefetching runs on a bounded pool and is rate-limited, so it does not starve live requests.
+ */
+@Bean
+@Slf4j
+@RequiredArgsConstructor
+public class PrefetchService {
+
+    public static final int MAX_QUEUED_PREFETCHES = 10_000;
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+    public static final String GLOB_CHARACTERS = "*?[{";
+
+    private final Timer topAccessedFilesTimer = new Timer("PrefetchTopAccessedFilesTimer", true);
+
+    private final AkashaConfiguration configuration;
+    private final FileCacheService fileCacheService;
+    private final DataSourceService dataSourceService;
+    private final PrometheusService prometheusService;
+    private final Gson gson;
+
+    private ThreadPoolExecutor prefetchExecutor;
+    private RateLimiter rateLimiter;
+
+    public void init() {
+        var prefetchConfiguration = configuration.getPrefetch();
+
+        if (!prefetchConfiguration.isEnabled() || !configuration.getFileCache().isEnabled()) {
+            log.info("Prefetch is disabled");
+            return;
+        }
+
+        log.info("Initializing PrefetchService...");
+        prefetchExecutor = new ThreadPoolExecutor(prefetchConfiguration.getMaxConcurrent(),
+            prefetchConfiguration.getMaxConcurrent(), 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(MAX_QUEUED_PREFETCHES),
+            new ThreadFactoryBuilder().setNameFormat("Prefetch-%d").setDaemon(true).build());
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+        rateLimiter = RateLimiter.create(prefetchConfiguration.getMaxBytesPerSecond());
+
+        var saveIntervalMillis = prefetchConfiguration.getTopAccessedFilesSaveIntervalSeconds() * 1000;
+        topAccessedFilesTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                saveTopAccessedFiles();
+            }
+        }, saveIntervalMillis, saveIntervalMillis);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveTopAccessedFiles, "PrefetchShutdownHook"));
+
+        if (prefetchConfiguration.isPrefetchOnStartup()) {
+            prefetchConfiguredPaths();
+            prefetchTopAccessedFiles();
+        }
+    }
+
+    /**
+     * Prefetches paths configured for each data source.
+     */
+    public void prefetchConfiguredPaths() {
+        for (var entry : configuration.getPrefetch().getEntries()) {
+            for (var path : entry.getPaths()) {
+                prefetch(entry.getDataSourceName(), path);
+            }
+        }
+    }
+
+    /**
+     * Prefetches the most accessed files saved before the last shutdown.
+     */
+    public void prefetchTopAccessedFiles() {
+        var topAccessedFiles = loadTopAccessedFiles();
+        log.info("Prefetching {} most accessed files", topAccessedFiles.size());
+
+        for (var fileCacheKey : topAccessedFiles) {
+            findDataSource(fileCacheKey.getDataSourceName()).ifPresent(dataSource ->
+                submit(dataSource, () -> prefetchFile(dataSource, fileCacheKey.getFilePath())));
+        }
+    }
+
+    /**
+     * Prefetches all files whose paths start with the specified prefix.
+     *
+     * @param dataSourceName Data source name
+     * @param prefix         Path prefix, may contain glob patterns
+     *
+     * @return true if the prefetch was scheduled, false otherwise
+     */
+    public boolean prefetchPrefix(String dataSourceName, String prefix) {
+        var normalizedPrefix = prefix.isEmpty() || prefix.equals("/") ? "" : PathUtils.normalizePath(prefix);
+        if (prefix.endsWith("/") && !normalizedPrefix.isEmpty()) {
+            normalizedPrefix += "/";
+        }
+        return prefetch(dataSourceName, isGlob(normalizedPrefix) ? normalizedPrefix : normalizedPrefix + "**");
+    }
+
+    /**
+     * Prefetches the file at the specified path, or all files matching the specified glob pattern.
+     *
+     * @param dataSourceName Data source name
+     * @param path           File path or glob pattern
+     *
+     * @return true if the prefetch was scheduled, false otherwise
+     */
+    public boolean prefetch(String dataSourceName, String path) {
+        if (prefetchExecutor == null) {
+            log.warn("Prefetch is disabled, not prefetching {} from data source {}", path, dataSourceName);
+            return false;
+        }
+
+        var optionalDataSource = findDataSource(dataSourceName);
+
+        if (optionalDataSource.isEmpty()) {
+            log.warn("Data source {} not found, not prefetching {}", dataSourceName, path);
+            return false;
+        }
+
+        var dataSource = optionalDataSource.get();
+
+        if (!isGlob(path)) {
+            return submit(dataSource, () -> prefetchFile(dataSource, path));
+        }
+
+        return submit(dataSource, () -> {
+            var filePaths = listMatchingFiles(dataSource, path);
+            log.info("Prefetching {} files matching {} from data source {}", filePaths.size(), path,
+                dataSource.getName());
+            filePaths.forEach(filePath -> submit(dataSource, () -> prefetchFile(dataSource, filePath)));
+        });
+    }
+
+    /**
+     * Lists files of the data source matching the specified glob pattern. Only the directory preceding the first glob
+     * character is listed.
+     *
+     * @param dataSource Data source
+     * @param pattern    Glob pattern
+     *
+     * @return Matching file paths
+     */
+    private List<String> listMatchingFiles(DataSource dataSource, String pattern) {
+        var optionalHandler = dataSourceService.findDataSourceHandler(dataSource);
+
+        if (optionalHandler.isEmpty()) {
+            return List.of();
+        }
+
+        var firstGlobIndex = firstGlobIndex(pattern);
+        var directoryPath = pattern.substring(0, pattern.lastIndexOf('/', firstGlobIndex) + 1);
+        var pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        try {
+            return optionalHandler.get().list(dataSource, directoryPath).stream()
+                .filter(filePath -> pathMatcher.matches(Path.of(filePath)))
+                .toList();
+        } catch (Exception exception) {
+            log.error("Failed to list directory {} of data source {} for prefetch", directoryPath,
+                dataSource.getName(), exception);
+            return List.of();
+        }
+    }
+
+    /**
+     * Reads the specified file through the cache, unless it is cached already.
+     *
+     * @param dataSource Data source
+     * @param filePath   File path
+     */
+    private void prefetchFile(DataSource dataSource, String filePath) {
+        var prefetches = prometheusService.getCollectors().getPrefetches();
+
+        if (fileCacheService.isCached(dataSource, filePath)) {
+            prefetches.labelValues("skipped").inc();
+            return;
+        }
+
+        Optional<DataSourceHandler<DataSource>> optionalHandler = dataSourceService.findDataSourceHandler(dataSource);
+
+        if (optionalHandler.isEmpty()) {
+            return;
+        }
+
+        var handler = optionalHandler.get();
+
+        if (!handler.isCacheable()) {
+            prefetches.labelValues("skipped").inc();
+            return;
+        }
+
+        try {
+            var readContext = fileCacheService.readThroughCache(dataSource, filePath,
+                () -> handler.read(dataSource, filePath));
+
+            try (var inputStream = readContext.getInputStream()) {
+                if (readContext.getFileSizeBytes() < 0
+                    || readContext.getFileSizeBytes() >= configuration.getFileCache().getMaxSizePerFileBytes()) {
+                    // File is too large or of unknown size to be cached
+                    prefetches.labelValues("skipped").inc();
+                    return;
+                }
+
+                var buffer = new byte[READ_BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    if (bytesRead > 0) {
+                        rateLimiter.acquire(bytesRead);
+                    }
+                }
+            }
+
+            log.debug("Prefetched file {} from data source {}", filePath, dataSource.getName());
+            prefetches.labelValues("cached").inc();
+        } catch (Exception exception) {
+            log.warn("Failed to prefetch file {} from data source {}: {}", filePath, dataSource.getName(),
+                exception.getMessage());
+            prefetches.labelValues("failed").inc();
+        }
+    }
+
+    /**
+     * Submits the specified prefetch task.
+     *
+     * @param dataSource Data source
+     * @param task       Task
+     *
+     * @return true if the task was submitted, false if the queue is full
+     */
+    private boolean submit(DataSource dataSource, Runnable task) {
+        try {
+            prefetchExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException exception) {
+            log.warn("Prefetch queue is full, dropping prefetch for data source {}", dataSource.getName());
+            return false;
+        }
+    }
+
+    /**
+     * Saves the most accessed files, so they can be prefetched after restart.
+     */
+    private void saveTopAccessedFiles() {
+        var prefetchConfiguration = configuration.getPrefetch();
+        var topAccessedFiles = fileCacheService.getMostAccessedFiles(prefetchConfiguration.getTopAccessedFiles());
+
+        if (topAccessedFiles.isEmpty()) {
+            return;
+        }
+
+        var topAccessedFilesPath = Path.of(prefetchConfiguration.getTopAccessedFilesPath());
+        var topAccessedFilesTempPath = Path.of(prefetchConfiguration.getTopAccessedFilesPath() + ".tmp");
+
+        try {
+            Files.writeString(topAccessedFilesTempPath, gson.toJson(topAccessedFiles));
+            Files.move(topAccessedFilesTempPath, topAccessedFilesPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            log.error("Failed to save most accessed files to {}", topAccessedFilesPath.toAbsolutePath(), exception);
+        }
+    }
+
+    /**
+     * Loads the most accessed files saved before the last shutdown.
+     *
+     * @return Most accessed files
+     */
+    private List<FileCacheKey> loadTopAccessedFiles() {
+        var topAccessedFilesPath = Path.of(configuration.getPrefetch().getTopAccessedFilesPath());
+
+        if (!Files.exists(topAccessedFilesPath)) {
+            return List.of();
+        }
+
+        try {
+            List<FileCacheKey> topAccessedFiles = gson.fromJson(Files.readString(topAccessedFilesPath),
+                new TypeToken<List<FileCacheKey>>() {}.getType());
+            return topAccessedFiles != null ? topAccessedFiles : List.of();
+        } catch (Exception exception) {
+            log.error("Failed to load most accessed files from {}", topAccessedFilesPath.toAbsolutePath(), exception);
+            return List.of();
+        }
+    }
+
+    private Optional<DataSource> findDataSource(String dataSourceName) {
+        return configuration.getDataSource().getSources().stream()
+            .filter(dataSource -> dataSource.getName().equals(dataSourceName))
+            .findFirst();
+    }
+
+    private static boolean isGlob(String path) {
+        return firstGlobIndex(path) != -1;
+    }
+
+    private static int firstGlobIndex(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(path.charAt(i)) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
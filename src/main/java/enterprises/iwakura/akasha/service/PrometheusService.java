@@ -3,6 +3,7 @@ package enterprises.iwakura.akasha.service;
 import enterprises.iwakura.akasha.AkashaConfiguration;
 import enterprises.iwakura.sigewine.core.annotations.Bean;
 import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Gauge;
 import io.prometheus.metrics.exporter.servlet.jakarta.PrometheusMetricsServlet;
 import io.prometheus.metrics.instrumentation.jvm.JvmMetrics;
 import io.prometheus.metrics.model.registry.PrometheusRegistry;
@@ -52,9 +53,113 @@ public class PrometheusService {
             .labelNames("data_source", "file_path")
             .build();
 
+        private final Counter fileCacheEvictions = Counter.builder()
+            .name("akasha_file_cache_evictions")
+            .help("Counter for evicted file cache entries")
+            .labelNames("reason")
+            .build();
+
+        private final Counter fileCacheEvictedBytes = Counter.builder()
+            .name("akasha_file_cache_evicted_bytes")
+            .help("Counter for bytes of evicted file cache entries")
+            .labelNames("reason")
+            .build();
+
+        private final Counter fileCacheRejections = Counter.builder()
+            .name("akasha_file_cache_rejections")
+            .help("Counter for files that were not admitted into the file cache")
+            .build();
+
+        private final Counter fileCacheDetachedFills = Counter.builder()
+            .name("akasha_file_cache_detached_fills")
+            .help("Counter for cache fills that continued in the background after the client disconnected")
+            .labelNames("result")
+            .build();
+
+        private final Counter fileCacheRevalidations = Counter.builder()
+            .name("akasha_file_cache_revalidations")
+            .help("Counter for revalidations of file cache entries against their data source")
+            .labelNames("result")
+            .build();
+
+        private final Counter fileCacheBlockReads = Counter.builder()
+            .name("akasha_file_cache_block_reads")
+            .help("Counter for blocks of large files read through the file cache")
+            .labelNames("result")
+            .build();
+
+        private final Counter fileCacheCompressions = Counter.builder()
+            .name("akasha_file_cache_compressions")
+            .help("Counter for compressions of cached files into encoded variants")
+            .labelNames("result")
+            .build();
+
+        private final Counter metadataCacheLookups = Counter.builder()
+            .name("akasha_metadata_cache_lookups")
+            .help("Counter for lookups of file metadata in the metadata cache")
+            .labelNames("result")
+            .build();
+
+        private final Gauge circuitBreakerState = Gauge.builder()
+            .name("akasha_circuit_breaker_state")
+            .help("Gauge for the circuit breaker state of a data source, 0 closed, 1 half-open and 2 open")
+            .labelNames("data_source")
+            .build();
+
+        private final Counter circuitBreakerRejections = Counter.builder()
+            .name("akasha_circuit_breaker_rejections")
+            .help("Counter for calls to a data source rejected by its open circuit breaker")
+            .labelNames("data_source")
+            .build();
+
+        private final Counter prefetches = Counter.builder()
+            .name("akasha_prefetches")
+            .help("Counter for prefetched files")
+            .labelNames("result")
+            .build();
+
+        private final Counter replicaRequests = Counter.builder()
+            .name("akasha_replica_requests")
+            .help("Counter for requests sent to members of a replicated data source")
+            .labelNames("data_source", "member", "result")
+            .build();
+
+        private final Counter replicaHedges = Counter.builder()
+            .name("akasha_replica_hedges")
+            .help("Counter for hedged requests sent to a second member of a replicated data source")
+            .labelNames("data_source")
+            .build();
+
+        private final Gauge sftpPoolSessions = Gauge.builder()
+            .name("akasha_sftp_pool_sessions")
+            .help("Gauge for SSH connections in the SFTP pool of a data source")
+            .labelNames("data_source")
+            .build();
+
+        private final Gauge sftpPoolChannels = Gauge.builder()
+            .name("akasha_sftp_pool_channels")
+            .help("Gauge for active and idle SFTP channels and borrowers waiting for one in the SFTP pool of a data source")
+            .labelNames("data_source", "state")
+            .build();
+
         public void init(PrometheusRegistry prometheusRegistry) {
             prometheusRegistry.register(reads);
             prometheusRegistry.register(writes);
+            prometheusRegistry.register(fileCacheEvictions);
+            prometheusRegistry.register(fileCacheEvictedBytes);
+            prometheusRegistry.register(fileCacheRejections);
+            prometheusRegistry.register(fileCacheDetachedFills);
+            prometheusRegistry.register(fileCacheRevalidations);
+            prometheusRegistry.register(fileCacheBlockReads);
+            prometheusRegistry.register(fileCacheCompressions);
+            prometheusRegistry.register(metadataCacheLookups);
+            prometheusRegistry.register(prefetches);
+            prometheusRegistry.register(circuitBreakerState);
+            prometheusRegistry.register(circuitBreakerRejections);
+            prometheusRegistry.register(replicaRequests);
+            prometheusRegistry.register(replicaHedges);
+            prometheusRegistry.register(sftpPoolSessions);
+            prometheusRegistry.register(sftpPoolChannels);
         }
     }
 }
@@ -1,13 +1,30 @@
 package enterprises.iwakura.akasha.service;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 
 import enterprises.iwakura.akasha.AkashaConfiguration;
 import enterprises.iwakura.akasha.AkashaVersion;
+import enterprises.iwakura.akasha.object.ByteRange;
+import enterprises.iwakura.akasha.object.FileMetadata;
 import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.service.handler.ByteBufferPublisher;
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
+import enterprises.iwakura.akasha.util.ContentEncodingUtils;
 import enterprises.iwakura.akasha.util.ContentTypeResolver;
+import enterprises.iwakura.akasha.util.RangeUtils;
 import enterprises.iwakura.amber.Version;
 import enterprises.iwakura.kirara.akasha.response.AkashaResponse;
 import enterprises.iwakura.sigewine.core.annotations.Bean;
@@ -25,29 +42,282 @@ public class ResponseHandlerService {
     public static final String CONTENT_TYPE_JSON = "application/json";
     public static final String CONTENT_TYPE_HTML = "text/html";
     public static final String CONTENT_TYPE_PLAIN = "text/plain";
+    public static final List<String> SUPPORTED_CONTENT_ENCODINGS = List.of(ContentEncodingUtils.GZIP);
+    public static final String MULTIPART_PART_HEADER_TEMPLATE = "%s--%s\r\nContent-Type: %s\r\nContent-Range: %s\r\n\r\n";
+    public static final String MULTIPART_CLOSING_DELIMITER_TEMPLATE = "\r\n--%s--\r\n";
+
+    // Reads content ahead of the client, so request threads are not blocked by reads of the data source
+    private final ExecutorService contentExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("ResponseContent-", 0).factory());
 
     private final AkashaConfiguration configuration;
     private final Gson gson;
 
     /**
-     * Responds javalin's context with read context.
+     * Responds javalin's context with 304 Not Modified if the client already has the current representation of the
+     * file, according to its If-None-Match or If-Modified-Since headers.
+     *
+     * @param ctx                Javalin context
+     * @param entityTag          Entity tag of the file, may be null
+     * @param lastModifiedMillis Last modification time of the file, 0 if unknown
+     *
+     * @return true if the request was answered with 304 Not Modified, false otherwise
+     */
+    public boolean respondWithNotModified(Context ctx, String entityTag, long lastModifiedMillis) {
+        if (!ConditionalRequestUtils.isNotModified(ctx.header("If-None-Match"), ctx.header("If-Modified-Since"),
+            entityTag, lastModifiedMillis)) {
+            return false;
+        }
+
+        setValidatorHeaders(ctx, entityTag, lastModifiedMillis);
+        ctx.header("Cache-Control",
+            "public, max-age=%d".formatted(configuration.getFileCache().getHttpCacheMaxAgeSeconds()));
+        ctx.status(304);
+        return true;
+    }
+
+    /**
+     * Responds javalin's context with read context. Conditional requests are answered with 304 Not Modified if the
+     * file did not change, and range requests with the requested byte ranges if the read context supports them.
+     * Otherwise, the whole file is sent. The content is written in non-blocking mode, so the request must be
+     * asynchronous, see {@link Context#future}.
      *
      * @param readContext ReadContext
-     * @param ctx         Context
+     * @param ctx         Javalin context
+     *
+     * @return Future completed once the response was written, never completed exceptionally
      */
-    public void respondWithReadContext(ReadContext readContext, Context ctx) {
+    public CompletableFuture<Void> respondWithReadContext(ReadContext readContext, Context ctx) {
+        if (respondWithNotModified(ctx, readContext.getEntityTag(), readContext.getLastModifiedMillis())) {
+            closeInputStream(readContext);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var fileSizeBytes = readContext.getFileSizeBytes();
+        // Ranges cannot be resolved against files of unknown size
+        var rangesSupported = fileSizeBytes >= 0 && isRangeSupported(readContext);
+        List<ByteRange> ranges = null;
+
+        if (rangesSupported && RangeUtils.isIfRangeSatisfied(ctx.header("If-Range"), readContext.getEntityTag(),
+            readContext.getLastModifiedMillis())) {
+            ranges = RangeUtils.parseRangeHeader(ctx.header("Range"), fileSizeBytes);
+        }
+
+        if (ranges != null && ranges.isEmpty()) {
+            closeInputStream(readContext);
+            ctx.header("Content-Range", "bytes */%d".formatted(fileSizeBytes));
+            respondWithMessage(ctx, 416, "Requested range not satisfiable");
+            return CompletableFuture.completedFuture(null);
+        }
+
         // Resolves content type based on the file extension
-        ctx.contentType(ContentTypeResolver.getContentType(readContext.getFileName()));
+        var contentType = ContentTypeResolver.getContentType(readContext.getFileName());
+        ctx.contentType(contentType);
         ctx.header("Content-Disposition", "inline; filename=\"%s\"".formatted(readContext.getFileName()));
-        ctx.header("Content-Length", String.valueOf(readContext.getFileSizeBytes()));
         // Makes sure the content-encoding matches the actual encoding if any proxy is used
-        ctx.header("Content-Encoding", "identity");
+        ctx.header("Content-Encoding", Optional.ofNullable(readContext.getContentEncoding())
+            .orElse(ContentEncodingUtils.IDENTITY));
         ctx.header("Cache-Control",
             "public, max-age=%d".formatted(configuration.getFileCache().getHttpCacheMaxAgeSeconds()));
-        ctx.result(readContext.getInputStream());
+        setValidatorHeaders(ctx, readContext.getEntityTag(), readContext.getLastModifiedMillis());
+        if (rangesSupported) {
+            ctx.header("Accept-Ranges", "bytes");
+        }
+
+        var publishers = new ArrayList<Flow.Publisher<ByteBuffer>>();
+        if (ranges == null) {
+            if (fileSizeBytes >= 0) {
+                ctx.header("Content-Length", String.valueOf(fileSizeBytes));
+            }
+            // Files of unknown size are sent chunked
+            ctx.status(200);
+            publishers.add(publishFile(readContext));
+        } else if (ranges.size() == 1) {
+            var range = ranges.get(0);
+            ctx.header("Content-Range", range.toContentRange(fileSizeBytes));
+            ctx.header("Content-Length", String.valueOf(range.getLength()));
+            ctx.status(206);
+            publishers.add(publishRange(readContext, range.getStart(), range.getLength()));
+        } else {
+            var boundary = UUID.randomUUID().toString().replace("-", "");
+            var contentLength = 0L;
+
+            for (int i = 0; i < ranges.size(); i++) {
+                var partHeader = MULTIPART_PART_HEADER_TEMPLATE.formatted(i == 0 ? "" : "\r\n", boundary, contentType,
+                    ranges.get(i).toContentRange(fileSizeBytes)).getBytes(StandardCharsets.US_ASCII);
+                publishers.add(ByteBufferPublisher.ofByteBuffer(ByteBuffer.wrap(partHeader), contentExecutor));
+                publishers.add(publishRange(readContext, ranges.get(i).getStart(), ranges.get(i).getLength()));
+                contentLength += partHeader.length + ranges.get(i).getLength();
+            }
+            var closingDelimiter = MULTIPART_CLOSING_DELIMITER_TEMPLATE.formatted(boundary)
+                .getBytes(StandardCharsets.US_ASCII);
+            publishers.add(ByteBufferPublisher.ofByteBuffer(ByteBuffer.wrap(closingDelimiter), contentExecutor));
+            contentLength += closingDelimiter.length;
+
+            ctx.contentType("multipart/byteranges; boundary=" + boundary);
+            ctx.header("Content-Length", String.valueOf(contentLength));
+            ctx.status(206);
+        }
+        // Ranges are read separately, so the input stream of the read context is not read
+        var inputStreamPublished = ranges == null && !isBufferBacked(readContext);
+        return writeContent(readContext, ctx, publishers, inputStreamPublished);
+    }
+
+    /**
+     * Negotiates the content encoding of the response based on the Accept-Encoding header, if the file is worth
+     * compressing. Range requests are always served from the identity, so ranges and lengths refer to the file as is.
+     *
+     * @param ctx      Javalin context
+     * @param fileName File name
+     *
+     * @return Content encoding to respond with, or null if the identity should be sent
+     */
+    public String negotiateContentEncoding(Context ctx, String fileName) {
+        if (!configuration.getCompression().isEnabled()
+            || !ContentTypeResolver.isCompressible(ContentTypeResolver.getContentType(fileName))) {
+            return null;
+        }
+
+        // Response differs based on the Accept-Encoding header, so shared caches must not mix the representations
+        ctx.header("Vary", "Accept-Encoding");
+
+        if (ctx.header("Range") != null) {
+            return null;
+        }
+        return ContentEncodingUtils.negotiate(ctx.header("Accept-Encoding"), SUPPORTED_CONTENT_ENCODINGS);
+    }
+
+    /**
+     * Responds javalin's context with the headers of a file, without its content, as an answer to a HEAD request.
+     *
+     * @param ctx          Javalin context
+     * @param filePath     File path
+     * @param fileMetadata File metadata
+     */
+    public void respondWithFileMetadata(Context ctx, String filePath, FileMetadata fileMetadata) {
+        var fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
+        ctx.contentType(ContentTypeResolver.getContentType(fileName));
+        ctx.header("Content-Disposition", "inline; filename=\"%s\"".formatted(fileName));
+        if (fileMetadata.getFileSizeBytes() >= 0) {
+            ctx.header("Content-Length", String.valueOf(fileMetadata.getFileSizeBytes()));
+            ctx.header("Accept-Ranges", "bytes");
+        }
+        ctx.header("Cache-Control",
+            "public, max-age=%d".formatted(configuration.getFileCache().getHttpCacheMaxAgeSeconds()));
+        setValidatorHeaders(ctx, fileMetadata.getEntityTag(), fileMetadata.getLastModifiedMillis());
         ctx.status(200);
     }
 
+    private void setValidatorHeaders(Context ctx, String entityTag, long lastModifiedMillis) {
+        if (entityTag != null) {
+            ctx.header("ETag", entityTag);
+        }
+        if (lastModifiedMillis > 0) {
+            ctx.header("Last-Modified", ConditionalRequestUtils.formatHttpDate(lastModifiedMillis));
+        }
+    }
+
+    /**
+     * Checks if the read context can serve byte ranges without reading the file from its beginning.
+     *
+     * @param readContext Read context
+     *
+     * @return true if byte ranges are supported, false otherwise
+     */
+    private boolean isRangeSupported(ReadContext readContext) {
+        return isBufferBacked(readContext) || readContext.getRangeOpener() != null;
+    }
+
+    private static boolean isBufferBacked(ReadContext readContext) {
+        return readContext.getFileChannel() != null || readContext.getByteBuffer() != null;
+    }
+
+    /**
+     * Publishes the whole file of the read context. Files backed by a memory buffer or a local file are published
+     * without being copied through the heap, local files are memory mapped, so their content is written from the
+     * page cache into the socket. Other files are published from the input stream of the read context.
+     *
+     * @param readContext Read context
+     *
+     * @return Publisher of the file
+     */
+    private Flow.Publisher<ByteBuffer> publishFile(ReadContext readContext) {
+        if (isBufferBacked(readContext)) {
+            return publishRange(readContext, 0, readContext.getFileSizeBytes());
+        }
+        return ByteBufferPublisher.ofInputStream(readContext.getInputStream(), contentExecutor);
+    }
+
+    /**
+     * Publishes a range of the read context. Memory buffers are sliced and local files are memory mapped, other read
+     * contexts open the range separately once it is written.
+     *
+     * @param readContext Read context supporting byte ranges
+     * @param offset      Offset of the range
+     * @param length      Length of the range
+     *
+     * @return Publisher of the range
+     */
+    private Flow.Publisher<ByteBuffer> publishRange(ReadContext readContext, long offset, long length) {
+        if (readContext.getByteBuffer() != null) {
+            return ByteBufferPublisher.ofByteBuffer(readContext.getByteBuffer().slice((int) offset, (int) length),
+                contentExecutor);
+        }
+        if (readContext.getFileChannel() != null) {
+            return ByteBufferPublisher.ofFileChannel(readContext.getFileChannel(), offset, length, contentExecutor);
+        }
+        // Range openers of data sources may return more than the range, which would corrupt multipart responses
+        return ByteBufferPublisher.ofInputStream(() -> ByteStreams.limit(readContext.getRangeOpener().open(offset,
+            length), length), contentExecutor);
+    }
+
+    /**
+     * Writes the content into Jetty's output in non-blocking mode. The input stream of the read context is closed
+     * afterward, unless it was published and thus closed by its publisher.
+     *
+     * @param readContext          Read context
+     * @param ctx                  Javalin context
+     * @param publishers           Publishers of the content
+     * @param inputStreamPublished Whether the input stream of the read context is published
+     *
+     * @return Future completed once the content was written
+     */
+    private CompletableFuture<Void> writeContent(ReadContext readContext, Context ctx,
+        List<Flow.Publisher<ByteBuffer>> publishers, boolean inputStreamPublished) {
+        if (!ctx.req().isAsyncStarted()) {
+            closeInputStream(readContext);
+            throw new IllegalStateException("Read contexts must be responded with from asynchronous requests");
+        }
+
+        CompletableFuture<Void> writeFuture;
+        try {
+            writeFuture = AsyncResponseWriter.write(ctx.res().getOutputStream(), publishers);
+        } catch (IOException | RuntimeException exception) {
+            log.debug("Failed to write {} to client: {}", readContext.getFileName(), exception.getMessage());
+            closeInputStream(readContext);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return writeFuture.handle((ignored, throwable) -> {
+            if (throwable != null) {
+                // Usually caused by client closing the connection
+                log.debug("Failed to write {} to client: {}", readContext.getFileName(), throwable.getMessage());
+            }
+            if (!inputStreamPublished) {
+                closeInputStream(readContext);
+            }
+            return null;
+        });
+    }
+
+    private void closeInputStream(ReadContext readContext) {
+        try {
+            readContext.getInputStream().close();
+        } catch (IOException exception) {
+            log.debug("Failed to close {}: {}", readContext.getFileName(), exception.getMessage());
+        }
+    }
+
     /**
      * Responds javalin's context with message based on the preferred content type.
      *
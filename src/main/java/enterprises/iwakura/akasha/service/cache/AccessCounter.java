@@ -0,0 +1,66 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+/**
+ * Counts accesses of files, so the most accessed ones can be prefetched. The number of tracked files is bounded; once
+ * exceeded, the less accessed half is dropped and the remaining counts are halved, so the counts follow recent
+ * popularity.
+ */
+public class AccessCounter {
+
+    private final Map<FileCacheKey, LongAdder> accessCounts = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private final int maxTrackedFiles;
+
+    public AccessCounter(int maxTrackedFiles) {
+        this.maxTrackedFiles = maxTrackedFiles;
+    }
+
+    /**
+     * Records an access of the specified file.
+     *
+     * @param key File cache key
+     */
+    public void record(FileCacheKey key) {
+        accessCounts.computeIfAbsent(key, ignored -> new LongAdder()).increment();
+
+        if (accessCounts.size() > maxTrackedFiles && trimming.compareAndSet(false, true)) {
+            try {
+                trim();
+            } finally {
+                trimming.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the most accessed files, most accessed first.
+     *
+     * @param limit Maximum number of files
+     *
+     * @return Most accessed files
+     */
+    public List<FileCacheKey> getMostAccessed(int limit) {
+        return accessCounts.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<FileCacheKey, LongAdder> entry) -> entry.getValue().sum())
+                .reversed())
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    private void trim() {
+        var keptKeys = new HashSet<>(getMostAccessed(maxTrackedFiles / 2));
+        accessCounts.keySet().retainAll(keptKeys);
+        accessCounts.values().forEach(accessCount -> accessCount.add(-(accessCount.sum() / 2)));
+    }
+}
@@ -0,0 +1,102 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * InputStream that reads a range of a file as a sequence of blocks, each opened separately once the previous one is
+ * fully read.
+ */
+public class BlockInputStream extends InputStream {
+
+    private final BlockOpener blockOpener;
+    private final long blockSizeBytes;
+    private final long endOffset;
+    private long offset;
+    private InputStream blockInputStream;
+
+    /**
+     * Creates a new block input stream.
+     *
+     * @param blockOpener    Opens blocks of the file
+     * @param blockSizeBytes Size of a single block
+     * @param offset         Offset of the range to read
+     * @param length         Length of the range to read
+     */
+    public BlockInputStream(BlockOpener blockOpener, long blockSizeBytes, long offset, long length) {
+        this.blockOpener = blockOpener;
+        this.blockSizeBytes = blockSizeBytes;
+        this.offset = offset;
+        this.endOffset = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var buffer = new byte[1];
+        return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (blockInputStream == null) {
+                if (offset >= endOffset) {
+                    return -1;
+                }
+                var blockIndex = (int) (offset / blockSizeBytes);
+                var offsetInBlock = offset - blockIndex * blockSizeBytes;
+                var length = Math.min(blockSizeBytes - offsetInBlock, endOffset - offset);
+                // Parts read past their length would shift every following block
+                blockInputStream = ByteStreams.limit(blockOpener.open(blockIndex, offsetInBlock, length), length);
+                offset += length;
+            }
+
+            var bytesRead = blockInputStream.read(b, off, len);
+            if (bytesRead != -1) {
+                return bytesRead;
+            }
+
+            blockInputStream.close();
+            blockInputStream = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (blockInputStream != null) {
+                blockInputStream.close();
+                blockInputStream = null;
+            }
+        } finally {
+            blockOpener.close();
+        }
+    }
+
+    /**
+     * Opens blocks of a file.
+     */
+    public interface BlockOpener extends Closeable {
+
+        /**
+         * Opens the specified part of a block.
+         *
+         * @param blockIndex    Block index
+         * @param offsetInBlock Offset of the part within the block
+         * @param length        Length of the part
+         *
+         * @return Input stream of the part of the block
+         *
+         * @throws IOException If opening the block failed
+         */
+        InputStream open(int blockIndex, long offsetInBlock, long length) throws IOException;
+
+    }
+}
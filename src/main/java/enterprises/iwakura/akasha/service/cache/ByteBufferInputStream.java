@@ -0,0 +1,47 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream that reads from a {@link ByteBuffer}. The buffer's position is advanced while being read, so callers
+ * should pass a duplicate of shared buffers.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer byteBuffer;
+
+    public ByteBufferInputStream(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    @Override
+    public int read() {
+        return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!byteBuffer.hasRemaining()) {
+            return -1;
+        }
+        var bytesRead = Math.min(len, byteBuffer.remaining());
+        byteBuffer.get(b, off, bytesRead);
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) {
+        var bytesSkipped = (int) Math.max(0, Math.min(n, byteBuffer.remaining()));
+        byteBuffer.position(byteBuffer.position() + bytesSkipped);
+        return bytesSkipped;
+    }
+
+    @Override
+    public int available() {
+        return byteBuffer.remaining();
+    }
+}
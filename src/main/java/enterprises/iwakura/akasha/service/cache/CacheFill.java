@@ -0,0 +1,378 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.io.ByteStreams;
+
+import enterprises.iwakura.akasha.object.ReadContext;
+
+/**
+ * In-progress fill of a cache file. The first reader of a missing file loads it from the data source and writes it
+ * into the cache, while concurrent readers {@link #follow()} the fill and tail the cache file as bytes arrive. If the
+ * fill fails before reaching them, for example because the leader disconnected, followers read the rest from the data
+ * source.
+ */
+public class CacheFill {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final AtomicInteger followers = new AtomicInteger();
+
+    private State state = State.LOADING;
+    private Path fileCachePath;
+    private String fileName;
+    private long fileSizeBytes;
+    private long lastModifiedMillis;
+    private String entityTag;
+    private ReadContext.RangeOpener rangeOpener;
+    private long bytesWritten;
+    private Exception failure;
+    private volatile boolean invalidated;
+
+    /**
+     * Marks the fill as started, so followers can start tailing the cache file.
+     *
+     * @param fileCachePath Path to the cache file being written
+     * @param readContext   Read context of the file being cached, whose range opener is used by followers if the
+     *                      fill fails
+     */
+    public void start(Path fileCachePath, ReadContext readContext) {
+        update(() -> {
+            this.fileCachePath = fileCachePath;
+            this.fileName = readContext.getFileName();
+            this.fileSizeBytes = readContext.getFileSizeBytes();
+            this.lastModifiedMillis = readContext.getLastModifiedMillis();
+            this.entityTag = readContext.getEntityTag();
+            this.rangeOpener = readContext.getRangeOpener();
+            this.state = State.FILLING;
+        });
+    }
+
+    /**
+     * Marks the fill as abandoned, because the file will not be cached. Followers have to load the file themselves.
+     */
+    public void abandon() {
+        update(() -> state = State.ABANDONED);
+    }
+
+    /**
+     * Marks the fill as invalidated, because the file changed in the data source while being cached. Invalidated fill
+     * must not be committed into the cache.
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Checks if the fill was invalidated.
+     *
+     * @return true if the fill was invalidated, false otherwise
+     */
+    public boolean isInvalidated() {
+        return invalidated;
+    }
+
+    /**
+     * Checks if any reader is tailing the cache file, in which case written bytes should be published promptly.
+     *
+     * @return true if the fill is followed, false otherwise
+     */
+    public boolean isFollowed() {
+        return followers.get() > 0;
+    }
+
+    /**
+     * Publishes the number of bytes written to the cache file so far.
+     *
+     * @param bytesWritten Number of bytes written
+     */
+    public void progress(long bytesWritten) {
+        update(() -> this.bytesWritten = bytesWritten);
+    }
+
+    /**
+     * Marks the fill as completed.
+     *
+     * @param fileCachePath Path to the completed cache file, which may differ from the path being written
+     */
+    public void complete(Path fileCachePath) {
+        update(() -> {
+            this.fileCachePath = fileCachePath;
+            this.state = State.COMPLETED;
+        });
+    }
+
+    /**
+     * Marks the fill as failed. If the fill did not start yet, followers rethrow the specified exception.
+     *
+     * @param exception Cause of the failure
+     */
+    public void fail(Exception exception) {
+        update(() -> {
+            this.failure = exception;
+            this.state = State.FAILED;
+        });
+    }
+
+    /**
+     * Waits until the leader either starts the fill or fails, then returns a read context that tails the cache file.
+     * Ranges of the file are tailed from the cache file as well.
+     *
+     * @return Optional read context, empty if the file is not cached and has to be loaded by the caller
+     *
+     * @throws IOException If loading the file failed for the leader
+     */
+    public Optional<ReadContext> follow() throws IOException {
+        Path followedFileCachePath;
+        ReadContext.RangeOpener fallbackRangeOpener;
+
+        lock.lock();
+        try {
+            while (state == State.LOADING) {
+                await();
+            }
+
+            if (fileCachePath == null || state == State.FAILED) {
+                if (failure != null && fileCachePath == null) {
+                    throw rethrow(failure);
+                }
+                return Optional.empty();
+            }
+
+            followedFileCachePath = fileCachePath;
+            fallbackRangeOpener = rangeOpener;
+        } finally {
+            lock.unlock();
+        }
+
+        var fileChannel = openFollowedFileChannel(followedFileCachePath);
+        if (fileChannel == null) {
+            return Optional.empty();
+        }
+
+        var readContext = new ReadContext(new TailingInputStream(fileChannel, 0, fileSizeBytes, fallbackRangeOpener),
+            fileName, fileSizeBytes);
+        readContext.setLastModifiedMillis(lastModifiedMillis);
+        readContext.setEntityTag(entityTag);
+        readContext.setRangeOpener((offset, length) -> {
+            var rangeFileChannel = openFollowedFileChannel(followedFileCachePath);
+            if (rangeFileChannel == null) {
+                throw new IOException("Cache fill did not complete");
+            }
+            return new TailingInputStream(rangeFileChannel, offset, offset + length, fallbackRangeOpener);
+        });
+        return Optional.of(readContext);
+    }
+
+    /**
+     * Opens the followed cache file, following it to its final path if it was moved upon completion.
+     *
+     * @param followedFileCachePath Path to the followed cache file
+     *
+     * @return File channel, or null if the fill did not complete
+     *
+     * @throws IOException If opening the cache file failed
+     */
+    private FileChannel openFollowedFileChannel(Path followedFileCachePath) throws IOException {
+        while (true) {
+            try {
+                return FileChannel.open(followedFileCachePath);
+            } catch (NoSuchFileException exception) {
+                // Cache file was either moved to its final path upon completion, evicted or aborted in the meantime
+                followedFileCachePath = awaitMovedFileCachePath(followedFileCachePath);
+                if (followedFileCachePath == null) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the fill ends after the specified cache file went missing.
+     *
+     * @param missingFileCachePath Path to the missing cache file
+     *
+     * @return Path to the completed cache file, or null if the fill did not complete
+     *
+     * @throws IOException If interrupted while waiting
+     */
+    private Path awaitMovedFileCachePath(Path missingFileCachePath) throws IOException {
+        lock.lock();
+        try {
+            while (state == State.FILLING && missingFileCachePath.equals(fileCachePath)) {
+                await();
+            }
+            if (state == State.COMPLETED && !missingFileCachePath.equals(fileCachePath)) {
+                return fileCachePath;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(Runnable runnable) {
+        lock.lock();
+        try {
+            runnable.run();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            changed.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for cache fill");
+        }
+    }
+
+    /**
+     * Waits until there are bytes available past the specified position or the fill ends.
+     *
+     * @param position Position in the cache file
+     *
+     * @return Number of bytes written to the cache file, or -1 if the fill failed before reaching the position
+     *
+     * @throws IOException If interrupted while waiting
+     */
+    private long awaitBytesWritten(long position) throws IOException {
+        lock.lock();
+        try {
+            while (bytesWritten <= position && state == State.FILLING) {
+                await();
+            }
+            if (bytesWritten <= position && state == State.FAILED) {
+                return -1;
+            }
+            return bytesWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static IOException rethrow(Exception exception) {
+        if (exception instanceof IOException ioException) {
+            return ioException;
+        }
+        if (exception instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return new IOException(exception);
+    }
+
+    private enum State {
+        LOADING,
+        FILLING,
+        COMPLETED,
+        FAILED,
+        ABANDONED
+    }
+
+    /**
+     * InputStream that reads a range of the cache file while it is being written. If the fill fails before reaching
+     * the end of the range, the rest of the range is read from the data source.
+     */
+    private class TailingInputStream extends InputStream {
+
+        private final FileChannel fileChannel;
+        private final long endPosition;
+        private final ReadContext.RangeOpener fallbackRangeOpener;
+        private InputStream fallbackInputStream;
+        private long position;
+        private boolean closed;
+
+        private TailingInputStream(FileChannel fileChannel, long position, long endPosition,
+            ReadContext.RangeOpener fallbackRangeOpener) {
+            this.fileChannel = fileChannel;
+            this.position = position;
+            this.endPosition = endPosition;
+            this.fallbackRangeOpener = fallbackRangeOpener;
+            followers.incrementAndGet();
+        }
+
+        @Override
+        public int read() throws IOException {
+            var buffer = new byte[1];
+            return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (position >= endPosition) {
+                return -1;
+            }
+
+            if (fallbackInputStream != null) {
+                return readFallback(b, off, len);
+            }
+
+            var bytesWritten = awaitBytesWritten(position);
+            if (bytesWritten == -1) {
+                return readFallback(b, off, len);
+            }
+
+            var availableBytes = Math.min(bytesWritten, endPosition) - position;
+            if (availableBytes <= 0) {
+                return -1;
+            }
+
+            var bytesRead = fileChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, availableBytes)), position);
+            if (bytesRead > 0) {
+                position += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        /**
+         * Reads the rest of the range from the data source, as the fill failed before reaching it.
+         */
+        private int readFallback(byte[] b, int off, int len) throws IOException {
+            if (fallbackInputStream == null) {
+                if (fallbackRangeOpener == null) {
+                    throw new IOException("Cache fill failed", failure);
+                }
+                var length = endPosition - position;
+                fallbackInputStream = ByteStreams.limit(fallbackRangeOpener.open(position, length), length);
+            }
+
+            var bytesRead = fallbackInputStream.read(b, off, len);
+            if (bytesRead > 0) {
+                position += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                followers.decrementAndGet();
+            }
+            try {
+                if (fallbackInputStream != null) {
+                    fallbackInputStream.close();
+                }
+            } finally {
+                fileChannel.close();
+            }
+        }
+    }
+}
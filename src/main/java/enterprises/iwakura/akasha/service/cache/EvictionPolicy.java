@@ -0,0 +1,51 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.List;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+/**
+ * Decides which cache entries should be evicted to make room for new ones. Implementations must be thread-safe.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Records a lookup of the specified key, regardless whether it was a hit or a miss.
+     *
+     * @param key File cache key
+     */
+    void recordAccess(FileCacheKey key);
+
+    /**
+     * Called when a committed cache entry was hit.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    void onHit(FileCacheContext fileCacheContext);
+
+    /**
+     * Called when a cache entry was committed.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    void onAdd(FileCacheContext fileCacheContext);
+
+    /**
+     * Called when a committed cache entry was removed.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    void onRemove(FileCacheContext fileCacheContext);
+
+    /**
+     * Selects cache entries that should be evicted to admit the candidate. The entries are not removed by this method.
+     *
+     * @param candidate   Candidate that is not committed yet
+     * @param bytesToFree Number of bytes that must be freed
+     *
+     * @return Entries to evict, or empty list if the candidate should not be admitted
+     */
+    List<FileCacheContext> selectVictims(FileCacheContext candidate, long bytesToFree);
+
+}
@@ -0,0 +1,213 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+/**
+ * Thread-safe catalog of file cache entries. Entries are indexed by their {@link FileCacheKey} and by their file ID,
+ * blocks and variants additionally by the key of their file, while the total size of all committed and reserved
+ * entries is maintained as a running counter.
+ */
+public class FileCacheCatalog {
+
+    private final Map<FileCacheKey, FileCacheContext> contextsByKey = new ConcurrentHashMap<>();
+    private final Map<UUID, FileCacheContext> contextsByFileId = new ConcurrentHashMap<>();
+    private final Map<UUID, FileCacheContext> pendingContextsByFileId = new ConcurrentHashMap<>();
+    private final Map<FileCacheKey, Set<FileCacheKey>> derivedKeysByFileKey = new ConcurrentHashMap<>();
+    private final AtomicLong totalSizeBytes = new AtomicLong();
+
+    /**
+     * Returns the committed cache entry for the specified key.
+     *
+     * @param key File cache key
+     *
+     * @return Optional cache entry
+     */
+    public Optional<FileCacheContext> get(FileCacheKey key) {
+        return Optional.ofNullable(contextsByKey.get(key));
+    }
+
+    /**
+     * Returns the committed cache entry for the specified file ID.
+     *
+     * @param fileId File ID
+     *
+     * @return Optional cache entry
+     */
+    public Optional<FileCacheContext> get(UUID fileId) {
+        return Optional.ofNullable(contextsByFileId.get(fileId));
+    }
+
+    /**
+     * Returns the committed blocks and encoded variants of the specified file.
+     *
+     * @param fileKey File cache key of the whole file
+     *
+     * @return Committed cache entries of the blocks and variants
+     */
+    public List<FileCacheContext> getBlocksAndVariants(FileCacheKey fileKey) {
+        var derivedKeys = derivedKeysByFileKey.get(fileKey);
+        if (derivedKeys == null) {
+            return List.of();
+        }
+        return derivedKeys.stream()
+            .map(contextsByKey::get)
+            .filter(context -> context != null)
+            .toList();
+    }
+
+    /**
+     * Checks if the specified file ID belongs to an entry that is still being written.
+     *
+     * @param fileId File ID
+     *
+     * @return true if the entry is pending, false otherwise
+     */
+    public boolean isPending(UUID fileId) {
+        return pendingContextsByFileId.containsKey(fileId);
+    }
+
+    /**
+     * Reserves space for the specified entry if the total size would stay under the specified limit. The entry is
+     * tracked as pending until it is either {@link #commit(FileCacheContext)}ed or {@link #abort(FileCacheContext)}ed.
+     *
+     * @param context           Cache entry with its file size set
+     * @param maxTotalSizeBytes Maximum total size of the cache
+     *
+     * @return true if the space was reserved, false otherwise
+     */
+    public boolean tryReserve(FileCacheContext context, long maxTotalSizeBytes) {
+        var fileSizeBytes = context.getFileSizeBytes();
+        long currentTotalSizeBytes;
+
+        do {
+            currentTotalSizeBytes = totalSizeBytes.get();
+            if (currentTotalSizeBytes + fileSizeBytes >= maxTotalSizeBytes) {
+                return false;
+            }
+        } while (!totalSizeBytes.compareAndSet(currentTotalSizeBytes, currentTotalSizeBytes + fileSizeBytes));
+
+        pendingContextsByFileId.put(context.getFileId(), context);
+        return true;
+    }
+
+    /**
+     * Commits a previously reserved entry, making it visible to lookups. An existing entry with the same key is
+     * replaced and returned, so the caller can delete its file.
+     *
+     * @param context Reserved cache entry
+     *
+     * @return Optional replaced cache entry
+     */
+    public Optional<FileCacheContext> commit(FileCacheContext context) {
+        pendingContextsByFileId.remove(context.getFileId());
+        var replacedContext = new AtomicReference<FileCacheContext>();
+
+        contextsByKey.compute(context.getKey(), (key, previousContext) -> {
+            if (previousContext != null && previousContext != context) {
+                contextsByFileId.remove(previousContext.getFileId());
+                totalSizeBytes.addAndGet(-previousContext.getFileSizeBytes());
+                replacedContext.set(previousContext);
+            }
+            contextsByFileId.put(context.getFileId(), context);
+            if (previousContext == null) {
+                addDerivedKey(key);
+            }
+            return context;
+        });
+
+        return Optional.ofNullable(replacedContext.get());
+    }
+
+    /**
+     * Aborts a previously reserved entry, releasing its reserved space.
+     *
+     * @param context Reserved cache entry
+     */
+    public void abort(FileCacheContext context) {
+        if (pendingContextsByFileId.remove(context.getFileId()) != null) {
+            totalSizeBytes.addAndGet(-context.getFileSizeBytes());
+        }
+    }
+
+    /**
+     * Removes the specified committed entry, if it is still the current entry for its key.
+     *
+     * @param context Cache entry
+     *
+     * @return true if the entry was removed, false otherwise
+     */
+    public boolean remove(FileCacheContext context) {
+        var removed = new boolean[1];
+
+        contextsByKey.computeIfPresent(context.getKey(), (key, currentContext) -> {
+            if (currentContext != context) {
+                return currentContext;
+            }
+            contextsByFileId.remove(context.getFileId());
+            totalSizeBytes.addAndGet(-context.getFileSizeBytes());
+            removeDerivedKey(key);
+            removed[0] = true;
+            return null;
+        });
+
+        return removed[0];
+    }
+
+    private void addDerivedKey(FileCacheKey key) {
+        if (key.isBlock() || key.isVariant()) {
+            derivedKeysByFileKey.compute(key.toFileKey(), (fileKey, derivedKeys) -> {
+                var keys = derivedKeys != null ? derivedKeys : ConcurrentHashMap.<FileCacheKey>newKeySet();
+                keys.add(key);
+                return keys;
+            });
+        }
+    }
+
+    private void removeDerivedKey(FileCacheKey key) {
+        if (key.isBlock() || key.isVariant()) {
+            derivedKeysByFileKey.computeIfPresent(key.toFileKey(), (fileKey, derivedKeys) -> {
+                derivedKeys.remove(key);
+                return derivedKeys.isEmpty() ? null : derivedKeys;
+            });
+        }
+    }
+
+    /**
+     * Returns an unmodifiable view of all committed entries.
+     *
+     * @return Committed cache entries
+     */
+    public Collection<FileCacheContext> values() {
+        return Collections.unmodifiableCollection(contextsByKey.values());
+    }
+
+    /**
+     * Returns the number of committed entries.
+     *
+     * @return Number of committed entries
+     */
+    public int size() {
+        return contextsByKey.size();
+    }
+
+    /**
+     * Returns the total size of committed and reserved entries.
+     *
+     * @return Total size in bytes
+     */
+    public long getTotalSizeBytes() {
+        return totalSizeBytes.get();
+    }
+}
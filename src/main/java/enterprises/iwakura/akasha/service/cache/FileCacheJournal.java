@@ -0,0 +1,289 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import com.google.gson.Gson;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of file cache entries. Each line consists of a CRC32 checksum and a JSON encoded
+ * {@link Entry}, so torn or corrupted lines are detected and skipped during {@link #replay()}.
+ */
+@Slf4j
+public class FileCacheJournal {
+
+    public static final String JOURNAL_FILE_NAME = "journal";
+    public static final String JOURNAL_TEMP_FILE_NAME = "journal.tmp";
+
+    private static final Gson GSON = new Gson();
+
+    private final Path journalPath;
+    private final Path journalTempPath;
+    private FileChannel journalChannel;
+
+    public FileCacheJournal(Path cacheDirectoryPath) {
+        this.journalPath = cacheDirectoryPath.resolve(JOURNAL_FILE_NAME);
+        this.journalTempPath = cacheDirectoryPath.resolve(JOURNAL_TEMP_FILE_NAME);
+    }
+
+    /**
+     * Checks if the specified file name belongs to the journal.
+     *
+     * @param fileName File name
+     *
+     * @return true if the file belongs to the journal, false otherwise
+     */
+    public static boolean isJournalFile(String fileName) {
+        return JOURNAL_FILE_NAME.equals(fileName) || JOURNAL_TEMP_FILE_NAME.equals(fileName);
+    }
+
+    /**
+     * Replays the journal and returns the last state of every entry that was not removed.
+     *
+     * @return Journal entries
+     */
+    public synchronized List<Entry> replay() {
+        Map<UUID, Entry> entries = new LinkedHashMap<>();
+
+        if (!Files.exists(journalPath)) {
+            return new ArrayList<>();
+        }
+
+        int invalidLines = 0;
+
+        try {
+            for (String line : Files.readAllLines(journalPath, StandardCharsets.UTF_8)) {
+                var entry = parseLine(line);
+
+                if (entry == null) {
+                    invalidLines++;
+                    continue;
+                }
+
+                if (entry.getOperation() == Operation.REMOVE) {
+                    entries.remove(entry.getFileId());
+                } else {
+                    entries.put(entry.getFileId(), entry);
+                }
+            }
+        } catch (IOException exception) {
+            log.error("Failed to read file cache journal at {}", journalPath.toAbsolutePath(), exception);
+        }
+
+        if (invalidLines > 0) {
+            log.warn("Skipped {} invalid lines in file cache journal at {}", invalidLines, journalPath.toAbsolutePath());
+        }
+
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Appends a {@link Operation#PUT} entry for the specified cache entry.
+     *
+     * @param fileCacheContext Cache entry
+     * @param complete         Whether the cache file is completely written
+     */
+    public void appendPut(FileCacheContext fileCacheContext, boolean complete) {
+        append(Entry.of(Operation.PUT, fileCacheContext, complete));
+    }
+
+    /**
+     * Appends a {@link Operation#REMOVE} entry for the specified cache entry.
+     *
+     * @param fileCacheContext Cache entry
+     */
+    public void appendRemove(FileCacheContext fileCacheContext) {
+        append(Entry.of(Operation.REMOVE, fileCacheContext, false));
+    }
+
+    /**
+     * Rewrites the journal so it only contains the specified cache entries. The new journal is written to a temporary
+     * file and atomically moved over the old one.
+     *
+     * @param fileCacheContexts Committed cache entries
+     */
+    public synchronized void compact(Collection<FileCacheContext> fileCacheContexts) {
+        var builder = new StringBuilder();
+        fileCacheContexts.forEach(context -> builder.append(formatLine(Entry.of(Operation.PUT, context, true))));
+
+        try {
+            closeChannel();
+            try (var channel = FileChannel.open(journalTempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                var buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(journalTempPath, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            log.error("Failed to compact file cache journal at {}", journalPath.toAbsolutePath(), exception);
+        }
+    }
+
+    /**
+     * Forces the journal to the disk and closes it.
+     */
+    public synchronized void close() {
+        try {
+            if (journalChannel != null) {
+                journalChannel.force(true);
+            }
+        } catch (IOException exception) {
+            log.error("Failed to force file cache journal at {}", journalPath.toAbsolutePath(), exception);
+        }
+        closeChannel();
+    }
+
+    private synchronized void append(Entry entry) {
+        try {
+            if (journalChannel == null || !journalChannel.isOpen()) {
+                journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            }
+            var buffer = ByteBuffer.wrap(formatLine(entry).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                journalChannel.write(buffer);
+            }
+        } catch (IOException exception) {
+            log.error("Failed to append to file cache journal at {}", journalPath.toAbsolutePath(), exception);
+        }
+    }
+
+    private void closeChannel() {
+        if (journalChannel != null) {
+            try {
+                journalChannel.close();
+            } catch (IOException exception) {
+                log.error("Failed to close file cache journal at {}", journalPath.toAbsolutePath(), exception);
+            }
+            journalChannel = null;
+        }
+    }
+
+    private static String formatLine(Entry entry) {
+        var json = GSON.toJson(entry);
+        return "%08x %s\n".formatted(checksum(json), json);
+    }
+
+    private static Entry parseLine(String line) {
+        var indexOfSpace = line.indexOf(' ');
+
+        if (indexOfSpace != 8) {
+            return null;
+        }
+
+        try {
+            var expectedChecksum = Long.parseLong(line.substring(0, indexOfSpace), 16);
+            var json = line.substring(indexOfSpace + 1);
+
+            if (checksum(json) != expectedChecksum) {
+                return null;
+            }
+
+            var entry = GSON.fromJson(json, Entry.class);
+            return entry != null && entry.isValid() ? entry : null;
+        } catch (RuntimeException exception) {
+            return null;
+        }
+    }
+
+    private static long checksum(String json) {
+        var crc32 = new CRC32();
+        crc32.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    public enum Operation {
+        PUT,
+        REMOVE
+    }
+
+    @Data
+    public static class Entry {
+
+        private Operation operation;
+        private String dataSourceName;
+        private String filePath;
+        private Integer blockIndex;
+        private String contentEncoding;
+        private UUID fileId;
+        private long fileSizeBytes;
+        private long remoteFileSizeBytes;
+        private long remoteLastModifiedMillis;
+        private String entityTag;
+        private long lastAccessAtMillis;
+        private long lastValidatedAtMillis;
+        private boolean complete;
+
+        /**
+         * Creates a journal entry from the specified cache entry.
+         *
+         * @param operation        Operation
+         * @param fileCacheContext Cache entry
+         * @param complete         Whether the cache file is completely written
+         *
+         * @return Journal entry
+         */
+        public static Entry of(Operation operation, FileCacheContext fileCacheContext, boolean complete) {
+            var entry = new Entry();
+            entry.setOperation(operation);
+            entry.setDataSourceName(fileCacheContext.getKey().getDataSourceName());
+            entry.setFilePath(fileCacheContext.getKey().getFilePath());
+            entry.setBlockIndex(fileCacheContext.getKey().getBlockIndex());
+            entry.setContentEncoding(fileCacheContext.getKey().getContentEncoding());
+            entry.setFileId(fileCacheContext.getFileId());
+            entry.setFileSizeBytes(fileCacheContext.getFileSizeBytes());
+            entry.setRemoteFileSizeBytes(fileCacheContext.getRemoteFileSizeBytes());
+            entry.setRemoteLastModifiedMillis(fileCacheContext.getRemoteLastModifiedMillis());
+            entry.setEntityTag(fileCacheContext.getEntityTag());
+            entry.setLastAccessAtMillis(fileCacheContext.getLastAccessAtMillis());
+            entry.setLastValidatedAtMillis(fileCacheContext.getLastValidatedAtMillis());
+            entry.setComplete(complete);
+            return entry;
+        }
+
+        /**
+         * Creates a cache entry from this journal entry.
+         *
+         * @return Cache entry
+         */
+        public FileCacheContext toFileCacheContext() {
+            var fileCacheKey = new FileCacheKey(dataSourceName, filePath, blockIndex, contentEncoding);
+            var fileCacheContext = new FileCacheContext(fileCacheKey);
+            fileCacheContext.setFileId(fileId);
+            fileCacheContext.setFileSizeBytes(fileSizeBytes);
+            // Entries journaled before blocks were introduced do not have the remote file size
+            fileCacheContext.setRemoteFileSizeBytes(remoteFileSizeBytes != 0 ? remoteFileSizeBytes : fileSizeBytes);
+            fileCacheContext.setRemoteLastModifiedMillis(remoteLastModifiedMillis);
+            fileCacheContext.setEntityTag(entityTag);
+            fileCacheContext.setLastAccessAtMillis(lastAccessAtMillis);
+            fileCacheContext.setLastValidatedAtMillis(lastValidatedAtMillis);
+            return fileCacheContext;
+        }
+
+        private boolean isValid() {
+            return operation != null && dataSourceName != null && filePath != null && fileId != null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package enterprises.iwakura.akasha.service.cache;
+
+/**
+ * Count-Min sketch of 4-bit counters that estimates how often keys were accessed. Counters are periodically halved,
+ * so the estimated frequencies reflect recent popularity. Not thread-safe.
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_FREQUENCY = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a frequency sketch.
+     *
+     * @param expectedEntries Expected number of distinct keys, determines the sketch width
+     */
+    public FrequencySketch(int expectedEntries) {
+        var tableSize = Integer.highestOneBit(Math.max(expectedEntries, 64) - 1) << 1;
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    /**
+     * Returns the estimated number of accesses of the specified key, up to 15.
+     *
+     * @param key Key
+     *
+     * @return Estimated frequency
+     */
+    public int frequency(Object key) {
+        var hash = spread(key.hashCode());
+        var frequency = MAX_FREQUENCY;
+
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            var counterHash = counterHash(hash, depth);
+            var index = (int) (counterHash >>> 32) & tableMask;
+            var shift = (int) (counterHash & 15) << 2;
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xfL));
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Increments the estimated frequency of the specified key.
+     *
+     * @param key Key
+     */
+    public void increment(Object key) {
+        var hash = spread(key.hashCode());
+        var incremented = false;
+
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            var counterHash = counterHash(hash, depth);
+            var index = (int) (counterHash >>> 32) & tableMask;
+            var shift = (int) (counterHash & 15) << 2;
+
+            if (((table[index] >>> shift) & 0xfL) < MAX_FREQUENCY) {
+                table[index] += 1L << shift;
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (int index = 0; index < table.length; index++) {
+            table[index] = (table[index] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static long counterHash(int hash, int depth) {
+        var counterHash = (hash + SEEDS[depth]) * SEEDS[depth];
+        return counterHash ^ (counterHash >>> 29);
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
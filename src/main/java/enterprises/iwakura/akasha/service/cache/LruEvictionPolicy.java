@@ -0,0 +1,94 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+/**
+ * Eviction policy that evicts the least recently used entries until enough bytes are freed. Hits are recorded into a
+ * striped buffer without locking and applied in batches, before the next change of the entries or once the buffer
+ * fills up.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StripedBuffer<FileCacheContext> hitBuffer = new StripedBuffer<>();
+    private final LinkedHashMap<FileCacheKey, FileCacheContext> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordAccess(FileCacheKey key) {
+    }
+
+    @Override
+    public void onHit(FileCacheContext fileCacheContext) {
+        if (!hitBuffer.offer(fileCacheContext) && lock.tryLock()) {
+            // Buffer is full, the hit is applied after the buffered ones. Dropped if another thread is draining.
+            try {
+                drainHits();
+                applyHit(fileCacheContext);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void onAdd(FileCacheContext fileCacheContext) {
+        lock.lock();
+        try {
+            drainHits();
+            entries.put(fileCacheContext.getKey(), fileCacheContext);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onRemove(FileCacheContext fileCacheContext) {
+        lock.lock();
+        try {
+            drainHits();
+            entries.remove(fileCacheContext.getKey(), fileCacheContext);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<FileCacheContext> selectVictims(FileCacheContext candidate, long bytesToFree) {
+        lock.lock();
+        try {
+            drainHits();
+            var victims = new ArrayList<FileCacheContext>();
+            long freedBytes = 0;
+
+            for (var fileCacheContext : entries.values()) {
+                if (freedBytes >= bytesToFree) {
+                    break;
+                }
+                victims.add(fileCacheContext);
+                freedBytes += fileCacheContext.getFileSizeBytes();
+            }
+
+            return freedBytes >= bytesToFree ? victims : List.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the buffered hits. Must be called while holding the lock.
+     */
+    private void drainHits() {
+        hitBuffer.drainTo(this::applyHit);
+    }
+
+    private void applyHit(FileCacheContext fileCacheContext) {
+        // Access-ordered map moves the entry to the most recently used position
+        entries.get(fileCacheContext.getKey());
+    }
+}
@@ -0,0 +1,143 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory tier of the file cache. Holds contents of small cache files in direct (off-heap) buffers, so they can be
+ * served without touching the filesystem or inflating the heap. Least recently used files are evicted once the byte
+ * budget is exceeded. Concurrent loads of the same file share a single buffer.
+ */
+public class MemoryCacheTier {
+
+    private final LinkedHashMap<UUID, ByteBuffer> buffersByFileId = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<UUID, CompletableFuture<ByteBuffer>> loadsByFileId = new ConcurrentHashMap<>();
+    private final long maxTotalSizeBytes;
+    private long totalSizeBytes;
+
+    public MemoryCacheTier(long maxTotalSizeBytes) {
+        this.maxTotalSizeBytes = maxTotalSizeBytes;
+    }
+
+    /**
+     * Returns a read-only duplicate of the buffer holding the specified cache file.
+     *
+     * @param fileId File ID
+     *
+     * @return Optional buffer positioned at the start of the file
+     */
+    public synchronized Optional<ByteBuffer> get(UUID fileId) {
+        return Optional.ofNullable(buffersByFileId.get(fileId)).map(ByteBuffer::asReadOnlyBuffer);
+    }
+
+    /**
+     * Loads the specified cache file into a direct buffer and stores it, evicting least recently used files if needed.
+     * If the file is already held or being loaded by another thread, its buffer is returned instead.
+     *
+     * @param fileId        File ID
+     * @param fileCachePath Path to the cache file
+     * @param fileSizeBytes Expected size of the cache file
+     *
+     * @return Optional buffer positioned at the start of the file, empty if the file does not fit or the concurrent
+     * load failed
+     *
+     * @throws IOException If the cache file could not be read
+     */
+    public Optional<ByteBuffer> load(UUID fileId, Path fileCachePath, long fileSizeBytes) throws IOException {
+        if (fileSizeBytes > maxTotalSizeBytes || fileSizeBytes > Integer.MAX_VALUE) {
+            return Optional.empty();
+        }
+
+        var loadFuture = new CompletableFuture<ByteBuffer>();
+        var existingLoadFuture = loadsByFileId.putIfAbsent(fileId, loadFuture);
+        if (existingLoadFuture != null) {
+            try {
+                return Optional.of(existingLoadFuture.join().asReadOnlyBuffer());
+            } catch (CompletionException exception) {
+                // Caller reads the cache file from the disk instead
+                return Optional.empty();
+            }
+        }
+
+        try {
+            // File may have been loaded since the caller looked it up
+            ByteBuffer byteBuffer;
+            synchronized (this) {
+                byteBuffer = buffersByFileId.get(fileId);
+            }
+            if (byteBuffer == null) {
+                byteBuffer = read(fileId, fileCachePath, (int) fileSizeBytes);
+            }
+            loadFuture.complete(byteBuffer);
+            return Optional.of(byteBuffer.asReadOnlyBuffer());
+        } catch (IOException | RuntimeException exception) {
+            loadFuture.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            loadsByFileId.remove(fileId, loadFuture);
+        }
+    }
+
+    /**
+     * Reads the cache file into a new direct buffer and stores it, evicting least recently used files if needed.
+     */
+    private ByteBuffer read(UUID fileId, Path fileCachePath, int fileSizeBytes) throws IOException {
+        var byteBuffer = ByteBuffer.allocateDirect(fileSizeBytes);
+        try (var fileChannel = FileChannel.open(fileCachePath)) {
+            while (byteBuffer.hasRemaining()) {
+                if (fileChannel.read(byteBuffer) == -1) {
+                    throw new IOException("Cache file is shorter than expected: " + fileCachePath.toAbsolutePath());
+                }
+            }
+        }
+        byteBuffer.flip();
+
+        synchronized (this) {
+            var previousBuffer = buffersByFileId.put(fileId, byteBuffer);
+            if (previousBuffer != null) {
+                totalSizeBytes -= previousBuffer.capacity();
+            }
+            totalSizeBytes += byteBuffer.capacity();
+
+            var iterator = buffersByFileId.entrySet().iterator();
+            while (totalSizeBytes > maxTotalSizeBytes && iterator.hasNext()) {
+                var entry = iterator.next();
+                if (!entry.getKey().equals(fileId)) {
+                    totalSizeBytes -= entry.getValue().capacity();
+                    iterator.remove();
+                }
+            }
+        }
+
+        return byteBuffer;
+    }
+
+    /**
+     * Removes the specified cache file from memory.
+     *
+     * @param fileId File ID
+     */
+    public synchronized void remove(UUID fileId) {
+        var byteBuffer = buffersByFileId.remove(fileId);
+        if (byteBuffer != null) {
+            totalSizeBytes -= byteBuffer.capacity();
+        }
+    }
+
+    /**
+     * Returns the total size of all files held in memory.
+     *
+     * @return Total size in bytes
+     */
+    public synchronized long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+}
@@ -0,0 +1,33 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.List;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+/**
+ * Eviction policy that never evicts, so new files are not cached once the cache is full.
+ */
+public class NoEvictionPolicy implements EvictionPolicy {
+
+    @Override
+    public void recordAccess(FileCacheKey key) {
+    }
+
+    @Override
+    public void onHit(FileCacheContext fileCacheContext) {
+    }
+
+    @Override
+    public void onAdd(FileCacheContext fileCacheContext) {
+    }
+
+    @Override
+    public void onRemove(FileCacheContext fileCacheContext) {
+    }
+
+    @Override
+    public List<FileCacheContext> selectVictims(FileCacheContext candidate, long bytesToFree) {
+        return List.of();
+    }
+}
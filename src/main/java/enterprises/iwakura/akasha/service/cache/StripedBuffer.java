@@ -0,0 +1,103 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded buffer that records events from concurrent threads without locking, so they can be applied to a structure
+ * that is not thread-safe in batches. Events are spread over ring buffers by thread, so recording threads rarely
+ * contend. Events are offered by any thread, but must be drained by one thread at a time.
+ *
+ * @param <E> Event type
+ */
+public class StripedBuffer<E> {
+
+    private static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates a striped buffer with four stripes per available processor.
+     */
+    public StripedBuffer() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Creates a striped buffer.
+     *
+     * @param stripeCount Number of stripes, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public StripedBuffer(int stripeCount) {
+        var tableSize = Integer.highestOneBit(Math.max(stripeCount, 2) - 1) << 1;
+        this.stripes = new Stripe[tableSize];
+        this.stripeMask = tableSize - 1;
+        for (int index = 0; index < tableSize; index++) {
+            stripes[index] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Records the event into the stripe of the current thread.
+     *
+     * @param event Event
+     *
+     * @return true if recorded, false if the stripe is full or another thread raced for the same slot
+     */
+    public boolean offer(E event) {
+        var threadId = Thread.currentThread().threadId();
+        var hash = (int) (threadId ^ (threadId >>> 32)) * 0x9e3779b9;
+        return stripes[(hash >>> 16) & stripeMask].offer(event);
+    }
+
+    /**
+     * Passes the recorded events to the consumer, in the order they were recorded within each stripe. Must not be
+     * called concurrently.
+     *
+     * @param consumer Consumer of the events
+     */
+    public void drainTo(Consumer<E> consumer) {
+        for (var stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    /**
+     * Ring buffer with many producers and a single consumer.
+     */
+    private static class Stripe<E> {
+
+        private final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        private boolean offer(E event) {
+            var tail = writeCounter.get();
+            if (tail - readCounter >= STRIPE_SIZE || !writeCounter.compareAndSet(tail, tail + 1)) {
+                return false;
+            }
+            slots.setRelease((int) (tail & STRIPE_MASK), event);
+            return true;
+        }
+
+        private void drainTo(Consumer<E> consumer) {
+            var head = readCounter;
+            var tail = writeCounter.get();
+            for (; head < tail; head++) {
+                var index = (int) (head & STRIPE_MASK);
+                var event = slots.getAcquire(index);
+                if (event == null) {
+                    // Slot was claimed, but its event is not visible yet
+                    break;
+                }
+                slots.setRelease(index, null);
+                consumer.accept(event);
+            }
+            readCounter = head;
+        }
+    }
+}
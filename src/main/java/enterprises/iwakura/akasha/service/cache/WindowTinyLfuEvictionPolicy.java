@@ -0,0 +1,238 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.collect.Iterators;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+/**
+ * Size-aware Window TinyLFU eviction policy. New entries are always admitted into a small LRU window, from which they
+ * move into the probation segment of a segmented LRU. Entries hit while in probation are promoted into the protected
+ * segment. Entries pushed out of the window by the candidate contend with the least recently used entries of the
+ * probation segment, and whichever is estimated to be accessed less frequently is evicted. Accesses and hits are
+ * recorded into striped buffers without locking and applied in batches, before the next change of the entries or once
+ * a buffer fills up.
+ */
+public class WindowTinyLfuEvictionPolicy implements EvictionPolicy {
+
+    public static final double WINDOW_RATIO = 0.01;
+    public static final double PROTECTED_RATIO = 0.8;
+    public static final int EXPECTED_ENTRIES = 1 << 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StripedBuffer<FileCacheKey> accessBuffer = new StripedBuffer<>();
+    private final StripedBuffer<FileCacheContext> hitBuffer = new StripedBuffer<>();
+    private final FrequencySketch frequencySketch = new FrequencySketch(EXPECTED_ENTRIES);
+    private final Segment window;
+    private final Segment probation;
+    private final Segment protectedSegment;
+
+    /**
+     * Creates a Window TinyLFU eviction policy.
+     *
+     * @param maxTotalSizeBytes Maximum total size of the cache
+     */
+    public WindowTinyLfuEvictionPolicy(long maxTotalSizeBytes) {
+        var maxWindowSizeBytes = (long) (maxTotalSizeBytes * WINDOW_RATIO);
+        this.window = new Segment(maxWindowSizeBytes);
+        this.probation = new Segment(Long.MAX_VALUE);
+        this.protectedSegment = new Segment((long) ((maxTotalSizeBytes - maxWindowSizeBytes) * PROTECTED_RATIO));
+    }
+
+    @Override
+    public void recordAccess(FileCacheKey key) {
+        if (!accessBuffer.offer(key) && lock.tryLock()) {
+            // Buffer is full, the access is applied after the buffered ones. Dropped if another thread is draining.
+            try {
+                drainBuffers();
+                frequencySketch.increment(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void onHit(FileCacheContext fileCacheContext) {
+        if (!hitBuffer.offer(fileCacheContext) && lock.tryLock()) {
+            // Buffer is full, the hit is applied after the buffered ones. Dropped if another thread is draining.
+            try {
+                drainBuffers();
+                applyHit(fileCacheContext);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void onAdd(FileCacheContext fileCacheContext) {
+        lock.lock();
+        try {
+            drainBuffers();
+            window.add(fileCacheContext);
+            while (window.isOverflowing()) {
+                probation.add(window.removeEldest());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onRemove(FileCacheContext fileCacheContext) {
+        lock.lock();
+        try {
+            drainBuffers();
+            if (!window.remove(fileCacheContext) && !probation.remove(fileCacheContext)) {
+                protectedSegment.remove(fileCacheContext);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<FileCacheContext> selectVictims(FileCacheContext candidate, long bytesToFree) {
+        lock.lock();
+        try {
+            drainBuffers();
+            return selectVictimsLocked(candidate, bytesToFree);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the buffered accesses and hits. Must be called while holding the lock.
+     */
+    private void drainBuffers() {
+        accessBuffer.drainTo(frequencySketch::increment);
+        hitBuffer.drainTo(this::applyHit);
+    }
+
+    private void applyHit(FileCacheContext fileCacheContext) {
+        var key = fileCacheContext.getKey();
+
+        if (window.touch(key) || protectedSegment.touch(key)) {
+            return;
+        }
+
+        var promotedContext = probation.remove(key);
+        if (promotedContext != null) {
+            protectedSegment.add(promotedContext);
+            // Demotes the least recently used protected entries back into probation
+            while (protectedSegment.isOverflowing()) {
+                probation.add(protectedSegment.removeEldest());
+            }
+        }
+    }
+
+    private List<FileCacheContext> selectVictimsLocked(FileCacheContext candidate, long bytesToFree) {
+        var victims = new ArrayList<FileCacheContext>();
+        var survivors = new ArrayDeque<FileCacheContext>();
+        var windowEntries = window.entries.values().iterator();
+        var mainEntries = Iterators.concat(probation.entries.values().iterator(),
+            protectedSegment.entries.values().iterator());
+        long windowOverflowBytes = window.sizeBytes + candidate.getFileSizeBytes() - window.maxSizeBytes;
+        long freedBytes = 0;
+        FileCacheContext mainVictim = null;
+
+        while (freedBytes < bytesToFree) {
+            if (mainVictim == null && mainEntries.hasNext()) {
+                mainVictim = mainEntries.next();
+            }
+
+            FileCacheContext victim;
+            if (windowOverflowBytes > 0 && windowEntries.hasNext()) {
+                // Entry pushed out of the window by the candidate contends with the probation victim
+                var windowCandidate = windowEntries.next();
+                windowOverflowBytes -= windowCandidate.getFileSizeBytes();
+                if (mainVictim != null && frequencySketch.frequency(windowCandidate.getKey())
+                    > frequencySketch.frequency(mainVictim.getKey())) {
+                    survivors.add(windowCandidate);
+                    victim = mainVictim;
+                    mainVictim = null;
+                } else {
+                    victim = windowCandidate;
+                }
+            } else if (mainVictim != null) {
+                victim = mainVictim;
+                mainVictim = null;
+            } else if (windowEntries.hasNext()) {
+                victim = windowEntries.next();
+            } else if (!survivors.isEmpty()) {
+                victim = survivors.poll();
+            } else {
+                return List.of();
+            }
+
+            victims.add(victim);
+            freedBytes += victim.getFileSizeBytes();
+        }
+
+        return victims;
+    }
+
+    /**
+     * LRU ordered segment with its own byte budget.
+     */
+    private static class Segment {
+
+        private final LinkedHashMap<FileCacheKey, FileCacheContext> entries = new LinkedHashMap<>();
+        private final long maxSizeBytes;
+        private long sizeBytes;
+
+        private Segment(long maxSizeBytes) {
+            this.maxSizeBytes = maxSizeBytes;
+        }
+
+        private void add(FileCacheContext fileCacheContext) {
+            var previousContext = entries.put(fileCacheContext.getKey(), fileCacheContext);
+            if (previousContext != null) {
+                sizeBytes -= previousContext.getFileSizeBytes();
+            }
+            sizeBytes += fileCacheContext.getFileSizeBytes();
+        }
+
+        private boolean touch(FileCacheKey key) {
+            var fileCacheContext = entries.remove(key);
+            if (fileCacheContext == null) {
+                return false;
+            }
+            entries.put(key, fileCacheContext);
+            return true;
+        }
+
+        private FileCacheContext remove(FileCacheKey key) {
+            var fileCacheContext = entries.remove(key);
+            if (fileCacheContext != null) {
+                sizeBytes -= fileCacheContext.getFileSizeBytes();
+            }
+            return fileCacheContext;
+        }
+
+        private boolean remove(FileCacheContext fileCacheContext) {
+            if (entries.remove(fileCacheContext.getKey(), fileCacheContext)) {
+                sizeBytes -= fileCacheContext.getFileSizeBytes();
+                return true;
+            }
+            return false;
+        }
+
+        private FileCacheContext removeEldest() {
+            return remove(entries.keySet().iterator().next());
+        }
+
+        private boolean isOverflowing() {
+            // Always keeps at least one entry, so entries larger than the segment can still be held
+            return sizeBytes > maxSizeBytes && entries.size() > 1;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.util.concurrent.CompletableFuture;
+
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.ReadContext;
+
+/**
+ * Asynchronous variant of {@link DataSourceHandler} for opening files. Calls return right away, without blocking the
+ * calling thread for I/O. Failures complete the futures exceptionally with the same exceptions the blocking handler
+ * would throw. Blocking handlers are adapted by {@link BlockingDataSourceHandlerAdapter}.
+ *
+ * @param <T> Data source type
+ */
+public interface AsyncDataSourceHandler<T extends DataSource> {
+
+    DataSourceType getType();
+
+    /**
+     * Opens a file of the data source.
+     *
+     * @param dataSource Data source
+     * @param path       File path
+     *
+     * @return Future of the read context of the file, whose input stream must be closed
+     */
+    CompletableFuture<ReadContext> readAsync(T dataSource, String path);
+
+    /**
+     * Checks if files of the data source should be cached in the file cache.
+     *
+     * @return true if files should be cached, false otherwise
+     *
+     * @see DataSourceHandler#isCacheable()
+     */
+    default boolean isCacheable() {
+        return true;
+    }
+
+}
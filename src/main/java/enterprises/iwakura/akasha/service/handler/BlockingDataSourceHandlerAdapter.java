@@ -0,0 +1,62 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.ReadContext;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Adapts a blocking data source handler to the asynchronous contract by running its calls on an executor, so the
+ * calling thread is not blocked.
+ *
+ * @param <T> Data source type
+ */
+@RequiredArgsConstructor
+public class BlockingDataSourceHandlerAdapter<T extends DataSource> implements AsyncDataSourceHandler<T> {
+
+    @Getter
+    private final DataSourceHandler<T> handler;
+    private final Executor executor;
+
+    @Override
+    public DataSourceType getType() {
+        return handler.getType();
+    }
+
+    @Override
+    public CompletableFuture<ReadContext> readAsync(T dataSource, String path) {
+        return supplyAsync(() -> handler.read(dataSource, path));
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return handler.isCacheable();
+    }
+
+    private <R> CompletableFuture<R> supplyAsync(BlockingCall<R> blockingCall) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return blockingCall.call();
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, executor);
+    }
+
+    /**
+     * Call of the blocking data source handler.
+     *
+     * @param <R> Result type
+     */
+    @FunctionalInterface
+    private interface BlockingCall<R> {
+
+        R call() throws IOException;
+    }
+}
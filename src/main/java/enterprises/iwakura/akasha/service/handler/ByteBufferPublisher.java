@@ -0,0 +1,310 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes the content of a file as byte buffers read by a chunk reader. Chunks are read on the executor only when
+ * the subscriber requested them, so a slow subscriber holds back the reads instead of letting them pile up in memory,
+ * while a subscriber requesting ahead lets the next chunk be read while the previous one is being written. The
+ * publisher can be subscribed to once. Its chunk reader is closed once the content is fully published, fails or the
+ * subscription is cancelled.
+ */
+@Slf4j
+public class ByteBufferPublisher implements Flow.Publisher<ByteBuffer> {
+
+    public static final int CHUNK_SIZE_BYTES = 64 * 1024; // 64 KB
+    public static final long MAPPED_REGION_SIZE_BYTES = 64 * 1024 * 1024; // 64 MB
+
+    private final ChunkReader chunkReader;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * Creates a new byte buffer publisher.
+     *
+     * @param chunkReader Reads the chunks to publish
+     * @param executor    Executor reading the chunks
+     */
+    public ByteBufferPublisher(ChunkReader chunkReader, Executor executor) {
+        this.chunkReader = chunkReader;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a publisher of an input stream, which is read in chunks of up to {@link #CHUNK_SIZE_BYTES}.
+     *
+     * @param inputStream Input stream, closed by the publisher
+     * @param executor    Executor reading the input stream
+     *
+     * @return Byte buffer publisher
+     */
+    public static ByteBufferPublisher ofInputStream(InputStream inputStream, Executor executor) {
+        return new ByteBufferPublisher(new InputStreamChunkReader(inputStream, null), executor);
+    }
+
+    /**
+     * Creates a publisher of an input stream opened once the first chunk is requested, so nothing is opened for
+     * subscriptions cancelled right away.
+     *
+     * @param inputStreamOpener Opens the input stream, which is closed by the publisher
+     * @param executor          Executor opening and reading the input stream
+     *
+     * @return Byte buffer publisher
+     */
+    public static ByteBufferPublisher ofInputStream(InputStreamOpener inputStreamOpener, Executor executor) {
+        return new ByteBufferPublisher(new InputStreamChunkReader(null, inputStreamOpener), executor);
+    }
+
+    /**
+     * Creates a publisher of a range of a file channel, which is memory mapped in regions of up to
+     * {@link #MAPPED_REGION_SIZE_BYTES}, so its content is written from the page cache without being copied through
+     * the heap. The file channel is not closed by the publisher.
+     *
+     * @param fileChannel File channel
+     * @param offset      Offset of the range
+     * @param length      Length of the range
+     * @param executor    Executor mapping the regions
+     *
+     * @return Byte buffer publisher
+     */
+    public static ByteBufferPublisher ofFileChannel(FileChannel fileChannel, long offset, long length,
+        Executor executor) {
+        var endPosition = offset + length;
+        return new ByteBufferPublisher(new ChunkReader() {
+            private long position = offset;
+
+            @Override
+            public ByteBuffer read() throws IOException {
+                if (position >= endPosition) {
+                    return null;
+                }
+                var regionSizeBytes = Math.min(MAPPED_REGION_SIZE_BYTES, endPosition - position);
+                var region = fileChannel.map(MapMode.READ_ONLY, position, regionSizeBytes);
+                position += regionSizeBytes;
+                return region;
+            }
+
+            @Override
+            public void close() {
+                // File channel is owned by the read context
+            }
+        }, executor);
+    }
+
+    /**
+     * Creates a publisher of a single byte buffer. The byte buffer is not modified.
+     *
+     * @param byteBuffer Byte buffer
+     * @param executor   Executor publishing the byte buffer
+     *
+     * @return Byte buffer publisher
+     */
+    public static ByteBufferPublisher ofByteBuffer(ByteBuffer byteBuffer, Executor executor) {
+        return new ByteBufferPublisher(new ChunkReader() {
+            private boolean published;
+
+            @Override
+            public ByteBuffer read() {
+                if (published || !byteBuffer.hasRemaining()) {
+                    return null;
+                }
+                published = true;
+                return byteBuffer.slice();
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        }, executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Byte buffer publisher can be subscribed to once"));
+            return;
+        }
+        new ChunkSubscription(subscriber).start();
+    }
+
+    /**
+     * Reads chunks of a file. Calls are never concurrent.
+     */
+    public interface ChunkReader extends Closeable {
+
+        /**
+         * Reads the next chunk.
+         *
+         * @return Next chunk, or null if there are no more chunks
+         *
+         * @throws IOException If reading failed
+         */
+        ByteBuffer read() throws IOException;
+
+    }
+
+    /**
+     * Opens an input stream.
+     */
+    @FunctionalInterface
+    public interface InputStreamOpener {
+
+        InputStream open() throws IOException;
+
+    }
+
+    /**
+     * Reads chunks of an input stream, opening it on the first read if it is not open yet.
+     */
+    private static class InputStreamChunkReader implements ChunkReader {
+
+        private final InputStreamOpener inputStreamOpener;
+        private InputStream inputStream;
+
+        private InputStreamChunkReader(InputStream inputStream, InputStreamOpener inputStreamOpener) {
+            this.inputStream = inputStream;
+            this.inputStreamOpener = inputStreamOpener;
+        }
+
+        @Override
+        public ByteBuffer read() throws IOException {
+            if (inputStream == null) {
+                inputStream = inputStreamOpener.open();
+            }
+            var chunk = new byte[CHUNK_SIZE_BYTES];
+            var bytesRead = inputStream.read(chunk);
+            return bytesRead == -1 ? null : ByteBuffer.wrap(chunk, 0, bytesRead);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Subscription publishing chunks as they are requested. Chunks are read and published by a single task at a
+     * time, which keeps running while there is outstanding demand.
+     */
+    private class ChunkSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+
+        private ChunkSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested %d chunks, must be positive".formatted(n));
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException exception) {
+                    pendingSignals.set(0);
+                    finish(exception);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            var signals = 1;
+            do {
+                while (!done && !cancelled && invalidRequest == null && demand.get() > 0) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = chunkReader.read();
+                    } catch (Throwable throwable) {
+                        finish(throwable);
+                        break;
+                    }
+                    if (chunk == null) {
+                        finish(null);
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+
+                if (!done && (cancelled || invalidRequest != null)) {
+                    finish(cancelled ? null : invalidRequest);
+                }
+                signals = pendingSignals.addAndGet(-signals);
+            } while (signals != 0);
+        }
+
+        /**
+         * Closes the chunk reader and signals the subscriber, unless the subscription was cancelled.
+         *
+         * @param failure Failure to signal, or null if the content was fully published
+         */
+        private void finish(Throwable failure) {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                chunkReader.close();
+            } catch (IOException exception) {
+                log.debug("Failed to close chunk reader: {}", exception.getMessage());
+            }
+            if (cancelled) {
+                return;
+            }
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
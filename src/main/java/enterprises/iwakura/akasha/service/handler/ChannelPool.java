@@ -0,0 +1,470 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import enterprises.iwakura.akasha.object.SftpDataSource;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool of channels multiplexed over a bounded number of sessions, such as SFTP channels over SSH connections. Channels
+ * are lent exclusively and returned once the lease is closed. Idle channels are health-checked before being lent and
+ * closed after being idle for too long, together with sessions that have no channels left.
+ *
+ * @param <S> Session type
+ * @param <C> Channel type
+ */
+@Slf4j
+public class ChannelPool<S, C> implements Closeable {
+
+    private final String name;
+    private final SftpDataSource.Pool settings;
+    private final Connector<S, C> connector;
+    private final Runnable onStateChanged;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final List<Session> sessions = new ArrayList<>();
+    private final Deque<Channel> idleChannels = new ArrayDeque<>();
+    private int activeChannels;
+    private int waitingBorrowers;
+    private boolean closed;
+
+    /**
+     * Creates a new channel pool.
+     *
+     * @param name           Name of the pool, used in logs
+     * @param settings       Pool settings
+     * @param connector      Opens, checks and closes sessions and channels
+     * @param onStateChanged Called after the number of sessions, active, idle or waiting channels changed
+     */
+    public ChannelPool(String name, SftpDataSource.Pool settings, Connector<S, C> connector, Runnable onStateChanged) {
+        this.name = name;
+        this.settings = settings;
+        this.connector = connector;
+        this.onStateChanged = onStateChanged;
+    }
+
+    /**
+     * Borrows a channel, waiting up to the configured timeout if all channels are in use. Idle channels are reused
+     * before new ones are opened, and new channels are opened on existing sessions before new sessions are connected.
+     *
+     * @return Lease of the channel, which must be closed to return the channel into the pool
+     *
+     * @throws IOException If no channel became available in time or opening a channel failed
+     */
+    public Lease borrow() throws IOException {
+        var deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.getBorrowTimeoutSeconds());
+
+        while (true) {
+            Channel channel = null;
+            Session session = null;
+            var newSession = false;
+
+            lock.lock();
+            try {
+                waitingBorrowers++;
+                try {
+                    while (true) {
+                        if (closed) {
+                            throw new IOException("Channel pool %s is closed".formatted(name));
+                        }
+
+                        // Most recently used channels are the most likely to be healthy
+                        channel = idleChannels.pollLast();
+                        if (channel != null) {
+                            break;
+                        }
+
+                        session = reserveSessionSlot();
+                        if (session != null) {
+                            newSession = session.client == null;
+                            break;
+                        }
+
+                        var remainingNanos = deadlineNanos - System.nanoTime();
+                        if (remainingNanos <= 0) {
+                            throw new IOException("Timed out waiting for a channel of %s after %d seconds"
+                                .formatted(name, settings.getBorrowTimeoutSeconds()));
+                        }
+                        notifyStateChanged();
+                        released.awaitNanos(remainingNanos);
+                    }
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a channel of " + name);
+                } finally {
+                    waitingBorrowers--;
+                }
+                activeChannels++;
+            } finally {
+                lock.unlock();
+            }
+            notifyStateChanged();
+
+            if (channel != null) {
+                if (isHealthy(channel)) {
+                    return new Lease(channel);
+                }
+                log.debug("Discarding unhealthy channel of {}", name);
+                destroy(channel, true);
+                continue;
+            }
+
+            return new Lease(open(session, newSession));
+        }
+    }
+
+    /**
+     * Closes channels that were idle for longer than the configured timeout, keeping at least the configured number of
+     * idle channels, and disconnects sessions without channels beyond the configured minimum.
+     */
+    public void evictIdle() {
+        var evictedChannels = new ArrayList<Channel>();
+        var evictedSessions = new ArrayList<Session>();
+        var idleTimeoutMillis = TimeUnit.SECONDS.toMillis(settings.getIdleTimeoutSeconds());
+        var currentTimeMillis = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            // Least recently used channels are at the head of the deque
+            while (idleChannels.size() > settings.getMinIdleChannels()
+                && currentTimeMillis - idleChannels.peekFirst().lastUsedAtMillis > idleTimeoutMillis) {
+                evictedChannels.add(idleChannels.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        evictedChannels.forEach(channel -> destroy(channel, false));
+
+        lock.lock();
+        try {
+            var iterator = sessions.iterator();
+            while (iterator.hasNext() && sessions.size() > settings.getMinSessions()) {
+                var session = iterator.next();
+                if (session.client != null && session.channels == 0) {
+                    iterator.remove();
+                    evictedSessions.add(session);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        evictedSessions.forEach(this::disconnect);
+        if (!evictedChannels.isEmpty() || !evictedSessions.isEmpty()) {
+            log.debug("Evicted {} idle channels and {} sessions of {}", evictedChannels.size(),
+                evictedSessions.size(), name);
+            notifyStateChanged();
+        }
+    }
+
+    /**
+     * Closes all idle channels and disconnects all sessions. Leased channels are closed once returned.
+     */
+    @Override
+    public void close() {
+        List<Channel> channels;
+        List<Session> closedSessions;
+
+        lock.lock();
+        try {
+            closed = true;
+            channels = new ArrayList<>(idleChannels);
+            idleChannels.clear();
+            closedSessions = new ArrayList<>(sessions);
+            sessions.clear();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        channels.forEach(channel -> connector.closeChannel(channel.client));
+        closedSessions.forEach(this::disconnect);
+        notifyStateChanged();
+    }
+
+    public int getSessionCount() {
+        lock.lock();
+        try {
+            return sessions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveChannelCount() {
+        lock.lock();
+        try {
+            return activeChannels;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdleChannelCount() {
+        lock.lock();
+        try {
+            return idleChannels.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaitingBorrowerCount() {
+        lock.lock();
+        try {
+            return waitingBorrowers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves a slot for a new channel on a connected session with free slots, or on a new session if there are
+     * fewer sessions than the configured maximum. Must be called while holding the lock.
+     *
+     * @return Session with the reserved slot, not connected yet if new, or null if the pool is exhausted
+     */
+    private Session reserveSessionSlot() {
+        for (var session : sessions) {
+            if (session.client != null && session.channels < settings.getMaxChannelsPerSession()) {
+                session.channels++;
+                return session;
+            }
+        }
+
+        if (sessions.size() < settings.getMaxSessions()) {
+            var session = new Session();
+            session.channels++;
+            sessions.add(session);
+            return session;
+        }
+
+        return null;
+    }
+
+    /**
+     * Opens a channel on the session with a reserved slot, connecting the session first if it is new.
+     *
+     * @param session    Session with the reserved slot
+     * @param newSession Whether the session has to be connected
+     *
+     * @return Opened channel
+     *
+     * @throws IOException If connecting the session or opening the channel failed
+     */
+    private Channel open(Session session, boolean newSession) throws IOException {
+        try {
+            if (newSession) {
+                var client = connector.openSession();
+                lock.lock();
+                try {
+                    session.client = client;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return new Channel(session, connector.openChannel(session.client));
+        } catch (IOException | RuntimeException exception) {
+            boolean disconnect;
+            lock.lock();
+            try {
+                activeChannels--;
+                disconnect = releaseSessionSlot(session);
+            } finally {
+                lock.unlock();
+            }
+            if (disconnect) {
+                disconnect(session);
+            }
+            notifyStateChanged();
+            throw exception;
+        }
+    }
+
+    /**
+     * Releases a slot of the session, removing the session if it is not connected. Must be called while holding the
+     * lock.
+     *
+     * @param session Session
+     *
+     * @return true if the session was removed and has no channels left, so it should be disconnected
+     */
+    private boolean releaseSessionSlot(Session session) {
+        session.channels--;
+        if (session.client == null || !connector.isConnected(session.client)) {
+            sessions.remove(session);
+        }
+        released.signalAll();
+        return session.channels == 0 && !sessions.contains(session);
+    }
+
+    /**
+     * Checks if the idle channel can be lent. Channels idle for longer than the configured period are checked with a
+     * round trip to the server.
+     *
+     * @param channel Idle channel
+     *
+     * @return true if the channel is healthy, false otherwise
+     */
+    private boolean isHealthy(Channel channel) {
+        if (!connector.isConnected(channel.session.client)) {
+            return false;
+        }
+
+        var idleMillis = System.currentTimeMillis() - channel.lastUsedAtMillis;
+        var validate = idleMillis > TimeUnit.SECONDS.toMillis(settings.getValidateAfterIdleSeconds());
+
+        try {
+            return connector.isHealthy(channel.client, validate);
+        } catch (Exception exception) {
+            log.debug("Health check of channel of {} failed: {}", name, exception.getMessage());
+            return false;
+        }
+    }
+
+    private void release(Channel channel) {
+        lock.lock();
+        try {
+            activeChannels--;
+            if (!closed) {
+                channel.lastUsedAtMillis = System.currentTimeMillis();
+                idleChannels.addLast(channel);
+                released.signal();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (channel != null) {
+            connector.closeChannel(channel.client);
+        }
+        notifyStateChanged();
+    }
+
+    /**
+     * Closes the channel, and the session too if it is disconnected and has no channels left.
+     *
+     * @param channel Channel not being idle anymore
+     * @param active  Whether the channel was counted as active
+     */
+    private void destroy(Channel channel, boolean active) {
+        connector.closeChannel(channel.client);
+        boolean disconnect;
+
+        lock.lock();
+        try {
+            if (active) {
+                activeChannels--;
+            }
+            disconnect = releaseSessionSlot(channel.session);
+        } finally {
+            lock.unlock();
+        }
+
+        if (disconnect) {
+            disconnect(channel.session);
+        }
+        notifyStateChanged();
+    }
+
+    private void disconnect(Session session) {
+        if (session.client != null) {
+            connector.closeSession(session.client);
+        }
+    }
+
+    private void notifyStateChanged() {
+        try {
+            onStateChanged.run();
+        } catch (RuntimeException exception) {
+            log.error("Failed to publish state of channel pool {}", name, exception);
+        }
+    }
+
+    /**
+     * Opens, checks and closes sessions and channels.
+     *
+     * @param <S> Session type
+     * @param <C> Channel type
+     */
+    public interface Connector<S, C> {
+
+        S openSession() throws IOException;
+
+        C openChannel(S session) throws IOException;
+
+        boolean isConnected(S session);
+
+        /**
+         * Checks if the channel is healthy.
+         *
+         * @param channel  Channel
+         * @param validate Whether the channel should be validated with a round trip to the server
+         *
+         * @return true if the channel is healthy, false otherwise
+         *
+         * @throws IOException If the round trip failed
+         */
+        boolean isHealthy(C channel, boolean validate) throws IOException;
+
+        void closeChannel(C channel);
+
+        void closeSession(S session);
+
+    }
+
+    /**
+     * Lease of a channel. Closing the lease returns the channel into the pool.
+     */
+    public class Lease implements Closeable {
+
+        private final Channel channel;
+        private boolean closed;
+
+        private Lease(Channel channel) {
+            this.channel = channel;
+        }
+
+        public C getChannel() {
+            return channel.client;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(channel);
+            }
+        }
+    }
+
+    private class Session {
+
+        private S client;
+        private int channels;
+    }
+
+    private class Channel {
+
+        private final Session session;
+        private final C client;
+        private long lastUsedAtMillis = System.currentTimeMillis();
+
+        private Channel(Session session, C client) {
+            this.session = session;
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker guarding calls to a data source. After the configured number of consecutive failures, the breaker
+ * opens and rejects calls until its backoff elapses. Then a single probe call is let through; if it succeeds, the
+ * breaker closes, otherwise it opens again with the backoff doubled, up to the configured maximum.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    private final String name;
+    private final Settings settings;
+    private final Runnable onStateChanged;
+    private final LongSupplier currentTimeMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long backoffMillis;
+    private long retryAtMillis;
+    private boolean probing;
+
+    /**
+     * Creates a new circuit breaker.
+     *
+     * @param name           Name of the breaker, used in logs
+     * @param settings       Breaker settings
+     * @param onStateChanged Called after the state of the breaker changed
+     */
+    public CircuitBreaker(String name, Settings settings, Runnable onStateChanged) {
+        this(name, settings, onStateChanged, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, Settings settings, Runnable onStateChanged, LongSupplier currentTimeMillis) {
+        this.name = name;
+        this.settings = settings;
+        this.onStateChanged = onStateChanged;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * Checks if a call may proceed. Once the backoff of an open breaker elapses, the first caller is let through as a
+     * probe, while other callers are rejected until the probe completes.
+     *
+     * @return true if the call may proceed, false if it should be rejected
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            switch (state) {
+                case CLOSED -> {
+                    return true;
+                }
+                case OPEN -> {
+                    if (currentTimeMillis.getAsLong() < retryAtMillis) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probing = true;
+                }
+                case HALF_OPEN -> {
+                    if (probing) {
+                        return false;
+                    }
+                    probing = true;
+                    return true;
+                }
+            }
+        }
+        log.info("Circuit breaker of {} is half-open, probing", name);
+        onStateChanged.run();
+        return true;
+    }
+
+    /**
+     * Records a successful call, closing the breaker.
+     */
+    public void onSuccess() {
+        synchronized (this) {
+            consecutiveFailures = 0;
+            probing = false;
+            if (state == State.CLOSED) {
+                return;
+            }
+            state = State.CLOSED;
+            backoffMillis = 0;
+        }
+        log.info("Circuit breaker of {} closed", name);
+        onStateChanged.run();
+    }
+
+    /**
+     * Records a failed call, opening the breaker once there were too many consecutive failures or if the probe
+     * failed.
+     */
+    public void onFailure() {
+        long openForMillis;
+        int failures;
+        synchronized (this) {
+            consecutiveFailures++;
+            probing = false;
+            if (state == State.CLOSED && consecutiveFailures < settings.getFailureThreshold()) {
+                return;
+            }
+            if (state == State.OPEN) {
+                // Calls that were let through before the breaker opened do not extend the backoff
+                return;
+            }
+            var maxBackoffMillis = settings.getMaxBackoffSeconds() * 1000;
+            backoffMillis = backoffMillis == 0
+                ? settings.getInitialBackoffSeconds() * 1000
+                : Math.min(backoffMillis * 2, maxBackoffMillis);
+            backoffMillis = Math.min(backoffMillis, maxBackoffMillis);
+            retryAtMillis = currentTimeMillis.getAsLong() + backoffMillis;
+            state = State.OPEN;
+            openForMillis = backoffMillis;
+            failures = consecutiveFailures;
+        }
+        log.warn("Circuit breaker of {} opened after {} consecutive failures, retrying in {} ms", name, failures,
+            openForMillis);
+        onStateChanged.run();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the time until the open breaker lets a probe through.
+     *
+     * @return Time in milliseconds, 0 if the breaker is not open
+     */
+    public synchronized long getRetryAfterMillis() {
+        return state == State.OPEN ? Math.max(0, retryAtMillis - currentTimeMillis.getAsLong()) : 0;
+    }
+
+    /**
+     * State of a circuit breaker.
+     */
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    /**
+     * Settings of a circuit breaker.
+     */
+    public interface Settings {
+
+        int getFailureThreshold();
+
+        long getInitialBackoffSeconds();
+
+        long getMaxBackoffSeconds();
+
+    }
+}
@@ -0,0 +1,98 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.akasha.object.ReadContext;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Data source handler that guards calls to another handler with the circuit breaker of the data source. Calls to an
+ * unavailable data source fail fast with a {@link HandledException} instead of reaching the data source. Handled
+ * exceptions, such as missing files, mean the data source responded and do not count as failures.
+ *
+ * @param <T> Data source type
+ */
+@RequiredArgsConstructor
+public class CircuitBreakingDataSourceHandler<T extends DataSource> implements DataSourceHandler<T> {
+
+    private final DataSourceHandler<T> handler;
+    private final Function<T, CircuitBreaker> circuitBreakerProvider;
+    private final Consumer<T> onRejected;
+
+    @Override
+    public DataSourceType getType() {
+        return handler.getType();
+    }
+
+    @Override
+    public ReadContext read(T dataSource, String path) throws IOException {
+        var readContext = call(dataSource, () -> handler.read(dataSource, path));
+        var rangeOpener = readContext.getRangeOpener();
+        if (rangeOpener != null) {
+            // Ranges opened later, such as for Range requests and cache blocks, are guarded as well
+            readContext.setRangeOpener((offset, length) -> call(dataSource, () -> rangeOpener.open(offset, length)));
+        }
+        return readContext;
+    }
+
+    @Override
+    public InputStream read(T dataSource, String path, long offset, long length) throws IOException {
+        return call(dataSource, () -> handler.read(dataSource, path, offset, length));
+    }
+
+    @Override
+    public FileMetadata stat(T dataSource, String path) throws IOException {
+        return call(dataSource, () -> handler.stat(dataSource, path));
+    }
+
+    @Override
+    public long write(T dataSource, String path, InputStream data) throws IOException {
+        return call(dataSource, () -> handler.write(dataSource, path, data));
+    }
+
+    @Override
+    public List<String> list(T dataSource, String directoryPath) throws IOException {
+        return call(dataSource, () -> handler.list(dataSource, directoryPath));
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return handler.isCacheable();
+    }
+
+    private <R> R call(T dataSource, Call<R> call) throws IOException {
+        var circuitBreaker = circuitBreakerProvider.apply(dataSource);
+
+        if (!circuitBreaker.tryAcquire()) {
+            onRejected.accept(dataSource);
+            var retryAfterSeconds = (circuitBreaker.getRetryAfterMillis() + 999) / 1000;
+            throw new HandledException("Data source is unavailable", null).asUnavailable(retryAfterSeconds);
+        }
+
+        try {
+            var result = call.call();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (HandledException exception) {
+            circuitBreaker.onSuccess();
+            throw exception;
+        } catch (Throwable throwable) {
+            // Errors count as failures as well, so a failed probe does not leave the breaker half-open
+            circuitBreaker.onFailure();
+            throw throwable;
+        }
+    }
+
+    private interface Call<R> {
+
+        R call() throws IOException;
+    }
+}
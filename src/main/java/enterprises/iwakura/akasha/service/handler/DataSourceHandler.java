@@ -2,9 +2,11 @@ package enterprises.iwakura.akasha.service.handler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import enterprises.iwakura.akasha.object.DataSource;
 import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
 import enterprises.iwakura.akasha.object.ReadContext;
 
 public interface DataSourceHandler<T extends DataSource> {
@@ -13,6 +15,22 @@ public interface DataSourceHandler<T extends DataSource> {
 
     ReadContext read(T dataSource, String path) throws IOException;
 
+    InputStream read(T dataSource, String path, long offset, long length) throws IOException;
+
+    FileMetadata stat(T dataSource, String path) throws IOException;
+
     long write(T dataSource, String path, InputStream data) throws IOException;
 
+    List<String> list(T dataSource, String directoryPath) throws IOException;
+
+    /**
+     * Checks if files of the data source should be cached in the file cache. Data sources that are as fast as the
+     * file cache itself do not benefit from it.
+     *
+     * @return true if files should be cached, false otherwise
+     */
+    default boolean isCacheable() {
+        return true;
+    }
+
 }
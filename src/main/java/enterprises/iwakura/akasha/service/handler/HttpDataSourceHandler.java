@@ -0,0 +1,237 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.io.ByteStreams;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.akasha.object.HttpDataSource;
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.service.CacheService;
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handles data sources backed by an origin HTTP server, with files mapped onto URLs under its base URL. Each data
+ * source has its own HTTP client, which keeps connections to the origin open and reuses them between requests. Origins
+ * are read-only and cannot be listed.
+ */
+@Bean
+@Slf4j
+public class HttpDataSourceHandler implements DataSourceHandler<HttpDataSource>,
+    RemovalListener<HttpDataSource, HttpClient> {
+
+    private final Cache<HttpDataSource, HttpClient> clientMap = CacheService.createCache(cacheBuilder -> cacheBuilder
+        .expireAfterAccess(Duration.ofHours(1))
+        .removalListener(this));
+    private final ExecutorService clientExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("HttpOrigin-", 0).factory());
+
+    @Override
+    public DataSourceType getType() {
+        return DataSourceType.HTTP;
+    }
+
+    @Override
+    public ReadContext read(HttpDataSource dataSource, String path) throws IOException {
+        var response = send(dataSource, "GET", path, Map.of());
+        try {
+            var fileName = path.substring(path.lastIndexOf('/') + 1);
+            var readContext = new ReadContext(response.body(), fileName, getContentLength(response));
+            readContext.setLastModifiedMillis(getLastModifiedMillis(response));
+            readContext.setEntityTag(getEntityTag(response));
+            readContext.setRangeOpener((offset, length) -> read(dataSource, path, offset, length));
+            return readContext;
+        } catch (RuntimeException exception) {
+            response.body().close();
+            throw exception;
+        }
+    }
+
+    @Override
+    public InputStream read(HttpDataSource dataSource, String path, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+
+        var response = send(dataSource, "GET", path,
+            Map.of("Range", "bytes=%d-%d".formatted(offset, offset + length - 1)));
+        var inputStream = response.body();
+        if (response.statusCode() != 206) {
+            // The origin ignored the range and sent the whole file
+            try {
+                ByteStreams.skipFully(inputStream, offset);
+            } catch (IOException | RuntimeException exception) {
+                inputStream.close();
+                throw exception;
+            }
+        }
+        return ByteStreams.limit(inputStream, length);
+    }
+
+    @Override
+    public FileMetadata stat(HttpDataSource dataSource, String path) throws IOException {
+        var response = send(dataSource, "HEAD", path, Map.of());
+        response.body().close();
+
+        var fileMetadata = new FileMetadata(getContentLength(response), getLastModifiedMillis(response));
+        fileMetadata.setEntityTag(getEntityTag(response));
+        return fileMetadata;
+    }
+
+    @Override
+    public long write(HttpDataSource dataSource, String path, InputStream data) {
+        throw new HandledException("HTTP data sources are read-only", null);
+    }
+
+    @Override
+    public List<String> list(HttpDataSource dataSource, String directoryPath) {
+        throw new HandledException("HTTP data sources cannot be listed", null);
+    }
+
+    /**
+     * Sends a request for the file to the origin.
+     *
+     * @param dataSource Data source
+     * @param method     HTTP method
+     * @param path       File path
+     * @param headers    Additional headers
+     *
+     * @return Successful response, whose body must be closed
+     *
+     * @throws IOException If the request failed or the origin responded with an error
+     */
+    private HttpResponse<InputStream> send(HttpDataSource dataSource, String method, String path,
+        Map<String, String> headers) throws IOException {
+        var requestBuilder = HttpRequest.newBuilder(createUri(dataSource, path))
+            .timeout(Duration.ofSeconds(dataSource.getRequestTimeoutSeconds()))
+            .method(method, HttpRequest.BodyPublishers.noBody())
+            // Files are cached and served as is, so the origin must not compress them
+            .header("Accept-Encoding", "identity");
+        dataSource.getHeaders().forEach(requestBuilder::header);
+        headers.forEach(requestBuilder::header);
+
+        HttpResponse<InputStream> response;
+        try {
+            response = getClient(dataSource).send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for origin");
+        }
+
+        var statusCode = response.statusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            return response;
+        }
+
+        response.body().close();
+        switch (statusCode) {
+            case 404, 410 -> throw new HandledException("No such file", null).asNotFound();
+            case 401, 403 -> throw new HandledException("Permission denied", null);
+            default -> throw new IOException("Origin responded with status %d to %s %s".formatted(statusCode, method,
+                response.request().uri().getRawPath()));
+        }
+    }
+
+    /**
+     * Maps the file path onto a URL under the base URL of the data source.
+     *
+     * @param dataSource Data source
+     * @param path       File path
+     *
+     * @return URL of the file
+     *
+     * @throws HandledException If the path points outside the base URL
+     */
+    private static URI createUri(HttpDataSource dataSource, String path) {
+        var baseUrl = dataSource.getBaseUrl().endsWith("/") ? dataSource.getBaseUrl() : dataSource.getBaseUrl() + "/";
+        var baseUri = URI.create(baseUrl);
+        URI uri;
+        try {
+            // Relative to the base URL, even if the first path segment contains a colon
+            uri = baseUri.resolve(new URI(null, null, "./" + path, null));
+        } catch (URISyntaxException exception) {
+            throw new HandledException("Invalid path", exception);
+        }
+        // SECURITY: Paths escaping the base URL, such as ../, must be rejected
+        if (!uri.getRawPath().startsWith(baseUri.getRawPath())) {
+            throw new HandledException("Path is outside of the data source", null);
+        }
+        return uri;
+    }
+
+    private HttpClient getClient(HttpDataSource dataSource) throws IOException {
+        try {
+            return clientMap.get(dataSource, () -> {
+                log.info("Creating HTTP client for data source {} at {}", dataSource.getName(),
+                    dataSource.getBaseUrl());
+                return HttpClient.newBuilder()
+                    // HTTP/2 multiplexes concurrent requests over a single connection, if the origin supports it
+                    .version(dataSource.isHttp2Enabled() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(dataSource.getConnectTimeoutSeconds()))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .executor(clientExecutor)
+                    .build();
+            });
+        } catch (ExecutionException exception) {
+            throw new IOException("Failed to create HTTP client", exception.getCause());
+        }
+    }
+
+    private static long getContentLength(HttpResponse<?> response) {
+        // Chunked and dynamically compressed responses do not carry their size
+        return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+    }
+
+    private static long getLastModifiedMillis(HttpResponse<?> response) {
+        var lastModifiedSeconds = response.headers().firstValue("Last-Modified")
+            .map(ConditionalRequestUtils::parseHttpDate)
+            .orElse(-1L);
+        return lastModifiedSeconds == -1 ? 0 : lastModifiedSeconds * 1000;
+    }
+
+    /**
+     * Returns the entity tag of the file sent by the origin. Weak entity tags are ignored, as they cannot be used to
+     * validate ranges.
+     *
+     * @param response Response of the origin
+     *
+     * @return Strong entity tag, or null if the origin did not send one
+     */
+    private static String getEntityTag(HttpResponse<?> response) {
+        return response.headers().firstValue("ETag")
+            .filter(entityTag -> entityTag.startsWith("\""))
+            .orElse(null);
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<HttpDataSource, HttpClient> notification) {
+        var dataSource = notification.getKey();
+        var client = notification.getValue();
+
+        if (dataSource != null && client != null) {
+            log.info("Closing HTTP client for data source {}", dataSource.getName());
+            // Requests already sent are let to complete
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks how long a member of a replicated data source takes to respond. Members are ranked by the exponentially
+ * weighted moving average of their latency, while a window of recent samples yields the latency percentiles used as
+ * hedging deadlines.
+ */
+public class LatencyTracker {
+
+    public static final double EWMA_WEIGHT = 0.2;
+    public static final int WINDOW_SIZE = 128;
+    public static final int MIN_PERCENTILE_SAMPLES = 8;
+    public static final long FAILURE_PENALTY_MILLIS = 1000;
+    public static final long FORGET_AFTER_MILLIS = 30_000;
+
+    private final LongSupplier currentTimeMillis;
+    private final long[] samples = new long[WINDOW_SIZE];
+
+    private int sampleCount;
+    private int nextSampleIndex;
+    private boolean recorded;
+    private double averageMillis;
+    private long lastRecordedAtMillis;
+
+    public LatencyTracker() {
+        this(System::currentTimeMillis);
+    }
+
+    LatencyTracker(LongSupplier currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * Records the latency of a successful response.
+     *
+     * @param latencyMillis Latency in milliseconds
+     */
+    public synchronized void record(long latencyMillis) {
+        samples[nextSampleIndex] = latencyMillis;
+        nextSampleIndex = (nextSampleIndex + 1) % WINDOW_SIZE;
+        sampleCount = Math.min(sampleCount + 1, WINDOW_SIZE);
+        // Forgotten latency does not drag the average of a member that recovered
+        averageMillis = isKnown()
+            ? EWMA_WEIGHT * latencyMillis + (1 - EWMA_WEIGHT) * averageMillis
+            : latencyMillis;
+        recorded = true;
+        lastRecordedAtMillis = currentTimeMillis.getAsLong();
+    }
+
+    /**
+     * Records a failed request, which counts as a slow response, so the member is ranked behind responsive ones.
+     */
+    public synchronized void recordFailure() {
+        averageMillis = Math.max(isKnown() ? averageMillis * 2 : 0, FAILURE_PENALTY_MILLIS);
+        recorded = true;
+        lastRecordedAtMillis = currentTimeMillis.getAsLong();
+    }
+
+    /**
+     * Returns the average latency. Latency recorded too long ago is forgotten, so members that were ranked behind
+     * others are probed again once in a while.
+     *
+     * @return Average latency in milliseconds, -1 if unknown
+     */
+    public synchronized double getAverageMillis() {
+        return isKnown() ? averageMillis : -1;
+    }
+
+    /**
+     * Returns the percentile of recently recorded latencies.
+     *
+     * @param percentile Percentile, between 0 and 100
+     *
+     * @return Latency in milliseconds, -1 if there are not enough samples
+     */
+    public synchronized long getPercentileMillis(double percentile) {
+        if (sampleCount < MIN_PERCENTILE_SAMPLES) {
+            return -1;
+        }
+        var sortedSamples = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sortedSamples);
+        var index = (int) Math.ceil(percentile / 100 * sampleCount) - 1;
+        return sortedSamples[Math.max(0, Math.min(index, sampleCount - 1))];
+    }
+
+    private boolean isKnown() {
+        return recorded && currentTimeMillis.getAsLong() - lastRecordedAtMillis <= FORGET_AFTER_MILLIS;
+    }
+}
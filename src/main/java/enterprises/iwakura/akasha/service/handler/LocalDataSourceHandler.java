@@ -0,0 +1,237 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.io.ByteStreams;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.akasha.object.LocalDataSource;
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
+import enterprises.iwakura.akasha.util.PathUtils;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handles data sources rooted at a directory of the local filesystem. Files are served straight from their file
+ * channels, so they are not cached in the file cache.
+ */
+@Bean
+@Slf4j
+public class LocalDataSourceHandler implements DataSourceHandler<LocalDataSource> {
+
+    public static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    @Override
+    public DataSourceType getType() {
+        return DataSourceType.LOCAL;
+    }
+
+    @Override
+    public ReadContext read(LocalDataSource dataSource, String path) throws IOException {
+        var filePath = resolveExisting(dataSource, path);
+        var attributes = readAttributes(filePath);
+
+        if (!attributes.isRegularFile()) {
+            throw new HandledException("No such file", null).asNotFound();
+        }
+
+        var fileChannel = open(filePath);
+        var readContext = new ReadContext(Channels.newInputStream(fileChannel), filePath.getFileName().toString(),
+            attributes.size());
+        readContext.setLastModifiedMillis(attributes.lastModifiedTime().toMillis());
+        readContext.setEntityTag(ConditionalRequestUtils.createEntityTag(attributes.size(),
+            readContext.getLastModifiedMillis()));
+        readContext.setFileChannel(fileChannel);
+        readContext.setRangeOpener((offset, length) -> openRange(filePath, offset, length));
+        return readContext;
+    }
+
+    @Override
+    public InputStream read(LocalDataSource dataSource, String path, long offset, long length) throws IOException {
+        return openRange(resolveExisting(dataSource, path), offset, length);
+    }
+
+    @Override
+    public FileMetadata stat(LocalDataSource dataSource, String path) throws IOException {
+        var attributes = readAttributes(resolveExisting(dataSource, path));
+        var fileMetadata = new FileMetadata(attributes.size(), attributes.lastModifiedTime().toMillis());
+        fileMetadata.setEntityTag(ConditionalRequestUtils.createEntityTag(fileMetadata.getFileSizeBytes(),
+            fileMetadata.getLastModifiedMillis()));
+        fileMetadata.setDirectory(attributes.isDirectory());
+        return fileMetadata;
+    }
+
+    @Override
+    public long write(LocalDataSource dataSource, String path, InputStream data) throws IOException {
+        var filePath = resolve(dataSource, path);
+        var parentPath = filePath.getParent();
+        // Temporary file is created next to the file, so it can be atomically moved over it
+        var tempFilePath = parentPath.resolve(".%s.%s%s".formatted(filePath.getFileName(), UUID.randomUUID(),
+            TEMP_FILE_SUFFIX));
+        long totalWritten;
+
+        try {
+            // Directories are only created under existing directories within the root directory
+            var existingPath = parentPath;
+            while (!Files.exists(existingPath)) {
+                existingPath = existingPath.getParent();
+            }
+            ensureWithinRoot(dataSource, existingPath.toRealPath());
+            Files.createDirectories(parentPath);
+            ensureWithinRoot(dataSource, parentPath.toRealPath());
+
+            try (var fileChannel = FileChannel.open(tempFilePath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+                totalWritten = ByteStreams.copy(data, Channels.newOutputStream(fileChannel));
+                fileChannel.force(true);
+            }
+
+            Files.move(tempFilePath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AccessDeniedException exception) {
+            throw new HandledException("Permission denied", exception);
+        } catch (NotDirectoryException exception) {
+            throw new HandledException("No such path", exception).asNotFound();
+        } finally {
+            Files.deleteIfExists(tempFilePath);
+        }
+
+        return totalWritten;
+    }
+
+    @Override
+    public List<String> list(LocalDataSource dataSource, String directoryPath) throws IOException {
+        try {
+            var rootPath = getRootPath(dataSource).toRealPath();
+            var startPath = directoryPath.isEmpty() ? rootPath : resolveExisting(dataSource, directoryPath);
+
+            try (var fileStream = Files.walk(startPath)) {
+                return fileStream
+                    .filter(Files::isRegularFile)
+                    .filter(filePath -> !isTempFile(filePath))
+                    .map(filePath -> PathUtils.normalizePath(rootPath.relativize(filePath).toString()))
+                    .toList();
+            }
+        } catch (NoSuchFileException | NotDirectoryException exception) {
+            throw new HandledException("No such path", exception).asNotFound();
+        } catch (AccessDeniedException exception) {
+            throw new HandledException("Permission denied", exception);
+        }
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Resolves the path against the root directory of the data source.
+     *
+     * @param dataSource Data source
+     * @param path       Path relative to the root directory
+     *
+     * @return Absolute path
+     *
+     * @throws HandledException If the path points outside the root directory
+     */
+    private static Path resolve(LocalDataSource dataSource, String path) {
+        var rootPath = getRootPath(dataSource);
+        // SECURITY: Paths escaping the root directory, such as ../ or absolute paths, must be rejected
+        var filePath = rootPath.resolve(path).normalize();
+        if (!filePath.startsWith(rootPath)) {
+            throw new HandledException("Path is outside of the data source", null);
+        }
+        return filePath;
+    }
+
+    /**
+     * Resolves the path of an existing file against the root directory of the data source, following symbolic links.
+     *
+     * @param dataSource Data source
+     * @param path       Path relative to the root directory
+     *
+     * @return Real path of the file
+     *
+     * @throws IOException If the file does not exist or cannot be accessed
+     */
+    private static Path resolveExisting(LocalDataSource dataSource, String path) throws IOException {
+        try {
+            var realPath = resolve(dataSource, path).toRealPath();
+            ensureWithinRoot(dataSource, realPath);
+            return realPath;
+        } catch (NoSuchFileException exception) {
+            throw new HandledException("No such file", exception).asNotFound();
+        } catch (AccessDeniedException exception) {
+            throw new HandledException("Permission denied", exception);
+        }
+    }
+
+    /**
+     * Ensures the real path is within the real root directory, so symbolic links cannot escape it.
+     *
+     * @param dataSource Data source
+     * @param realPath   Real path
+     *
+     * @throws IOException If resolving the root directory failed
+     */
+    private static void ensureWithinRoot(LocalDataSource dataSource, Path realPath) throws IOException {
+        if (!realPath.startsWith(getRootPath(dataSource).toRealPath())) {
+            throw new HandledException("Path is outside of the data source", null);
+        }
+    }
+
+    private static boolean isTempFile(Path filePath) {
+        var fileName = filePath.getFileName().toString();
+        return fileName.startsWith(".") && fileName.endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    private static Path getRootPath(LocalDataSource dataSource) {
+        return Path.of(dataSource.getRootDirectory()).toAbsolutePath().normalize();
+    }
+
+    private static BasicFileAttributes readAttributes(Path filePath) throws IOException {
+        try {
+            return Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException exception) {
+            throw new HandledException("No such file", exception).asNotFound();
+        } catch (AccessDeniedException exception) {
+            throw new HandledException("Permission denied", exception);
+        }
+    }
+
+    private static FileChannel open(Path filePath) throws IOException {
+        try {
+            return FileChannel.open(filePath, StandardOpenOption.READ);
+        } catch (NoSuchFileException exception) {
+            throw new HandledException("No such file", exception).asNotFound();
+        } catch (AccessDeniedException exception) {
+            throw new HandledException("Permission denied", exception);
+        }
+    }
+
+    private static InputStream openRange(Path filePath, long offset, long length) throws IOException {
+        var fileChannel = open(filePath);
+        try {
+            fileChannel.position(offset);
+            return ByteStreams.limit(Channels.newInputStream(fileChannel), length);
+        } catch (IOException | RuntimeException exception) {
+            fileChannel.close();
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.object.ReplicatedDataSource;
+import enterprises.iwakura.akasha.service.CircuitBreakerService;
+import enterprises.iwakura.akasha.service.PrometheusService;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handles data sources replicated across multiple member data sources holding the same files. Reads go to the member
+ * with the lowest average latency. If it does not respond within the configured percentile of its recent latencies, a
+ * hedged request is sent to the next fastest member and whichever responds first is used. Failed reads fail over to
+ * the next member. Writes are sent to all members concurrently and succeed once the write quorum is reached.
+ */
+@Bean
+@Slf4j
+@RequiredArgsConstructor
+public class ReplicatedDataSourceHandler implements DataSourceHandler<ReplicatedDataSource> {
+
+    private final Map<String, Map<String, LatencyTracker>> latencyTrackers = new ConcurrentHashMap<>();
+    // Concurrency is bounded by the members of each request
+    private final ExecutorService memberExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("ReplicaRequest-", 0).factory());
+
+    private final CircuitBreakerService circuitBreakerService;
+    private final PrometheusService prometheusService;
+    private final SftpDataSourceHandler sftpDataSourceHandler;
+    private final LocalDataSourceHandler localDataSourceHandler;
+    private final S3DataSourceHandler s3DataSourceHandler;
+    private final HttpDataSourceHandler httpDataSourceHandler;
+
+    @Override
+    public DataSourceType getType() {
+        return DataSourceType.REPLICATED;
+    }
+
+    @Override
+    public ReadContext read(ReplicatedDataSource dataSource, String path) throws IOException {
+        return request(dataSource, true, (handler, member) -> {
+            var readContext = handler.read(member, path);
+            readContext.setInputStream(awaitFirstByte(readContext.getInputStream()));
+            return readContext;
+        }, readContext -> closeQuietly(readContext.getInputStream()));
+    }
+
+    @Override
+    public InputStream read(ReplicatedDataSource dataSource, String path, long offset, long length)
+        throws IOException {
+        return request(dataSource, true, (handler, member) -> awaitFirstByte(handler.read(member, path, offset, length)),
+            ReplicatedDataSourceHandler::closeQuietly);
+    }
+
+    @Override
+    public FileMetadata stat(ReplicatedDataSource dataSource, String path) throws IOException {
+        return request(dataSource, true, (handler, member) -> handler.stat(member, path), fileMetadata -> {});
+    }
+
+    @Override
+    public List<String> list(ReplicatedDataSource dataSource, String directoryPath) throws IOException {
+        // Listings are not hedged, as listing large directories twice is expensive
+        return request(dataSource, false, (handler, member) -> handler.list(member, directoryPath), filePaths -> {});
+    }
+
+    @Override
+    public long write(ReplicatedDataSource dataSource, String path, InputStream data) throws IOException {
+        var members = getMembers(dataSource);
+        var writeQuorum = dataSource.getEffectiveWriteQuorum();
+
+        // Members are written concurrently from a temporary copy, so slow members do not hold back the others
+        var tempFilePath = Files.createTempFile("akasha-replicated-", ".tmp");
+        long fileSizeBytes;
+        try (var outputStream = Files.newOutputStream(tempFilePath)) {
+            fileSizeBytes = data.transferTo(outputStream);
+        } catch (IOException | RuntimeException exception) {
+            Files.deleteIfExists(tempFilePath);
+            throw exception;
+        }
+
+        var results = new LinkedBlockingQueue<MemberResult<Long>>();
+        var pendingMembers = new AtomicInteger(members.size());
+        for (var member : members) {
+            memberExecutor.execute(() -> {
+                try {
+                    results.add(sendToMember(dataSource, member, (handler, memberDataSource) -> {
+                        try (var inputStream = Files.newInputStream(tempFilePath)) {
+                            return handler.write(memberDataSource, path, inputStream);
+                        }
+                    }));
+                } finally {
+                    if (pendingMembers.decrementAndGet() == 0) {
+                        deleteQuietly(tempFilePath);
+                    }
+                }
+            });
+        }
+
+        var succeeded = 0;
+        var failures = new ArrayList<Exception>();
+        while (succeeded < writeQuorum && members.size() - failures.size() >= writeQuorum) {
+            var result = take(results);
+            if (result.failure == null) {
+                succeeded++;
+            } else {
+                log.warn("Failed to write {} to member {} of data source {}: {}", path, result.member.getName(),
+                    dataSource.getName(), result.failure.getMessage());
+                failures.add(result.failure);
+            }
+        }
+
+        if (succeeded < writeQuorum) {
+            log.error("Write of {} to data source {} succeeded on {} of {} members, below the write quorum of {}", path,
+                dataSource.getName(), succeeded, members.size(), writeQuorum);
+            if (failures.stream().allMatch(HandledException.class::isInstance)) {
+                // Such as rejected paths, which are the same for all members
+                throw (HandledException) failures.get(0);
+            }
+            var exception = new IOException("Write reached %d of %d required members".formatted(succeeded,
+                writeQuorum));
+            failures.forEach(exception::addSuppressed);
+            throw exception;
+        }
+
+        if (succeeded < members.size()) {
+            log.debug("Write of {} to data source {} reached the write quorum of {}, remaining members are written in "
+                + "the background", path, dataSource.getName(), writeQuorum);
+        }
+        return fileSizeBytes;
+    }
+
+    /**
+     * Sends the request to the fastest member, hedging it with the next fastest member if it does not respond in time
+     * and failing over to the next members if it fails.
+     *
+     * @param dataSource    Data source
+     * @param hedged        Whether the request may be hedged
+     * @param memberRequest Sends the request to a member
+     * @param discard       Releases results of members that responded after the first one
+     * @param <R>           Result type
+     *
+     * @return Result of the first member that responded successfully
+     *
+     * @throws IOException If all members failed
+     */
+    private <R> R request(ReplicatedDataSource dataSource, boolean hedged, MemberRequest<R> memberRequest,
+        Consumer<R> discard) throws IOException {
+        var members = rankMembers(dataSource);
+        var results = new LinkedBlockingQueue<MemberResult<R>>();
+        var attempts = new Attempts<>(results, discard);
+        var failures = new ArrayList<Exception>();
+        var hedging = dataSource.getHedging();
+        var hedgeSent = !hedged || !hedging.isEnabled();
+        var started = 0;
+
+        try {
+            attempts.start(dataSource, members.get(started++), memberRequest);
+            while (true) {
+                MemberResult<R> result;
+                if (!hedgeSent && started < members.size()) {
+                    result = poll(results, getHedgeDelayMillis(dataSource, members.get(started - 1)));
+                    if (result == null) {
+                        log.debug("Member {} of data source {} did not respond in time, hedging with member {}",
+                            members.get(started - 1).getName(), dataSource.getName(), members.get(started).getName());
+                        prometheusService.getCollectors().getReplicaHedges().labelValues(dataSource.getName()).inc();
+                        hedgeSent = true;
+                        attempts.start(dataSource, members.get(started++), memberRequest);
+                        continue;
+                    }
+                } else {
+                    result = take(results);
+                }
+
+                if (result.failure == null) {
+                    return result.value;
+                }
+
+                failures.add(result.failure);
+                if (failures.size() == started) {
+                    if (started == members.size()) {
+                        throw selectFailure(failures);
+                    }
+                    log.debug("Member {} of data source {} failed, failing over to member {}: {}",
+                        result.member.getName(), dataSource.getName(), members.get(started).getName(),
+                        result.failure.getMessage());
+                    attempts.start(dataSource, members.get(started++), memberRequest);
+                }
+            }
+        } finally {
+            attempts.settle();
+        }
+    }
+
+    /**
+     * Sends the request to the member, recording its latency.
+     *
+     * @param dataSource    Data source
+     * @param member        Member data source
+     * @param memberRequest Sends the request to the member
+     * @param <R>           Result type
+     *
+     * @return Result of the member
+     */
+    private <R> MemberResult<R> sendToMember(ReplicatedDataSource dataSource, DataSource member,
+        MemberRequest<R> memberRequest) {
+        var latencyTracker = getLatencyTracker(dataSource, member);
+        var requests = prometheusService.getCollectors().getReplicaRequests();
+        var startedAtNanos = System.nanoTime();
+
+        try {
+            var value = memberRequest.send(findMemberHandler(member), member);
+            latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+            requests.labelValues(dataSource.getName(), member.getName(), "succeeded").inc();
+            return new MemberResult<>(member, value, null);
+        } catch (Exception exception) {
+            if (exception instanceof HandledException handledException && handledException.isNotFound()) {
+                // Missing files are responses as well
+                latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+            } else {
+                latencyTracker.recordFailure();
+            }
+            requests.labelValues(dataSource.getName(), member.getName(), "failed").inc();
+            return new MemberResult<>(member, null, exception);
+        }
+    }
+
+    /**
+     * Ranks members of the data source by their average latency, fastest first. Members whose latency is not known
+     * are ranked first, so they are probed.
+     *
+     * @param dataSource Data source
+     *
+     * @return Ranked members
+     */
+    private List<DataSource> rankMembers(ReplicatedDataSource dataSource) {
+        var members = new ArrayList<>(getMembers(dataSource));
+        members.sort(Comparator.comparingDouble(member -> getLatencyTracker(dataSource, member).getAverageMillis()));
+        return members;
+    }
+
+    private long getHedgeDelayMillis(ReplicatedDataSource dataSource, DataSource member) {
+        var hedging = dataSource.getHedging();
+        var percentileMillis = getLatencyTracker(dataSource, member).getPercentileMillis(hedging.getPercentile());
+        if (percentileMillis == -1) {
+            // Without enough samples, only members that are clearly stuck are hedged
+            return hedging.getMaxDelayMillis();
+        }
+        return Math.max(hedging.getMinDelayMillis(), Math.min(percentileMillis, hedging.getMaxDelayMillis()));
+    }
+
+    private LatencyTracker getLatencyTracker(ReplicatedDataSource dataSource, DataSource member) {
+        // Members are tracked per replicated data source, as names of members are only unique within it
+        return latencyTrackers.computeIfAbsent(dataSource.getName(), name -> new ConcurrentHashMap<>())
+            .computeIfAbsent(member.getName(), name -> new LatencyTracker());
+    }
+
+    private static List<DataSource> getMembers(ReplicatedDataSource dataSource) {
+        if (dataSource.getMembers() == null || dataSource.getMembers().isEmpty()) {
+            throw new HandledException("Replicated data source has no members", null);
+        }
+        return dataSource.getMembers();
+    }
+
+    /**
+     * Finds the handler of the member data source, guarded by the circuit breaker of the member.
+     *
+     * @param member Member data source
+     *
+     * @return Data source handler
+     */
+    @SuppressWarnings("unchecked")
+    protected DataSourceHandler<DataSource> findMemberHandler(DataSource member) {
+        DataSourceHandler<? extends DataSource> handler = switch (member.getType()) {
+            case SFTP -> sftpDataSourceHandler;
+            case LOCAL -> localDataSourceHandler;
+            case S3 -> s3DataSourceHandler;
+            case HTTP -> httpDataSourceHandler;
+            case REPLICATED -> throw new HandledException("Replicated data sources cannot be nested", null);
+        };
+        return circuitBreakerService.guard((DataSourceHandler<DataSource>) handler);
+    }
+
+    /**
+     * Waits until the input stream produces its first byte, so members are raced on the time to their first byte
+     * rather than on opening the file.
+     *
+     * @param inputStream Input stream
+     *
+     * @return Input stream still containing the first byte
+     *
+     * @throws IOException If reading the first byte failed, in which case the input stream is closed
+     */
+    private static InputStream awaitFirstByte(InputStream inputStream) throws IOException {
+        var pushbackInputStream = new PushbackInputStream(inputStream, 1);
+        try {
+            var firstByte = pushbackInputStream.read();
+            if (firstByte != -1) {
+                pushbackInputStream.unread(firstByte);
+            }
+            return pushbackInputStream;
+        } catch (IOException | RuntimeException exception) {
+            closeQuietly(inputStream);
+            throw exception;
+        }
+    }
+
+    /**
+     * Selects the exception to report once all members failed. Missing files are reported as missing, even if some
+     * members could not be reached.
+     *
+     * @param failures Failures of the members
+     *
+     * @return Exception to throw
+     */
+    private static IOException selectFailure(List<Exception> failures) {
+        for (var failure : failures) {
+            if (failure instanceof HandledException handledException && handledException.isNotFound()) {
+                throw handledException;
+            }
+        }
+
+        var firstFailure = failures.get(0);
+        failures.stream().skip(1).forEach(firstFailure::addSuppressed);
+        if (firstFailure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (firstFailure instanceof IOException ioException) {
+            return ioException;
+        }
+        return new IOException("All members of the data source failed", firstFailure);
+    }
+
+    private static <T> T poll(BlockingQueue<T> queue, long timeoutMillis) throws InterruptedIOException {
+        try {
+            return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for members");
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) throws InterruptedIOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for members");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception exception) {
+                log.debug("Failed to close {}: {}", closeable.getClass().getSimpleName(), exception.getMessage());
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException exception) {
+            log.warn("Failed to delete temporary file {}", path, exception);
+        }
+    }
+
+    /**
+     * Sends a request to a member data source.
+     *
+     * @param <R> Result type
+     */
+    @FunctionalInterface
+    private interface MemberRequest<R> {
+
+        R send(DataSourceHandler<DataSource> handler, DataSource member) throws IOException;
+    }
+
+    /**
+     * Result of a request sent to a member data source, either its value or its failure.
+     *
+     * @param <R> Result type
+     */
+    @RequiredArgsConstructor
+    private static class MemberResult<R> {
+
+        private final DataSource member;
+        private final R value;
+        private final Exception failure;
+    }
+
+    /**
+     * Requests of a single read sent to members concurrently. Once settled, results of members that respond later
+     * are released instead of being queued.
+     *
+     * @param <R> Result type
+     */
+    @RequiredArgsConstructor
+    private class Attempts<R> {
+
+        private final BlockingQueue<MemberResult<R>> results;
+        private final Consumer<R> discard;
+        private boolean settled;
+
+        private void start(ReplicatedDataSource dataSource, DataSource member, MemberRequest<R> memberRequest) {
+            memberExecutor.execute(() -> {
+                var result = sendToMember(dataSource, member, memberRequest);
+                synchronized (this) {
+                    if (!settled) {
+                        results.add(result);
+                        return;
+                    }
+                }
+                if (result.failure == null) {
+                    discard.accept(result.value);
+                }
+            });
+        }
+
+        private void settle() {
+            synchronized (this) {
+                settled = true;
+            }
+            MemberResult<R> result;
+            while ((result = results.poll()) != null) {
+                if (result.failure == null) {
+                    discard.accept(result.value);
+                }
+            }
+        }
+    }
+}
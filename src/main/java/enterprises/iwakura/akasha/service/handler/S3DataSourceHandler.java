@@ -0,0 +1,486 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.io.ByteStreams;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.object.S3DataSource;
+import enterprises.iwakura.akasha.service.CacheService;
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
+import enterprises.iwakura.akasha.util.PathUtils;
+import enterprises.iwakura.sigewine.core.annotations.Bean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handles data sources stored in S3-compatible object storage. Each data source has its own HTTP client, which keeps
+ * connections to the storage open and reuses them between requests.
+ */
+@Bean
+@Slf4j
+public class S3DataSourceHandler implements DataSourceHandler<S3DataSource>, RemovalListener<S3DataSource, HttpClient> {
+
+    public static final int MAX_ERROR_BODY_BYTES = 64 * 1024;
+
+    private final Cache<S3DataSource, HttpClient> clientMap = CacheService.createCache(cacheBuilder -> cacheBuilder
+        .expireAfterAccess(Duration.ofHours(1))
+        .removalListener(this));
+    private final ExecutorService clientExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("S3Client-", 0).factory());
+
+    @Override
+    public DataSourceType getType() {
+        return DataSourceType.S3;
+    }
+
+    @Override
+    public ReadContext read(S3DataSource dataSource, String path) throws IOException {
+        var response = send(dataSource, "GET", getKey(dataSource, path), null, Map.of(), null, "No such file");
+        var fileName = path.substring(path.lastIndexOf('/') + 1);
+        var readContext = new ReadContext(response.body(), fileName, getContentLength(response));
+        readContext.setLastModifiedMillis(getLastModifiedMillis(response));
+        readContext.setEntityTag(response.headers().firstValue("ETag").orElse(null));
+        readContext.setRangeOpener((offset, length) -> read(dataSource, path, offset, length));
+        return readContext;
+    }
+
+    @Override
+    public InputStream read(S3DataSource dataSource, String path, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+
+        var response = send(dataSource, "GET", getKey(dataSource, path), null,
+            Map.of("range", "bytes=%d-%d".formatted(offset, offset + length - 1)), null, "No such file");
+        var inputStream = response.body();
+        if (response.statusCode() != 206) {
+            // The storage ignored the range and sent the whole file
+            try {
+                ByteStreams.skipFully(inputStream, offset);
+            } catch (IOException | RuntimeException exception) {
+                inputStream.close();
+                throw exception;
+            }
+        }
+        return ByteStreams.limit(inputStream, length);
+    }
+
+    @Override
+    public FileMetadata stat(S3DataSource dataSource, String path) throws IOException {
+        if (path.isEmpty()) {
+            return createDirectoryMetadata();
+        }
+
+        var key = getKey(dataSource, path);
+        var response = sendUnchecked(dataSource, "HEAD", key, null, Map.of(), null);
+        response.body().close();
+
+        if (response.statusCode() == 404) {
+            // Directories do not exist in object storage, only keys sharing their prefix
+            if (hasKeys(dataSource, key + "/")) {
+                return createDirectoryMetadata();
+            }
+            throw new HandledException("No such file", null).asNotFound();
+        }
+
+        ensureSuccessful(response, "No such file");
+        var fileMetadata = new FileMetadata(getContentLength(response), getLastModifiedMillis(response));
+        fileMetadata.setEntityTag(response.headers().firstValue("ETag").orElse(null));
+        return fileMetadata;
+    }
+
+    @Override
+    public long write(S3DataSource dataSource, String path, InputStream data) throws IOException {
+        var key = getKey(dataSource, path);
+        var partSizeBytes = dataSource.getMultipartUpload().getPartSizeBytes();
+        var firstPart = data.readNBytes(partSizeBytes);
+
+        if (firstPart.length < partSizeBytes) {
+            // Small files are uploaded in a single request
+            send(dataSource, "PUT", key, null, Map.of(), firstPart, "No such path").body().close();
+            return firstPart.length;
+        }
+
+        return writeMultipart(dataSource, key, firstPart, data);
+    }
+
+    /**
+     * Uploads the file as parts sent concurrently. Parts are read from the input while previous parts are still being
+     * sent, with at most the configured number of parts in flight.
+     *
+     * @param dataSource Data source
+     * @param key        Object key
+     * @param firstPart  First part, already read from the input
+     * @param data       Rest of the input
+     *
+     * @return Number of bytes written
+     *
+     * @throws IOException If uploading any part failed, in which case the upload is aborted
+     */
+    private long writeMultipart(S3DataSource dataSource, String key, byte[] firstPart, InputStream data)
+        throws IOException {
+        var multipartUpload = dataSource.getMultipartUpload();
+        var uploadId = getText(parseXml(send(dataSource, "POST", key, "uploads", Map.of(), null, "No such path")),
+            "UploadId");
+        if (uploadId == null) {
+            throw new IOException("S3 did not return an upload ID");
+        }
+        log.debug("Uploading {} to data source {} in parts of {} bytes", key, dataSource.getName(),
+            multipartUpload.getPartSizeBytes());
+
+        var uploadQuery = "uploadId=" + S3RequestSigner.encode(uploadId);
+        var inFlightParts = new Semaphore(multipartUpload.getMaxInFlightParts());
+        var partUploads = new ArrayList<CompletableFuture<String>>();
+        long totalWritten = 0;
+
+        try {
+            var part = firstPart;
+            while (part.length > 0) {
+                acquire(inFlightParts);
+                // Stops reading the input as soon as any part failed
+                for (var partUpload : partUploads) {
+                    if (partUpload.isCompletedExceptionally()) {
+                        join(partUpload);
+                    }
+                }
+
+                var partNumber = partUploads.size() + 1;
+                var partUpload = sendAsync(dataSource, "PUT", key, "partNumber=%d&%s".formatted(partNumber,
+                    uploadQuery), part)
+                    .thenApply(response -> response.headers().firstValue("ETag")
+                        .orElseThrow(() -> new CompletionException(new IOException(
+                            "S3 did not return an entity tag of part " + partNumber))))
+                    .whenComplete((entityTag, throwable) -> inFlightParts.release());
+                partUploads.add(partUpload);
+                totalWritten += part.length;
+                part = data.readNBytes(multipartUpload.getPartSizeBytes());
+            }
+
+            var body = new StringBuilder("<CompleteMultipartUpload>");
+            for (int i = 0; i < partUploads.size(); i++) {
+                body.append("<Part><PartNumber>%d</PartNumber><ETag>%s</ETag></Part>".formatted(i + 1,
+                    escapeXml(join(partUploads.get(i)))));
+            }
+            body.append("</CompleteMultipartUpload>");
+
+            // Completing the upload may fail even though S3 already responded with 200 OK
+            var document = parseXml(send(dataSource, "POST", key, uploadQuery, Map.of(),
+                body.toString().getBytes(StandardCharsets.UTF_8), "No such path"));
+            if (document.getDocumentElement().getTagName().equals("Error")) {
+                throw new IOException("Failed to complete multipart upload: " + getText(document, "Code"));
+            }
+        } catch (IOException | RuntimeException exception) {
+            abortMultipart(dataSource, key, uploadQuery, partUploads);
+            throw exception;
+        }
+
+        return totalWritten;
+    }
+
+    private void abortMultipart(S3DataSource dataSource, String key, String uploadQuery,
+        List<CompletableFuture<String>> partUploads) {
+        // Parts still being sent would be stored after the upload was aborted
+        for (var partUpload : partUploads) {
+            try {
+                partUpload.join();
+            } catch (RuntimeException ignored) {
+                // Failure was already reported
+            }
+        }
+
+        try {
+            sendUnchecked(dataSource, "DELETE", key, uploadQuery, Map.of(), null).body().close();
+        } catch (IOException | RuntimeException exception) {
+            log.warn("Failed to abort multipart upload of {} to data source {}", key, dataSource.getName(), exception);
+        }
+    }
+
+    @Override
+    public List<String> list(S3DataSource dataSource, String directoryPath) throws IOException {
+        var prefix = getKey(dataSource, directoryPath.isEmpty() ? "" : directoryPath + "/");
+        var filePaths = new ArrayList<String>();
+        String continuationToken = null;
+
+        do {
+            var query = "list-type=2&prefix=" + S3RequestSigner.encode(prefix);
+            if (continuationToken != null) {
+                query += "&continuation-token=" + S3RequestSigner.encode(continuationToken);
+            }
+            var document = parseXml(send(dataSource, "GET", "", query, Map.of(), null, "No such path"));
+
+            var keys = document.getElementsByTagName("Key");
+            for (int i = 0; i < keys.getLength(); i++) {
+                var key = keys.item(i).getTextContent();
+                // Keys ending with a slash are placeholders of empty directories
+                if (!key.endsWith("/")) {
+                    filePaths.add(PathUtils.normalizePath(key.substring(dataSource.getKeyPrefix().length())));
+                }
+            }
+            continuationToken = "true".equals(getText(document, "IsTruncated"))
+                ? getText(document, "NextContinuationToken")
+                : null;
+        } while (continuationToken != null);
+
+        if (filePaths.isEmpty() && !directoryPath.isEmpty()) {
+            throw new HandledException("No such path", null).asNotFound();
+        }
+
+        return filePaths;
+    }
+
+    private static FileMetadata createDirectoryMetadata() {
+        var fileMetadata = new FileMetadata(0, 0);
+        fileMetadata.setDirectory(true);
+        return fileMetadata;
+    }
+
+    private boolean hasKeys(S3DataSource dataSource, String prefix) throws IOException {
+        var query = "list-type=2&max-keys=1&prefix=" + S3RequestSigner.encode(prefix);
+        var document = parseXml(send(dataSource, "GET", "", query, Map.of(), null, "No such path"));
+        return document.getElementsByTagName("Key").getLength() > 0;
+    }
+
+    /**
+     * Sends a request to the storage.
+     *
+     * @param dataSource      Data source
+     * @param method          HTTP method
+     * @param key             Object key, empty for requests to the bucket
+     * @param query           Encoded query, may be null
+     * @param headers         Additional headers
+     * @param body            Request body, may be null
+     * @param notFoundMessage Message of the exception if the object does not exist
+     *
+     * @return Response, whose body must be closed
+     *
+     * @throws IOException If the request failed or the storage responded with an error
+     */
+    private HttpResponse<InputStream> send(S3DataSource dataSource, String method, String key, String query,
+        Map<String, String> headers, byte[] body, String notFoundMessage) throws IOException {
+        var response = sendUnchecked(dataSource, method, key, query, headers, body);
+        ensureSuccessful(response, notFoundMessage);
+        return response;
+    }
+
+    private HttpResponse<InputStream> sendUnchecked(S3DataSource dataSource, String method, String key, String query,
+        Map<String, String> headers, byte[] body) throws IOException {
+        try {
+            return getClient(dataSource).send(createRequest(dataSource, method, key, query, headers, body),
+                HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for S3");
+        }
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(S3DataSource dataSource, String method, String key,
+        String query, byte[] body) throws IOException {
+        return getClient(dataSource)
+            .sendAsync(createRequest(dataSource, method, key, query, Map.of(), body),
+                HttpResponse.BodyHandlers.ofInputStream())
+            .thenApply(response -> {
+                try {
+                    ensureSuccessful(response, "No such path");
+                    response.body().close();
+                    return response;
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+    }
+
+    private static HttpRequest createRequest(S3DataSource dataSource, String method, String key, String query,
+        Map<String, String> headers, byte[] body) {
+        var uri = createUri(dataSource, key, query);
+        var signer = new S3RequestSigner(dataSource.getRegion(), dataSource.getAccessKeyId(),
+            dataSource.getSecretAccessKey());
+        // Object data is not hashed, as the connection already protects its integrity
+        var payloadHash = body == null ? S3RequestSigner.EMPTY_PAYLOAD_HASH : S3RequestSigner.UNSIGNED_PAYLOAD;
+
+        var requestBuilder = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(dataSource.getRequestTimeoutSeconds()))
+            .method(method, body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(body));
+        signer.sign(method, uri, headers, payloadHash, Instant.now()).forEach(requestBuilder::header);
+        return requestBuilder.build();
+    }
+
+    private static URI createUri(S3DataSource dataSource, String key, String query) {
+        var endpoint = URI.create(dataSource.getEndpoint());
+        var authority = endpoint.getRawAuthority();
+        var path = "/" + S3RequestSigner.encodePath(key);
+
+        if (dataSource.isPathStyleAccess()) {
+            path = "/" + S3RequestSigner.encode(dataSource.getBucket()) + (key.isEmpty() ? "" : path);
+        } else {
+            authority = dataSource.getBucket() + "." + authority;
+        }
+
+        return URI.create(endpoint.getScheme() + "://" + authority + path + (query == null ? "" : "?" + query));
+    }
+
+    /**
+     * Translates error responses of the storage into exceptions.
+     *
+     * @param response        Response
+     * @param notFoundMessage Message of the exception if the object does not exist
+     *
+     * @throws IOException If the storage responded with an error
+     */
+    private static void ensureSuccessful(HttpResponse<InputStream> response, String notFoundMessage)
+        throws IOException {
+        var statusCode = response.statusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            return;
+        }
+
+        String errorCode = null;
+        try (var inputStream = response.body()) {
+            var errorBody = ByteStreams.limit(inputStream, MAX_ERROR_BODY_BYTES).readAllBytes();
+            if (errorBody.length > 0) {
+                errorCode = getText(parseXml(errorBody), "Code");
+            }
+        } catch (IOException exception) {
+            log.debug("Failed to read S3 error response: {}", exception.getMessage());
+        }
+
+        switch (statusCode) {
+            case 404 -> throw new HandledException(notFoundMessage, null).asNotFound();
+            case 403 -> throw new HandledException("Permission denied", null);
+            default -> throw new IOException("S3 responded with status %d (%s) to %s %s".formatted(statusCode,
+                errorCode, response.request().method(), response.request().uri().getRawPath()));
+        }
+    }
+
+    private HttpClient getClient(S3DataSource dataSource) throws IOException {
+        try {
+            return clientMap.get(dataSource, () -> {
+                log.info("Creating S3 client for data source {} at {}", dataSource.getName(),
+                    dataSource.getEndpoint());
+                return HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(dataSource.getConnectTimeoutSeconds()))
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .executor(clientExecutor)
+                    .build();
+            });
+        } catch (ExecutionException exception) {
+            throw new IOException("Failed to create S3 client", exception.getCause());
+        }
+    }
+
+    private static String getKey(S3DataSource dataSource, String path) {
+        return dataSource.getKeyPrefix() + path;
+    }
+
+    private static long getContentLength(HttpResponse<?> response) {
+        return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+    }
+
+    private static long getLastModifiedMillis(HttpResponse<?> response) {
+        var lastModifiedSeconds = response.headers().firstValue("Last-Modified")
+            .map(ConditionalRequestUtils::parseHttpDate)
+            .orElse(-1L);
+        return lastModifiedSeconds == -1 ? 0 : lastModifiedSeconds * 1000;
+    }
+
+    private static Document parseXml(HttpResponse<InputStream> response) throws IOException {
+        try (var inputStream = response.body()) {
+            return parseXml(inputStream.readAllBytes());
+        }
+    }
+
+    private static Document parseXml(byte[] xml) throws IOException {
+        try {
+            var documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            // SECURITY: Responses must not be able to reference external entities
+            documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            return documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException exception) {
+            throw new IOException("Malformed S3 response", exception);
+        }
+    }
+
+    private static String getText(Document document, String tagName) {
+        var elements = document.getElementsByTagName(tagName);
+        return elements.getLength() == 0 ? null : elements.item(0).getTextContent();
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static void acquire(Semaphore semaphore) throws InterruptedIOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for parts to be uploaded");
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            var cause = exception.getCause();
+            if (cause instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to upload part", cause);
+        }
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<S3DataSource, HttpClient> notification) {
+        var dataSource = notification.getKey();
+        var client = notification.getValue();
+
+        if (dataSource != null && client != null) {
+            log.info("Closing S3 client for data source {}", dataSource.getName());
+            // Requests already sent are let to complete
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Signs requests to S3-compatible object storage with AWS Signature Version 4.
+ */
+@RequiredArgsConstructor
+public class S3RequestSigner {
+
+    public static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    public static final String SERVICE = "s3";
+    public static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    public static final String EMPTY_PAYLOAD_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    public static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
+        .ofPattern("yyyyMMdd'T'HHmmss'Z'")
+        .withZone(ZoneOffset.UTC);
+
+    private final String region;
+    private final String accessKeyId;
+    private final String secretAccessKey;
+
+    /**
+     * Signs the request.
+     *
+     * @param method      HTTP method
+     * @param uri         Request URI, with the path and query already encoded by {@link #encode(String)}
+     * @param headers     Headers sent with the request, which are signed as well
+     * @param payloadHash Hex encoded SHA-256 hash of the request body, or {@link #UNSIGNED_PAYLOAD}
+     * @param now         Time of the request
+     *
+     * @return Headers to send with the request, including the signature
+     */
+    public Map<String, String> sign(String method, URI uri, Map<String, String> headers, String payloadHash,
+        Instant now) {
+        var dateTime = DATE_TIME_FORMATTER.format(now);
+        var date = dateTime.substring(0, 8);
+
+        var signedHeaders = new TreeMap<String, String>();
+        headers.forEach((name, value) -> signedHeaders.put(name.toLowerCase(Locale.ROOT), value.trim()));
+        signedHeaders.put("host", getHost(uri));
+        signedHeaders.put("x-amz-content-sha256", payloadHash);
+        signedHeaders.put("x-amz-date", dateTime);
+        var signedHeaderNames = String.join(";", signedHeaders.keySet());
+
+        var canonicalRequest = String.join("\n",
+            method,
+            uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath(),
+            getCanonicalQuery(uri.getRawQuery()),
+            signedHeaders.entrySet().stream()
+                .map(entry -> entry.getKey() + ":" + entry.getValue() + "\n")
+                .collect(Collectors.joining()),
+            signedHeaderNames,
+            payloadHash);
+        var scope = "%s/%s/%s/aws4_request".formatted(date, region, SERVICE);
+        var stringToSign = String.join("\n", ALGORITHM, dateTime, scope, sha256(canonicalRequest));
+
+        var signingKey = hmac(("AWS4" + secretAccessKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, SERVICE);
+        signingKey = hmac(signingKey, "aws4_request");
+        var signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+        var requestHeaders = new LinkedHashMap<>(signedHeaders);
+        // The HTTP client sets the Host header itself
+        requestHeaders.remove("host");
+        requestHeaders.put("authorization", "%s Credential=%s/%s, SignedHeaders=%s, Signature=%s".formatted(
+            ALGORITHM, accessKeyId, scope, signedHeaderNames, signature));
+        return requestHeaders;
+    }
+
+    /**
+     * Encodes a path segment or a query parameter as required by the signature.
+     *
+     * @param value Value to encode
+     *
+     * @return Encoded value
+     */
+    public static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+            .replace("+", "%20")
+            .replace("*", "%2A")
+            .replace("%7E", "~");
+    }
+
+    /**
+     * Encodes the path segments of an object key, keeping the slashes between them.
+     *
+     * @param key Object key
+     *
+     * @return Encoded object key
+     */
+    public static String encodePath(String key) {
+        return Arrays.stream(key.split("/", -1))
+            .map(S3RequestSigner::encode)
+            .collect(Collectors.joining("/"));
+    }
+
+    /**
+     * Hashes the data with SHA-256.
+     *
+     * @param data Data to hash
+     *
+     * @return Hex encoded hash
+     */
+    public static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException("SHA-256 is not supported", exception);
+        }
+    }
+
+    private static String sha256(String data) {
+        return sha256(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            var mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException("HmacSHA256 is not supported", exception);
+        }
+    }
+
+    /**
+     * Returns the value of the Host header as sent by the HTTP client, which omits default ports.
+     *
+     * @param uri Request URI
+     *
+     * @return Host header value
+     */
+    private static String getHost(URI uri) {
+        var defaultPort = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        if (uri.getPort() == -1 || uri.getPort() == defaultPort) {
+            return uri.getHost();
+        }
+        return uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static String getCanonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+
+        var parameters = new ArrayList<String[]>();
+        for (var parameter : rawQuery.split("&")) {
+            // Parameters without a value are signed with an empty one
+            var separatorIndex = parameter.indexOf('=');
+            parameters.add(separatorIndex == -1
+                ? new String[] {parameter, ""}
+                : new String[] {parameter.substring(0, separatorIndex), parameter.substring(separatorIndex + 1)});
+        }
+        parameters.sort(Comparator.<String[], String>comparing(parameter -> parameter[0])
+            .thenComparing(parameter -> parameter[1]));
+        return parameters.stream()
+            .map(parameter -> parameter[0] + "=" + parameter[1])
+            .collect(Collectors.joining("&"));
+    }
+}
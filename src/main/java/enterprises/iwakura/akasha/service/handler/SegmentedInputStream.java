@@ -0,0 +1,146 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import enterprises.iwakura.akasha.object.ReadContext;
+
+/**
+ * InputStream that reads a range of a file as segments downloaded concurrently, each over its own stream opened by
+ * the range opener, and returns them in order. At most the configured number of segments are downloaded ahead of the
+ * segment being read, so memory is bounded by {@code (maxInFlightSegments + 1) * segmentSizeBytes}.
+ */
+public class SegmentedInputStream extends InputStream {
+
+    private final ReadContext.RangeOpener rangeOpener;
+    private final long segmentSizeBytes;
+    private final int maxInFlightSegments;
+    private final ExecutorService executorService;
+    private final long endOffset;
+    private final Deque<Future<byte[]>> inFlightSegments = new ArrayDeque<>();
+    private long nextSegmentOffset;
+    private byte[] segment;
+    private int segmentPosition;
+    private boolean closed;
+
+    /**
+     * Creates a new segmented input stream. Segments are not requested until the first read.
+     *
+     * @param rangeOpener         Opens ranges of the file, each segment is read from its own range
+     * @param segmentSizeBytes    Size of a single segment
+     * @param maxInFlightSegments Maximum number of segments downloaded concurrently
+     * @param executorService     Executor downloading the segments
+     * @param offset              Offset of the range to read
+     * @param length              Length of the range to read
+     */
+    public SegmentedInputStream(ReadContext.RangeOpener rangeOpener, int segmentSizeBytes, int maxInFlightSegments,
+        ExecutorService executorService, long offset, long length) {
+        this.rangeOpener = rangeOpener;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxInFlightSegments = Math.max(1, maxInFlightSegments);
+        this.executorService = executorService;
+        this.nextSegmentOffset = offset;
+        this.endOffset = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var buffer = new byte[1];
+        return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (segment == null || segmentPosition == segment.length) {
+            requestSegments();
+            var future = inFlightSegments.poll();
+            if (future == null) {
+                return -1;
+            }
+            segment = await(future);
+            segmentPosition = 0;
+            // Keeps the window full while the caller drains the current segment
+            requestSegments();
+        }
+
+        var bytesRead = Math.min(len, segment.length - segmentPosition);
+        System.arraycopy(segment, segmentPosition, b, off, bytesRead);
+        segmentPosition += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public int available() {
+        return segment == null ? 0 : segment.length - segmentPosition;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segment = null;
+        // Segments being downloaded are left to finish, so their streams are closed and channels released cleanly
+        inFlightSegments.forEach(future -> future.cancel(false));
+        inFlightSegments.clear();
+    }
+
+    private void requestSegments() {
+        while (inFlightSegments.size() < maxInFlightSegments && nextSegmentOffset < endOffset) {
+            var offset = nextSegmentOffset;
+            var length = (int) Math.min(segmentSizeBytes, endOffset - offset);
+            inFlightSegments.add(executorService.submit(() -> download(offset, length)));
+            nextSegmentOffset += length;
+        }
+    }
+
+    private byte[] download(long offset, int length) throws IOException {
+        try (var inputStream = rangeOpener.open(offset, length)) {
+            var bytes = inputStream.readNBytes(length);
+            if (bytes.length != length) {
+                throw new EOFException("Segment at offset %d ended after %d of %d bytes"
+                    .formatted(offset, bytes.length, length));
+            }
+            return bytes;
+        }
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new InterruptedIOException("Interrupted while waiting for a segment");
+        } catch (CancellationException exception) {
+            close();
+            throw new IOException("Segment download was cancelled", exception);
+        } catch (ExecutionException exception) {
+            close();
+            if (exception.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to download segment", exception.getCause());
+        }
+    }
+}
@@ -1,37 +1,66 @@
 package enterprises.iwakura.akasha.service.handler;
 
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.io.ByteStreams;
 
 import enterprises.iwakura.akasha.exception.HandledException;
 import enterprises.iwakura.akasha.object.DataSourceType;
+import enterprises.iwakura.akasha.object.FileMetadata;
 import enterprises.iwakura.akasha.object.ReadContext;
-import enterprises.iwakura.akasha.object.SftpContext;
 import enterprises.iwakura.akasha.object.SftpDataSource;
 import enterprises.iwakura.akasha.service.CacheService;
+import enterprises.iwakura.akasha.service.PrometheusService;
+import enterprises.iwakura.akasha.util.ConditionalRequestUtils;
+import enterprises.iwakura.akasha.util.PathUtils;
 import enterprises.iwakura.sigewine.core.annotations.Bean;
-import lombok.SneakyThrows;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.FileMode;
 import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.SFTPClient;
 import net.schmizz.sshj.sftp.SFTPException;
 import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
 
 @Bean
 @Slf4j
-public class SftpDataSourceHandler implements DataSourceHandler<SftpDataSource>, RemovalListener<SftpDataSource, SftpContext> {
+@RequiredArgsConstructor
+public class SftpDataSourceHandler implements DataSourceHandler<SftpDataSource>,
+    RemovalListener<SftpDataSource, ChannelPool<SSHClient, SFTPClient>> {
 
     public static final int MAX_UNCONFIRMED_READS = 16;
+    public static final long POOL_EVICTION_INTERVAL_MILLIS = 30_000;
 
-    private final Cache<SftpDataSource, SftpContext> clientMap = CacheService.createCache(cacheBuilder -> cacheBuilder
-        .expireAfterAccess(Duration.ofHours(1))
-        .removalListener(this));
+    private final Cache<SftpDataSource, ChannelPool<SSHClient, SFTPClient>> poolMap = CacheService.createCache(
+        cacheBuilder -> cacheBuilder
+            .expireAfterAccess(Duration.ofHours(1))
+            .removalListener(this));
+    private final Timer poolEvictionTimer = new Timer("SftpPoolEvictionTimer", true);
+    private final AtomicBoolean poolEvictionScheduled = new AtomicBoolean();
+    // Concurrency is bounded by the in-flight segments of each download and by the channels of each pool
+    private final ExecutorService segmentExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("SftpSegment-", 0).factory());
+
+    private final PrometheusService prometheusService;
 
     @Override
     public DataSourceType getType() {
@@ -40,78 +69,349 @@ public class SftpDataSourceHandler implements DataSourceHandler<SftpDataSource>,
 
     @Override
     public ReadContext read(SftpDataSource dataSource, String path) throws IOException {
-        var sftpClient = getOrConnect(dataSource).getSftpClient();
+        var lease = borrow(dataSource);
+        RemoteFile remoteFile = null;
         try {
-            var remoteFile = sftpClient.open(path);
-            var inputStream = remoteFile.new ReadAheadRemoteFileInputStream(MAX_UNCONFIRMED_READS);
-            var fileName = path.substring(path.lastIndexOf('/') + 1);
-            return new ReadContext(inputStream, fileName, remoteFile.length());
-        } catch (SFTPException sftpException) {
-            switch (sftpException.getStatusCode()) {
-                case NO_SUCH_FILE, NO_SUCH_PATH -> throw new HandledException("No such file", sftpException).asNotFound();
-                case PERMISSION_DENIED -> throw new HandledException("Permission denied", sftpException);
+            remoteFile = lease.getChannel().open(path);
+            var attributes = remoteFile.fetchAttributes();
+            InputStream inputStream;
+            if (isParallelDownload(dataSource, attributes.getSize())) {
+                // Segments borrow their own channels, so this one is returned right away
+                remoteFile.close();
+                lease.close();
+                inputStream = openSegments(dataSource, path, 0, attributes.getSize());
+            } else {
+                inputStream = new LeasedInputStream(remoteFile.new ReadAheadRemoteFileInputStream(
+                    MAX_UNCONFIRMED_READS), remoteFile, lease);
             }
-            throw sftpException;
+            var fileName = path.substring(path.lastIndexOf('/') + 1);
+            var readContext = new ReadContext(inputStream, fileName, attributes.getSize());
+            readContext.setLastModifiedMillis(attributes.getMtime() * 1000);
+            readContext.setEntityTag(ConditionalRequestUtils.createEntityTag(attributes.getSize(),
+                readContext.getLastModifiedMillis()));
+            // Ranges hold their own channel, as they may be read after the input stream of the whole file is closed
+            readContext.setRangeOpener((offset, length) -> read(dataSource, path, offset, length));
+            return readContext;
+        } catch (IOException | RuntimeException exception) {
+            closeQuietly(remoteFile);
+            lease.close();
+            throw translate(exception, "No such file");
+        }
+    }
+
+    @Override
+    public InputStream read(SftpDataSource dataSource, String path, long offset, long length) throws IOException {
+        if (isParallelDownload(dataSource, length)) {
+            return openSegments(dataSource, path, offset, length);
+        }
+        return openRange(dataSource, path, offset, length);
+    }
+
+    /**
+     * Opens a range of the file over a single SFTP channel.
+     *
+     * @param dataSource Data source
+     * @param path       File path
+     * @param offset     Offset of the range
+     * @param length     Length of the range
+     *
+     * @return Input stream of the range, which returns the channel into the pool once closed
+     *
+     * @throws IOException If opening the file failed
+     */
+    private InputStream openRange(SftpDataSource dataSource, String path, long offset, long length)
+        throws IOException {
+        var lease = borrow(dataSource);
+        RemoteFile remoteFile = null;
+        try {
+            remoteFile = lease.getChannel().open(path);
+            // The read-ahead limit only stops requesting further chunks, the stream itself continues until EOF
+            var inputStream = remoteFile.new ReadAheadRemoteFileInputStream(MAX_UNCONFIRMED_READS, offset, length);
+            return new LeasedInputStream(ByteStreams.limit(inputStream, length), remoteFile, lease);
+        } catch (IOException | RuntimeException exception) {
+            closeQuietly(remoteFile);
+            lease.close();
+            throw translate(exception, "No such file");
+        }
+    }
+
+    @Override
+    public FileMetadata stat(SftpDataSource dataSource, String path) throws IOException {
+        try (var lease = borrow(dataSource)) {
+            var attributes = lease.getChannel().stat(path);
+            var fileMetadata = new FileMetadata(attributes.getSize(), attributes.getMtime() * 1000);
+            fileMetadata.setEntityTag(ConditionalRequestUtils.createEntityTag(fileMetadata.getFileSizeBytes(),
+                fileMetadata.getLastModifiedMillis()));
+            fileMetadata.setDirectory(attributes.getType() == FileMode.Type.DIRECTORY);
+            return fileMetadata;
+        } catch (IOException | RuntimeException exception) {
+            throw translate(exception, "No such file");
         }
     }
 
     @Override
     public long write(SftpDataSource dataSource, String path, InputStream data) throws IOException {
-        var sftpClient = getOrConnect(dataSource).getSftpClient();
         long totalWritten = 0;
-        try (var remoteFile = sftpClient.open(path, Set.of(OpenMode.CREAT, OpenMode.WRITE, OpenMode.TRUNC))) {
-            byte[] buffer = new byte[8192];
+        try (var lease = borrow(dataSource);
+            var remoteFile = lease.getChannel().open(path, Set.of(OpenMode.CREAT, OpenMode.WRITE, OpenMode.TRUNC));
+            // Keeps a window of write requests in flight instead of waiting for each one to be confirmed
+            var outputStream = remoteFile.new RemoteFileOutputStream(0, dataSource.getMaxUnconfirmedWrites())) {
+            byte[] buffer = new byte[dataSource.getWriteChunkSizeBytes()];
             int length;
-            // FIXME: Very slow! Make asynchronous.
-            while ((length = data.read(buffer)) > 0) {
-                remoteFile.write(totalWritten, buffer, 0, length);
+            // Fills whole chunks, so each write request carries as much data as possible
+            while ((length = data.readNBytes(buffer, 0, buffer.length)) > 0) {
+                outputStream.write(buffer, 0, length);
+                totalWritten += length;
             }
-        } catch (SFTPException sftpException) {
+        } catch (IOException | RuntimeException exception) {
+            throw translate(exception, "No such path");
+        }
+        return totalWritten;
+    }
+
+    @Override
+    public List<String> list(SftpDataSource dataSource, String directoryPath) throws IOException {
+        var filePaths = new ArrayList<String>();
+        var directoryPaths = new ArrayDeque<String>();
+        directoryPaths.add(directoryPath.isEmpty() ? "." : directoryPath);
+
+        try (var lease = borrow(dataSource)) {
+            while (!directoryPaths.isEmpty()) {
+                for (var resource : lease.getChannel().ls(directoryPaths.poll())) {
+                    if (resource.isDirectory()) {
+                        directoryPaths.add(resource.getPath());
+                    } else if (resource.isRegularFile()) {
+                        filePaths.add(PathUtils.normalizePath(resource.getPath()));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException exception) {
+            throw translate(exception, "No such path");
+        }
+
+        return filePaths;
+    }
+
+    private boolean isParallelDownload(SftpDataSource dataSource, long length) {
+        var parallelDownload = dataSource.getParallelDownload();
+        return parallelDownload.isEnabled()
+            && length >= parallelDownload.getMinSizeBytes()
+            && length > parallelDownload.getSegmentSizeBytes();
+    }
+
+    /**
+     * Opens a range of the file downloaded as segments over multiple SFTP channels concurrently.
+     *
+     * @param dataSource Data source
+     * @param path       File path
+     * @param offset     Offset of the range
+     * @param length     Length of the range
+     *
+     * @return Input stream of the range
+     */
+    private InputStream openSegments(SftpDataSource dataSource, String path, long offset, long length) {
+        var parallelDownload = dataSource.getParallelDownload();
+        log.debug("Downloading {} bytes of {} from data source {} in segments of {} bytes", length, path,
+            dataSource.getName(), parallelDownload.getSegmentSizeBytes());
+        return new SegmentedInputStream((segmentOffset, segmentLength) ->
+            openRange(dataSource, path, segmentOffset, segmentLength), parallelDownload.getSegmentSizeBytes(),
+            parallelDownload.getMaxInFlightSegments(), segmentExecutor, offset, length);
+    }
+
+    /**
+     * Borrows an SFTP channel from the pool of the data source, creating the pool if needed.
+     *
+     * @param dataSource Data source
+     *
+     * @return Lease of the SFTP channel, which must be closed to return the channel into the pool
+     *
+     * @throws IOException If no channel became available in time or connecting failed
+     */
+    private ChannelPool<SSHClient, SFTPClient>.Lease borrow(SftpDataSource dataSource) throws IOException {
+        ChannelPool<SSHClient, SFTPClient> pool;
+        try {
+            pool = poolMap.get(dataSource, () -> createPool(dataSource));
+        } catch (ExecutionException exception) {
+            throw new IOException("Failed to create SFTP pool", exception.getCause());
+        }
+        return pool.borrow();
+    }
+
+    private ChannelPool<SSHClient, SFTPClient> createPool(SftpDataSource dataSource) {
+        schedulePoolEviction();
+        log.info("Creating SFTP pool for data source {} with up to {} connections", dataSource.getName(),
+            dataSource.getPool().getMaxSessions());
+        return new ChannelPool<>(dataSource.getName(), dataSource.getPool(), new SftpConnector(dataSource),
+            () -> publishPoolState(dataSource));
+    }
+
+    private void schedulePoolEviction() {
+        if (poolEvictionScheduled.compareAndSet(false, true)) {
+            poolEvictionTimer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    for (var pool : poolMap.asMap().values()) {
+                        try {
+                            pool.evictIdle();
+                        } catch (Exception exception) {
+                            log.error("Failed to evict idle SFTP channels", exception);
+                        }
+                    }
+                }
+            }, POOL_EVICTION_INTERVAL_MILLIS, POOL_EVICTION_INTERVAL_MILLIS);
+        }
+    }
+
+    private void publishPoolState(SftpDataSource dataSource) {
+        var pool = poolMap.getIfPresent(dataSource);
+        if (pool == null) {
+            return;
+        }
+
+        var collectors = prometheusService.getCollectors();
+        var name = dataSource.getName();
+        collectors.getSftpPoolSessions().labelValues(name).set(pool.getSessionCount());
+        collectors.getSftpPoolChannels().labelValues(name, "active").set(pool.getActiveChannelCount());
+        collectors.getSftpPoolChannels().labelValues(name, "idle").set(pool.getIdleChannelCount());
+        collectors.getSftpPoolChannels().labelValues(name, "waiting").set(pool.getWaitingBorrowerCount());
+    }
+
+    /**
+     * Translates SFTP status codes into handled exceptions.
+     *
+     * @param exception       Exception thrown while accessing the SFTP server
+     * @param notFoundMessage Message of the exception if the file or path does not exist
+     *
+     * @return Exception to throw
+     */
+    private static IOException translate(Exception exception, String notFoundMessage) {
+        if (exception instanceof SFTPException sftpException) {
             switch (sftpException.getStatusCode()) {
-                case NO_SUCH_FILE, NO_SUCH_PATH -> throw new HandledException("No such path", sftpException).asNotFound();
+                case NO_SUCH_FILE, NO_SUCH_PATH -> throw new HandledException(notFoundMessage, sftpException).asNotFound();
                 case PERMISSION_DENIED -> throw new HandledException("Permission denied", sftpException);
             }
-            throw sftpException;
         }
-        return totalWritten;
+        if (exception instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return (IOException) exception;
     }
 
-    @SneakyThrows
-    private SftpContext getOrConnect(SftpDataSource dataSource) {
-        var ctx = clientMap.get(dataSource, () -> {
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception exception) {
+                log.debug("Failed to close {}: {}", closeable.getClass().getSimpleName(), exception.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<SftpDataSource, ChannelPool<SSHClient, SFTPClient>> notification) {
+        var dataSource = notification.getKey();
+        var pool = notification.getValue();
+
+        if (dataSource != null && pool != null) {
+            log.info("Closing SFTP pool for data source {}", dataSource.getName());
+            pool.close();
+
+            var collectors = prometheusService.getCollectors();
+            collectors.getSftpPoolSessions().remove(dataSource.getName());
+            for (var state : List.of("active", "idle", "waiting")) {
+                collectors.getSftpPoolChannels().remove(dataSource.getName(), state);
+            }
+        }
+    }
+
+    /**
+     * Connects to the SFTP server of a data source and opens SFTP channels over the connections.
+     */
+    @RequiredArgsConstructor
+    private static class SftpConnector implements ChannelPool.Connector<SSHClient, SFTPClient> {
+
+        private final SftpDataSource dataSource;
+
+        @Override
+        public SSHClient openSession() throws IOException {
+            log.info("Connecting to SFTP server {}:{} for data source {}", dataSource.getHostname(),
+                dataSource.getPort(), dataSource.getName());
+            var sshClient = new SSHClient();
             try {
-                log.info("Connecting to SFTP server {}:{} for data source {}", dataSource.getHostname(), dataSource.getPort(), dataSource.getName());
-                var sshClient = new SSHClient();
                 sshClient.addHostKeyVerifier(new PromiscuousVerifier());
                 sshClient.connect(dataSource.getHostname(), dataSource.getPort());
                 sshClient.useCompression();
                 sshClient.authPassword(dataSource.getUsername(), dataSource.getPassword());
-                return new SftpContext(sshClient, sshClient.newSFTPClient());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to connect to SFTP server", e);
+                return sshClient;
+            } catch (IOException | RuntimeException exception) {
+                closeQuietly(sshClient);
+                throw new IOException("Failed to connect to SFTP server", exception);
             }
-        });
+        }
+
+        @Override
+        public SFTPClient openChannel(SSHClient session) throws IOException {
+            return session.newSFTPClient();
+        }
+
+        @Override
+        public boolean isConnected(SSHClient session) {
+            return session.isConnected() && session.isAuthenticated();
+        }
 
-        if (!ctx.getSshClient().isConnected()) {
-            log.warn("SFTP connection for data source {} is not connected. Reconnecting...", dataSource.getName());
-            clientMap.invalidate(dataSource);
-            return getOrConnect(dataSource);
+        @Override
+        public boolean isHealthy(SFTPClient channel, boolean validate) throws IOException {
+            if (!channel.getSFTPEngine().getSubsystem().isOpen()) {
+                return false;
+            }
+            if (validate) {
+                channel.canonicalize(".");
+            }
+            return true;
         }
 
-        return ctx;
+        @Override
+        public void closeChannel(SFTPClient channel) {
+            closeQuietly(channel);
+        }
+
+        @Override
+        public void closeSession(SSHClient session) {
+            log.info("Disconnecting from SFTP server {}:{} for data source {}", dataSource.getHostname(),
+                dataSource.getPort(), dataSource.getName());
+            closeQuietly(session);
+        }
     }
 
-    @Override
-    public void onRemoval(RemovalNotification<SftpDataSource, SftpContext> notification) {
-        var dataSource = notification.getKey();
-        var ctx = notification.getValue();
+    /**
+     * InputStream of a remote file that closes the remote file and returns the SFTP channel into the pool once closed.
+     */
+    private static class LeasedInputStream extends FilterInputStream {
 
-        if (dataSource != null && ctx != null) {
+        private final RemoteFile remoteFile;
+        private final Closeable lease;
+        private boolean closed;
+
+        private LeasedInputStream(InputStream inputStream, RemoteFile remoteFile, Closeable lease) {
+            super(inputStream);
+            this.remoteFile = remoteFile;
+            this.lease = lease;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
             try {
-                log.info("Closing SFTP connection for data source {}", dataSource.getName());
-                ctx.getSshClient().disconnect();
-            } catch (Exception e) {
-                log.error("Failed to close SFTP connection for data source {}", dataSource.getName(), e);
+                super.close();
+            } finally {
+                try {
+                    remoteFile.close();
+                } finally {
+                    lease.close();
+                }
             }
         }
     }
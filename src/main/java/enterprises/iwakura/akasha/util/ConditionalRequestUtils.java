@@ -0,0 +1,133 @@
+package enterprises.iwakura.akasha.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class ConditionalRequestUtils {
+
+    public static final DateTimeFormatter HTTP_DATE_FORMATTER = DateTimeFormatter
+        .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+        .withZone(ZoneOffset.UTC);
+    public static final int CONTENT_HASH_ENTITY_TAG_BYTES = 16;
+
+    /**
+     * Creates a strong entity tag from the file attributes in the data source.
+     *
+     * @param fileSizeBytes      File size
+     * @param lastModifiedMillis Last modification time of the file, 0 if unknown
+     *
+     * @return Quoted entity tag, or null if the last modification time is unknown
+     */
+    public static String createEntityTag(long fileSizeBytes, long lastModifiedMillis) {
+        if (lastModifiedMillis <= 0) {
+            return null;
+        }
+        return "\"%x-%x\"".formatted(fileSizeBytes, lastModifiedMillis);
+    }
+
+    /**
+     * Creates a strong entity tag from the hash of the file content.
+     *
+     * @param contentHash Hash of the file content
+     *
+     * @return Quoted entity tag
+     */
+    public static String createEntityTag(byte[] contentHash) {
+        var length = Math.min(contentHash.length, CONTENT_HASH_ENTITY_TAG_BYTES);
+        return "\"%s\"".formatted(HexFormat.of().formatHex(contentHash, 0, length));
+    }
+
+    /**
+     * Creates a strong entity tag of an encoded variant of a file, as it is a different representation of the file.
+     *
+     * @param entityTag       Quoted entity tag of the file
+     * @param contentEncoding Content encoding of the variant
+     *
+     * @return Quoted entity tag of the variant
+     */
+    public static String createEntityTag(String entityTag, String contentEncoding) {
+        return "%s-%s\"".formatted(entityTag.substring(0, entityTag.length() - 1), contentEncoding);
+    }
+
+    /**
+     * Formats the specified time as an HTTP date.
+     *
+     * @param millis Time in milliseconds
+     *
+     * @return HTTP date
+     */
+    public static String formatHttpDate(long millis) {
+        return HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Parses an HTTP date.
+     *
+     * @param httpDate HTTP date
+     *
+     * @return Time in seconds, or -1 if the date is malformed
+     */
+    public static long parseHttpDate(String httpDate) {
+        try {
+            return ZonedDateTime.parse(httpDate.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+        } catch (DateTimeParseException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks if the client already has the current representation of the file, so the request can be answered with
+     * 304 Not Modified. The If-None-Match header takes precedence over the If-Modified-Since header.
+     *
+     * @param ifNoneMatchHeader     Value of the If-None-Match header, may be null
+     * @param ifModifiedSinceHeader Value of the If-Modified-Since header, may be null
+     * @param entityTag             Entity tag of the file, may be null
+     * @param lastModifiedMillis    Last modification time of the file, 0 if unknown
+     *
+     * @return true if the file was not modified, false otherwise
+     */
+    public static boolean isNotModified(String ifNoneMatchHeader, String ifModifiedSinceHeader, String entityTag,
+        long lastModifiedMillis) {
+        if (ifNoneMatchHeader != null) {
+            return entityTag != null && matchesAny(ifNoneMatchHeader, entityTag);
+        }
+        if (ifModifiedSinceHeader != null && lastModifiedMillis > 0) {
+            var ifModifiedSinceSeconds = parseHttpDate(ifModifiedSinceHeader);
+            // HTTP dates have a precision of seconds
+            return ifModifiedSinceSeconds >= 0 && lastModifiedMillis / 1000 <= ifModifiedSinceSeconds;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if any entity tag in the list matches the specified entity tag, using the weak comparison.
+     *
+     * @param entityTagList Comma separated list of entity tags, or "*"
+     * @param entityTag     Entity tag
+     *
+     * @return true if any entity tag matches, false otherwise
+     */
+    private static boolean matchesAny(String entityTagList, String entityTag) {
+        if (entityTagList.trim().equals("*")) {
+            return true;
+        }
+        for (var listedEntityTag : entityTagList.split(",")) {
+            if (stripWeakPrefix(listedEntityTag.trim()).equals(stripWeakPrefix(entityTag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakPrefix(String entityTag) {
+        return entityTag.startsWith("W/") ? entityTag.substring(2) : entityTag;
+    }
+}
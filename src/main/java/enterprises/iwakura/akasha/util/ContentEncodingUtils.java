@@ -0,0 +1,78 @@
+package enterprises.iwakura.akasha.util;
+
+import java.util.List;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class ContentEncodingUtils {
+
+    public static final String GZIP = "gzip";
+    public static final String IDENTITY = "identity";
+
+    /**
+     * Negotiates the content encoding based on the value of the Accept-Encoding header.
+     *
+     * @param acceptEncodingHeader Value of the Accept-Encoding header, may be null
+     * @param supportedEncodings   Supported content encodings, most preferred first
+     *
+     * @return Most preferred supported content encoding accepted by the client, or null if the identity should be sent
+     */
+    public static String negotiate(String acceptEncodingHeader, List<String> supportedEncodings) {
+        if (acceptEncodingHeader == null) {
+            return null;
+        }
+
+        String bestEncoding = null;
+        var bestQuality = 0.0;
+
+        for (var supportedEncoding : supportedEncodings) {
+            var quality = getQuality(acceptEncodingHeader, supportedEncoding);
+            if (quality > bestQuality) {
+                bestEncoding = supportedEncoding;
+                bestQuality = quality;
+            }
+        }
+
+        return bestEncoding;
+    }
+
+    /**
+     * Returns the quality value of the specified content encoding in the Accept-Encoding header. Encodings that are not
+     * listed get the quality of the "*" wildcard, if present.
+     *
+     * @param acceptEncodingHeader Value of the Accept-Encoding header
+     * @param encoding             Content encoding
+     *
+     * @return Quality value, 0 if the encoding is not acceptable
+     */
+    private static double getQuality(String acceptEncodingHeader, String encoding) {
+        var wildcardQuality = 0.0;
+
+        for (var codingSpec : acceptEncodingHeader.split(",")) {
+            var parameters = codingSpec.split(";");
+            var coding = parameters[0].trim();
+            var quality = 1.0;
+
+            for (int i = 1; i < parameters.length; i++) {
+                var parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException exception) {
+                        quality = 0.0;
+                    }
+                }
+            }
+
+            if (coding.equalsIgnoreCase(encoding)) {
+                return quality;
+            }
+            if (coding.equals("*")) {
+                wildcardQuality = quality;
+            }
+        }
+
+        return wildcardQuality;
+    }
+}
@@ -1,6 +1,7 @@
 package enterprises.iwakura.akasha.util;
 
 import java.util.Map;
+import java.util.Set;
 
 import lombok.experimental.UtilityClass;
 
@@ -25,6 +26,25 @@ public class ContentTypeResolver {
         Map.entry("zip", "application/zip")
     );
 
+    public static final Set<String> COMPRESSIBLE_CONTENT_TYPES = Set.of(
+        "application/javascript",
+        "application/json",
+        "application/xml",
+        "image/svg+xml"
+    );
+
+    /**
+     * Checks if the content type is worth compressing. Text content types are, while most binary content types are
+     * already compressed.
+     *
+     * @param contentType Content type
+     *
+     * @return true if the content type is compressible, false otherwise
+     */
+    public static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || COMPRESSIBLE_CONTENT_TYPES.contains(contentType);
+    }
+
     /**
      * Resolves the content type based on the file name's extension.
      *
@@ -0,0 +1,135 @@
+package enterprises.iwakura.akasha.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import enterprises.iwakura.akasha.object.ByteRange;
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class RangeUtils {
+
+    public static final String BYTES_UNIT_PREFIX = "bytes=";
+    public static final int MAX_RANGES = 16;
+
+    /**
+     * Parses the value of the Range header. Overlapping and adjacent ranges are merged.
+     *
+     * @param rangeHeader   Value of the Range header, may be null
+     * @param fileSizeBytes Size of the whole file
+     *
+     * @return Satisfiable byte ranges, empty list if none of the ranges is satisfiable, or null if the header is
+     * missing, malformed or requests too many ranges and should be ignored
+     */
+    public static List<ByteRange> parseRangeHeader(String rangeHeader, long fileSizeBytes) {
+        if (rangeHeader == null || !rangeHeader.regionMatches(true, 0, BYTES_UNIT_PREFIX, 0,
+            BYTES_UNIT_PREFIX.length())) {
+            return null;
+        }
+
+        var rangeSpecs = rangeHeader.substring(BYTES_UNIT_PREFIX.length()).split(",");
+        if (rangeSpecs.length > MAX_RANGES) {
+            return null;
+        }
+
+        var ranges = new ArrayList<ByteRange>();
+
+        for (var rangeSpec : rangeSpecs) {
+            rangeSpec = rangeSpec.trim();
+            var indexOfDash = rangeSpec.indexOf('-');
+
+            if (indexOfDash == -1) {
+                return null;
+            }
+
+            try {
+                var startSpec = rangeSpec.substring(0, indexOfDash).trim();
+                var endSpec = rangeSpec.substring(indexOfDash + 1).trim();
+
+                if (startSpec.isEmpty()) {
+                    // Suffix range, such as "-500" for the last 500 bytes
+                    var suffixLength = Long.parseLong(endSpec);
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    if (suffixLength > 0 && fileSizeBytes > 0) {
+                        ranges.add(new ByteRange(Math.max(0, fileSizeBytes - suffixLength), fileSizeBytes - 1));
+                    }
+                    continue;
+                }
+
+                var start = Long.parseLong(startSpec);
+                var end = endSpec.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endSpec);
+
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < fileSizeBytes) {
+                    ranges.add(new ByteRange(start, Math.min(end, fileSizeBytes - 1)));
+                }
+            } catch (NumberFormatException exception) {
+                return null;
+            }
+        }
+
+        return mergeRanges(ranges);
+    }
+
+    /**
+     * Checks if the value of the If-Range header matches the current representation of the file, so the Range header
+     * should be honored. Entity tags are compared using the strong comparison, so weak entity tags never match.
+     *
+     * @param ifRangeHeader      Value of the If-Range header, may be null
+     * @param entityTag          Entity tag of the file, may be null
+     * @param lastModifiedMillis Last modification time of the file, 0 if unknown
+     *
+     * @return true if the Range header should be honored, false if the whole file should be sent
+     */
+    public static boolean isIfRangeSatisfied(String ifRangeHeader, String entityTag, long lastModifiedMillis) {
+        if (ifRangeHeader == null) {
+            return true;
+        }
+
+        ifRangeHeader = ifRangeHeader.trim();
+        if (ifRangeHeader.startsWith("\"") || ifRangeHeader.startsWith("W/")) {
+            return ifRangeHeader.equals(entityTag);
+        }
+        if (lastModifiedMillis <= 0) {
+            return false;
+        }
+
+        // HTTP dates have a precision of seconds
+        return ConditionalRequestUtils.parseHttpDate(ifRangeHeader) == lastModifiedMillis / 1000;
+    }
+
+    /**
+     * Sorts the ranges and merges the overlapping and adjacent ones.
+     *
+     * @param ranges Byte ranges
+     *
+     * @return Merged byte ranges
+     */
+    private static List<ByteRange> mergeRanges(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+        var mergedRanges = new ArrayList<ByteRange>();
+        var current = ranges.get(0);
+
+        for (int i = 1; i < ranges.size(); i++) {
+            var next = ranges.get(i);
+            if (next.getStart() <= current.getEnd() + 1) {
+                current = new ByteRange(current.getStart(), Math.max(current.getEnd(), next.getEnd()));
+            } else {
+                mergedRanges.add(current);
+                current = next;
+            }
+        }
+
+        mergedRanges.add(current);
+        return mergedRanges;
+    }
+}
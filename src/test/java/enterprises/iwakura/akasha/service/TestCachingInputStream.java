@@ -0,0 +1,101 @@
+package enterprises.iwakura.akasha.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.service.FileCacheService.CachingInputStream;
+
+public class TestCachingInputStream {
+
+    private final ByteArrayOutputStream cacheFile = new ByteArrayOutputStream();
+    private final AtomicLong progress = new AtomicLong();
+    private final AtomicBoolean downloaded = new AtomicBoolean();
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    private CachingInputStream createCachingInputStream(InputStream inputStream, OutputStream outputStream,
+        long expectedSizeBytes, boolean followed) {
+        return new CachingInputStream(inputStream, outputStream, expectedSizeBytes, progress::set, () -> followed,
+            () -> downloaded.set(true), () -> aborted.set(true), task -> false);
+    }
+
+    @Test
+    public void testCompletesFullyReadFiles() throws IOException {
+        try (var cachingInputStream = createCachingInputStream(new ByteArrayInputStream(new byte[1000]), cacheFile,
+            1000, false)) {
+            cachingInputStream.readAllBytes();
+        }
+
+        assertTrue(downloaded.get());
+        assertFalse(aborted.get());
+        assertEquals(1000, progress.get());
+        assertArrayEquals(new byte[1000], cacheFile.toByteArray());
+    }
+
+    @Test
+    public void testAbortsTruncatedFiles() throws IOException {
+        try (var cachingInputStream = createCachingInputStream(new ByteArrayInputStream(new byte[999]), cacheFile,
+            1000, false)) {
+            cachingInputStream.readAllBytes();
+        }
+
+        assertFalse(downloaded.get());
+        assertTrue(aborted.get());
+    }
+
+    @Test
+    public void testAbortsFilesFailingToClose() throws IOException {
+        var outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        try (var cachingInputStream = createCachingInputStream(new ByteArrayInputStream(new byte[1000]),
+            outputStream, 1000, false)) {
+            cachingInputStream.readAllBytes();
+        }
+
+        assertFalse(downloaded.get());
+        assertTrue(aborted.get());
+    }
+
+    @Test
+    public void testPublishesSingleByteReadsWhenFollowed() throws IOException {
+        try (var cachingInputStream = createCachingInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3}),
+            cacheFile, 3, true)) {
+            cachingInputStream.read();
+            assertEquals(1, progress.get());
+            // Followers read the cache file, so the byte must be flushed before it is published
+            assertArrayEquals(new byte[] {1}, cacheFile.toByteArray());
+
+            cachingInputStream.read(new byte[2], 0, 2);
+            assertEquals(3, progress.get());
+        }
+    }
+
+    @Test
+    public void testDefersPublishingWhenNotFollowed() throws IOException {
+        try (var cachingInputStream = createCachingInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3}),
+            cacheFile, 3, false)) {
+            cachingInputStream.read(new byte[2], 0, 2);
+            assertEquals(0, progress.get());
+            assertEquals(0, cacheFile.size());
+
+            cachingInputStream.readAllBytes();
+            assertEquals(3, progress.get());
+            assertTrue(downloaded.get());
+        }
+    }
+}
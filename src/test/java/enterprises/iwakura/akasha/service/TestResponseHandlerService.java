@@ -0,0 +1,226 @@
+package enterprises.iwakura.akasha.service;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.Gson;
+
+import enterprises.iwakura.akasha.AkashaConfiguration;
+import enterprises.iwakura.akasha.config.FileCacheConfiguration;
+import enterprises.iwakura.akasha.object.ReadContext;
+import io.javalin.Javalin;
+
+public class TestResponseHandlerService {
+
+    private static final byte[] DATA = createData(1024 * 1024);
+
+    private final AtomicInteger closedInputStreams = new AtomicInteger();
+    private final Semaphore responses = new Semaphore(0);
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @TempDir
+    private Path tempDirectory;
+
+    private Javalin javalin;
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.write(tempDirectory.resolve("file.bin"), DATA);
+
+        var fileCacheConfiguration = new FileCacheConfiguration();
+        var configuration = new AkashaConfiguration(new Gson()) {
+            @Override
+            public FileCacheConfiguration getFileCache() {
+                return fileCacheConfiguration;
+            }
+        };
+        var responseHandlerService = new ResponseHandlerService(configuration, new Gson());
+
+        javalin = Javalin.create()
+            .get("/stream", ctx -> {
+                var readContext = new ReadContext(trackClose(new ByteArrayInputStream(DATA)), "file.bin",
+                    DATA.length);
+                readContext.setRangeOpener((offset, length) -> trackClose(
+                    new ByteArrayInputStream(DATA, (int) offset, (int) length)));
+                readContext.setEntityTag("\"etag\"");
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx)
+                    .thenRun(responses::release));
+            })
+            .get("/mapped", ctx -> {
+                var fileChannel = FileChannel.open(file);
+                var readContext = new ReadContext(trackClose(InputStream.nullInputStream()), "file.bin",
+                    DATA.length);
+                readContext.setFileChannel(fileChannel);
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx)
+                    .whenComplete((ignored, throwable) -> closeQuietly(fileChannel))
+                    .thenRun(responses::release));
+            })
+            .get("/buffer", ctx -> {
+                var readContext = new ReadContext(trackClose(InputStream.nullInputStream()), "file.bin",
+                    DATA.length);
+                readContext.setByteBuffer(ByteBuffer.wrap(DATA).asReadOnlyBuffer());
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx)
+                    .thenRun(responses::release));
+            })
+            .get("/unbounded-ranges", ctx -> {
+                var readContext = new ReadContext(trackClose(new ByteArrayInputStream(DATA)), "file.bin",
+                    DATA.length);
+                // Ranges continue until the end of the file
+                readContext.setRangeOpener((offset, length) -> trackClose(
+                    new ByteArrayInputStream(DATA, (int) offset, DATA.length - (int) offset)));
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx)
+                    .thenRun(responses::release));
+            })
+            .get("/unknown-size", ctx -> {
+                var readContext = new ReadContext(trackClose(new ByteArrayInputStream(DATA)), "file.bin", -1);
+                readContext.setRangeOpener((offset, length) -> trackClose(
+                    new ByteArrayInputStream(DATA, (int) offset, (int) length)));
+                ctx.future(() -> responseHandlerService.respondWithReadContext(readContext, ctx)
+                    .thenRun(responses::release));
+            })
+            .start(0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        javalin.stop();
+        httpClient.close();
+    }
+
+    private InputStream trackClose(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                closedInputStreams.incrementAndGet();
+                super.close();
+            }
+        };
+    }
+
+    private static void closeQuietly(FileChannel fileChannel) {
+        try {
+            fileChannel.close();
+        } catch (IOException ignored) {
+            // Test file is deleted with the temporary directory
+        }
+    }
+
+    private HttpResponse<byte[]> get(String path, String... headers) throws Exception {
+        var requestBuilder = HttpRequest.newBuilder(URI.create("http://localhost:%d%s".formatted(javalin.port(), path)));
+        if (headers.length > 0) {
+            requestBuilder.headers(headers);
+        }
+        return httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private void awaitResponses(int count) throws InterruptedException {
+        assertTrue(responses.tryAcquire(count, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWritesWholeFiles() throws Exception {
+        for (var path : new String[] {"/stream", "/mapped", "/buffer"}) {
+            var response = get(path);
+            assertEquals(200, response.statusCode());
+            assertEquals(String.valueOf(DATA.length), response.headers().firstValue("Content-Length").orElseThrow());
+            assertArrayEquals(DATA, response.body(), path);
+        }
+        awaitResponses(3);
+        assertEquals(3, closedInputStreams.get());
+    }
+
+    @Test
+    public void testWritesSingleRanges() throws Exception {
+        for (var path : new String[] {"/stream", "/mapped", "/buffer"}) {
+            var response = get(path, "Range", "bytes=1000-199999");
+            assertEquals(206, response.statusCode());
+            assertEquals("bytes 1000-199999/%d".formatted(DATA.length),
+                response.headers().firstValue("Content-Range").orElseThrow());
+            assertArrayEquals(Arrays.copyOfRange(DATA, 1000, 200_000), response.body(), path);
+        }
+        awaitResponses(3);
+        // Range of the stream is opened separately, both streams are closed
+        assertEquals(4, closedInputStreams.get());
+    }
+
+    @Test
+    public void testWritesMultipleRanges() throws Exception {
+        var response = get("/stream", "Range", "bytes=0-9,100000-100009");
+        assertEquals(206, response.statusCode());
+
+        var contentType = response.headers().firstValue("Content-Type").orElseThrow();
+        var boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        var body = response.body();
+        assertEquals(String.valueOf(body.length), response.headers().firstValue("Content-Length").orElseThrow());
+
+        var text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.startsWith("--" + boundary + "\r\n"));
+        assertTrue(text.endsWith("\r\n--" + boundary + "--\r\n"));
+        var firstPart = text.indexOf("\r\n\r\n") + 4;
+        assertArrayEquals(Arrays.copyOfRange(DATA, 0, 10), Arrays.copyOfRange(body, firstPart, firstPart + 10));
+        var secondPart = text.indexOf("\r\n\r\n", firstPart) + 4;
+        assertArrayEquals(Arrays.copyOfRange(DATA, 100_000, 100_010),
+            Arrays.copyOfRange(body, secondPart, secondPart + 10));
+    }
+
+    @Test
+    public void testBoundsRangesToRequestedLength() throws Exception {
+        var response = get("/unbounded-ranges", "Range", "bytes=0-9,100000-100009");
+        assertEquals(206, response.statusCode());
+
+        var body = response.body();
+        assertEquals(String.valueOf(body.length), response.headers().firstValue("Content-Length").orElseThrow());
+        var text = new String(body, StandardCharsets.ISO_8859_1);
+        var secondPart = text.indexOf("\r\n\r\n", text.indexOf("\r\n\r\n") + 4) + 4;
+        assertArrayEquals(Arrays.copyOfRange(DATA, 100_000, 100_010),
+            Arrays.copyOfRange(body, secondPart, secondPart + 10));
+        awaitResponses(1);
+    }
+
+    @Test
+    public void testAnswersConditionalRequestsWithoutContent() throws Exception {
+        var response = get("/stream", "If-None-Match", "\"etag\"");
+        assertEquals(304, response.statusCode());
+        assertEquals(0, response.body().length);
+        awaitResponses(1);
+        assertEquals(1, closedInputStreams.get());
+    }
+
+    @Test
+    public void testStreamsFilesOfUnknownSizeChunked() throws Exception {
+        var response = get("/unknown-size", "Range", "bytes=0-9");
+        // Ranges cannot be resolved against an unknown size, so the whole file is sent
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Length").isEmpty());
+        assertEquals("chunked", response.headers().firstValue("Transfer-Encoding").orElseThrow());
+        assertArrayEquals(DATA, response.body());
+        awaitResponses(1);
+        assertEquals(1, closedInputStreams.get());
+    }
+}
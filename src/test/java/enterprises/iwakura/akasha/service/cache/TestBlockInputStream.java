@@ -0,0 +1,42 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class TestBlockInputStream {
+
+    private static final byte[] DATA = createData(10_000);
+    private static final int BLOCK_SIZE_BYTES = 1024;
+
+    @Test
+    public void testReadsRangesAcrossBlocks() throws IOException {
+        var closed = new AtomicBoolean();
+        var blockOpener = new BlockInputStream.BlockOpener() {
+            @Override
+            public InputStream open(int blockIndex, long offsetInBlock, long length) {
+                // Parts continue until the end of the file
+                var offset = (int) (blockIndex * BLOCK_SIZE_BYTES + offsetInBlock);
+                return new ByteArrayInputStream(DATA, offset, DATA.length - offset);
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        try (var inputStream = new BlockInputStream(blockOpener, BLOCK_SIZE_BYTES, 1000, 5000)) {
+            assertArrayEquals(Arrays.copyOfRange(DATA, 1000, 6000), inputStream.readAllBytes());
+        }
+        assertTrue(closed.get());
+    }
+}
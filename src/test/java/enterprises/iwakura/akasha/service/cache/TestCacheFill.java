@@ -0,0 +1,78 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.service.FileCacheService.CachingInputStream;
+
+public class TestCacheFill {
+
+    private static final byte[] DATA = createData(100_000);
+
+    private final CacheFill cacheFill = new CacheFill();
+
+    @TempDir
+    private Path tempDirectory;
+
+    private CachingInputStream startFill(ReadContext readContext) throws IOException {
+        var fileCachePath = tempDirectory.resolve("file.bin.part");
+        var cachingInputStream = new CachingInputStream(readContext.getInputStream(),
+            Files.newOutputStream(fileCachePath), DATA.length, cacheFill::progress, cacheFill::isFollowed,
+            () -> cacheFill.complete(fileCachePath), () -> cacheFill.fail(new IOException("Cache fill was aborted")),
+            task -> false);
+        cacheFill.start(fileCachePath, readContext);
+        return cachingInputStream;
+    }
+
+    private ReadContext createReadContext() {
+        var readContext = new ReadContext(new ByteArrayInputStream(DATA), "file.bin", DATA.length);
+        readContext.setRangeOpener((offset, length) -> new ByteArrayInputStream(DATA, (int) offset, (int) length));
+        return readContext;
+    }
+
+    @Test
+    public void testFollowersReadRestFromDataSourceWhenLeaderClosesEarly() throws IOException {
+        var leaderInputStream = startFill(createReadContext());
+        var followerReadContext = cacheFill.follow().orElseThrow();
+
+        try (var followerInputStream = followerReadContext.getInputStream();
+            var rangeInputStream = followerReadContext.getRangeOpener().open(60_000, 10_000)) {
+            leaderInputStream.readNBytes(30_000);
+            assertArrayEquals(Arrays.copyOf(DATA, 10_000), followerInputStream.readNBytes(10_000));
+
+            // Leader disconnects while followers are reading
+            leaderInputStream.close();
+
+            assertArrayEquals(Arrays.copyOfRange(DATA, 10_000, DATA.length), followerInputStream.readAllBytes());
+            assertArrayEquals(Arrays.copyOfRange(DATA, 60_000, 70_000), rangeInputStream.readAllBytes());
+        }
+        assertFalse(cacheFill.isFollowed());
+    }
+
+    @Test
+    public void testFollowersFailWithoutRangeSupport() throws IOException {
+        var readContext = createReadContext();
+        readContext.setRangeOpener(null);
+        var leaderInputStream = startFill(readContext);
+
+        try (var followerInputStream = cacheFill.follow().orElseThrow().getInputStream()) {
+            leaderInputStream.readNBytes(30_000);
+            leaderInputStream.close();
+
+            assertArrayEquals(Arrays.copyOf(DATA, 30_000), followerInputStream.readNBytes(30_000));
+            assertThrows(IOException.class, followerInputStream::read);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+public class TestEvictionPolicy {
+
+    private static FileCacheContext createContext(String filePath, long fileSizeBytes) {
+        var fileCacheContext = new FileCacheContext(new FileCacheKey("test", filePath));
+        fileCacheContext.setFileSizeBytes(fileSizeBytes);
+        return fileCacheContext;
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        var policy = new LruEvictionPolicy();
+        var first = createContext("first", 100);
+        var second = createContext("second", 100);
+        var third = createContext("third", 100);
+        policy.onAdd(first);
+        policy.onAdd(second);
+        policy.onAdd(third);
+        policy.onHit(first);
+
+        var candidate = createContext("new", 100);
+        assertEquals(List.of(second, third), policy.selectVictims(candidate, 150));
+
+        policy.onRemove(second);
+        assertEquals(List.of(third), policy.selectVictims(candidate, 100));
+        assertTrue(policy.selectVictims(candidate, 1000).isEmpty());
+    }
+
+    @Test
+    public void testWindowTinyLfuAlwaysAdmitsCandidates() {
+        var policy = new WindowTinyLfuEvictionPolicy(1000);
+        var popular = createContext("popular", 400);
+        var unpopular = createContext("unpopular", 400);
+        policy.onAdd(popular);
+        policy.onAdd(unpopular);
+
+        for (int i = 0; i < 5; i++) {
+            policy.recordAccess(popular.getKey());
+            policy.onHit(popular);
+        }
+        policy.recordAccess(unpopular.getKey());
+
+        // Candidate was never accessed, it still pushes the less frequent entry out of the window
+        var candidate = createContext("candidate", 400);
+        assertEquals(List.of(unpopular), policy.selectVictims(candidate, 400));
+        assertEquals(List.of(unpopular, popular), policy.selectVictims(candidate, 800));
+        assertTrue(policy.selectVictims(candidate, 1000).isEmpty());
+    }
+
+    @Test
+    public void testWindowTinyLfuEvictsLessFrequentOfWindowAndProbationEntries() {
+        var policy = new WindowTinyLfuEvictionPolicy(1000);
+        var probationEntry = createContext("probation", 400);
+        var windowEntry = createContext("window", 400);
+        policy.onAdd(probationEntry);
+        policy.onAdd(windowEntry);
+        policy.recordAccess(probationEntry.getKey());
+
+        var candidate = createContext("candidate", 400);
+        // Window entry was accessed just as often as the probation entry
+        policy.recordAccess(windowEntry.getKey());
+        assertEquals(List.of(windowEntry), policy.selectVictims(candidate, 400));
+
+        policy.recordAccess(windowEntry.getKey());
+        assertEquals(List.of(probationEntry), policy.selectVictims(candidate, 400));
+        // Entries surviving the contest are evicted last
+        assertEquals(List.of(probationEntry, windowEntry), policy.selectVictims(candidate, 800));
+    }
+
+    @Test
+    public void testFrequencySketchEstimatesFrequency() {
+        var sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 7; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+
+        assertEquals(7, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+        assertEquals(0, sketch.frequency("missing"));
+    }
+}
@@ -0,0 +1,45 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.object.FileCacheContext;
+import enterprises.iwakura.akasha.object.FileCacheKey;
+
+public class TestFileCacheCatalog {
+
+    private final FileCacheCatalog fileCacheCatalog = new FileCacheCatalog();
+
+    private FileCacheContext commit(FileCacheKey key) {
+        var fileCacheContext = new FileCacheContext(key);
+        fileCacheContext.setFileSizeBytes(100);
+        assertTrue(fileCacheCatalog.tryReserve(fileCacheContext, Long.MAX_VALUE));
+        fileCacheCatalog.commit(fileCacheContext);
+        return fileCacheContext;
+    }
+
+    @Test
+    public void testIndexesBlocksAndVariantsByFile() {
+        var fileKey = new FileCacheKey("test", "file");
+        commit(fileKey);
+        var block = commit(fileKey.withBlockIndex(0));
+        var variant = commit(fileKey.withContentEncoding("gzip"));
+        commit(new FileCacheKey("test", "other").withBlockIndex(0));
+
+        assertEquals(Set.of(block, variant), Set.copyOf(fileCacheCatalog.getBlocksAndVariants(fileKey)));
+
+        // Replaced entries stay indexed under the same key
+        var replacedBlock = commit(fileKey.withBlockIndex(0));
+        fileCacheCatalog.remove(variant);
+        assertEquals(List.of(replacedBlock), fileCacheCatalog.getBlocksAndVariants(fileKey));
+
+        fileCacheCatalog.remove(replacedBlock);
+        assertTrue(fileCacheCatalog.getBlocksAndVariants(fileKey).isEmpty());
+        assertEquals(200, fileCacheCatalog.getTotalSizeBytes());
+    }
+}
@@ -0,0 +1,84 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestMemoryCacheTier {
+
+    private static final byte[] DATA = createData(8 * 1024 * 1024);
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final MemoryCacheTier memoryCacheTier = new MemoryCacheTier(64 * 1024 * 1024);
+
+    @TempDir
+    private Path tempDirectory;
+
+    @AfterEach
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private static BufferPoolMXBean directBufferPool() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+            .filter(bufferPool -> bufferPool.getName().equals("direct"))
+            .findFirst()
+            .orElseThrow();
+    }
+
+    @Test
+    public void testLoadsConcurrentPromotionsOnce() throws Exception {
+        var fileId = UUID.randomUUID();
+        var fileCachePath = Files.write(tempDirectory.resolve(fileId.toString()), DATA);
+        var directBufferPool = directBufferPool();
+        var directBufferCount = directBufferPool.getCount();
+
+        var threads = 8;
+        var start = new CountDownLatch(1);
+        var loads = new ArrayList<Future<ByteBuffer>>();
+        for (int thread = 0; thread < threads; thread++) {
+            loads.add(executorService.submit((Callable<ByteBuffer>) () -> {
+                start.await();
+                return memoryCacheTier.load(fileId, fileCachePath, DATA.length).orElseThrow();
+            }));
+        }
+        start.countDown();
+
+        for (var load : loads) {
+            assertEquals(ByteBuffer.wrap(DATA), load.get());
+        }
+        // Loads after the promotion completed reuse the held buffer as well
+        assertEquals(ByteBuffer.wrap(DATA), memoryCacheTier.load(fileId, fileCachePath, DATA.length).orElseThrow());
+
+        assertTrue(directBufferPool.getCount() <= directBufferCount + 1);
+        assertEquals(DATA.length, memoryCacheTier.getTotalSizeBytes());
+    }
+
+    @Test
+    public void testRethrowsFailedLoads() {
+        var fileId = UUID.randomUUID();
+        var missingPath = tempDirectory.resolve(fileId.toString());
+
+        assertThrows(IOException.class, () -> memoryCacheTier.load(fileId, missingPath, 100));
+        assertEquals(0, memoryCacheTier.getTotalSizeBytes());
+    }
+}
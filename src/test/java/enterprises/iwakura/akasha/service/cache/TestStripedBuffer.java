@@ -0,0 +1,74 @@
+package enterprises.iwakura.akasha.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TestStripedBuffer {
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testDrainsEventsInOrderUntilFull() {
+        var stripedBuffer = new StripedBuffer<Integer>(1);
+        for (int i = 0; i < 16; i++) {
+            assertTrue(stripedBuffer.offer(i));
+        }
+        assertFalse(stripedBuffer.offer(16));
+
+        var drained = new ArrayList<Integer>();
+        stripedBuffer.drainTo(drained::add);
+        assertEquals(IntStream.range(0, 16).boxed().toList(), drained);
+
+        assertTrue(stripedBuffer.offer(16));
+        drained.clear();
+        stripedBuffer.drainTo(drained::add);
+        assertEquals(List.of(16), drained);
+    }
+
+    @Test
+    public void testDrainsEveryRecordedEventOnce() throws InterruptedException {
+        var stripedBuffer = new StripedBuffer<Integer>(4);
+        var recorded = new AtomicInteger();
+        var drained = new AtomicInteger();
+        var threads = 8;
+        var done = new CountDownLatch(threads);
+
+        for (int thread = 0; thread < threads; thread++) {
+            executorService.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (stripedBuffer.offer(i)) {
+                        recorded.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        // Single consumer drains while the producers are recording
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            stripedBuffer.drainTo(event -> drained.incrementAndGet());
+        }
+        stripedBuffer.drainTo(event -> drained.incrementAndGet());
+
+        assertTrue(recorded.get() > 0);
+        assertEquals(recorded.get(), drained.get());
+    }
+}
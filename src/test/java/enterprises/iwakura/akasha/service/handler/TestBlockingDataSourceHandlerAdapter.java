@@ -0,0 +1,74 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.LocalDataSource;
+import enterprises.iwakura.akasha.object.ReadContext;
+
+public class TestBlockingDataSourceHandlerAdapter {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicReference<Thread> readThread = new AtomicReference<>();
+    private final BlockingDataSourceHandlerAdapter<LocalDataSource> adapter = new BlockingDataSourceHandlerAdapter<>(
+        new LocalDataSourceHandler() {
+            @Override
+            public ReadContext read(LocalDataSource dataSource, String path) throws IOException {
+                readThread.set(Thread.currentThread());
+                return super.read(dataSource, path);
+            }
+        }, executor);
+
+    @TempDir
+    private Path rootDirectory;
+
+    private LocalDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dataSource = new LocalDataSource();
+        dataSource.setName("local");
+        dataSource.setRootDirectory(rootDirectory.toString());
+        Files.writeString(rootDirectory.resolve("file.txt"), "hello world");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRunsBlockingCallsOnExecutor() throws IOException {
+        var readContext = adapter.readAsync(dataSource, "file.txt").join();
+        try (var inputStream = readContext.getInputStream()) {
+            assertEquals("hello world", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertNotEquals(Thread.currentThread(), readThread.get());
+        assertEquals(adapter.getHandler().isCacheable(), adapter.isCacheable());
+    }
+
+    @Test
+    public void testCompletesExceptionallyWithHandlerExceptions() {
+        var exception = assertThrows(CompletionException.class, () -> adapter.readAsync(dataSource, "missing.txt")
+            .join());
+        assertTrue(assertInstanceOf(HandledException.class, exception.getCause()).isNotFound());
+    }
+}
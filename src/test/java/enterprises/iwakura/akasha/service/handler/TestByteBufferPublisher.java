@@ -0,0 +1,187 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TestByteBufferPublisher {
+
+    private static final byte[] DATA = createData(10 * ByteBufferPublisher.CHUNK_SIZE_BYTES + 123);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private InputStream trackedInputStream() {
+        return new FilterInputStream(new ByteArrayInputStream(DATA)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                var count = super.read(b, off, len);
+                bytesRead.addAndGet(Math.max(0, count));
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+    }
+
+    @Test
+    public void testReadsOnlyRequestedChunks() throws Exception {
+        var subscriber = new RecordingSubscriber();
+        ByteBufferPublisher.ofInputStream(trackedInputStream(), executor).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        subscriber.take();
+        subscriber.take();
+        Thread.sleep(50);
+        assertTrue(subscriber.signals.isEmpty());
+        assertEquals(2L * ByteBufferPublisher.CHUNK_SIZE_BYTES, bytesRead.get());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        var received = 2 * ByteBufferPublisher.CHUNK_SIZE_BYTES;
+        Object signal;
+        while ((signal = subscriber.take()) instanceof ByteBuffer buffer) {
+            received += buffer.remaining();
+        }
+        assertEquals(RecordingSubscriber.COMPLETE, signal);
+        assertEquals(DATA.length, received);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testClosesInputStreamWhenCancelled() throws Exception {
+        var subscriber = new RecordingSubscriber();
+        ByteBufferPublisher.ofInputStream(trackedInputStream(), executor).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.take();
+        subscriber.subscription.cancel();
+        for (int i = 0; i < 100 && !closed.get(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(closed.get());
+        assertEquals(ByteBufferPublisher.CHUNK_SIZE_BYTES, bytesRead.get());
+    }
+
+    @Test
+    public void testOpensInputStreamOnFirstRequest() throws Exception {
+        var opened = new AtomicBoolean();
+        var subscriber = new RecordingSubscriber();
+        ByteBufferPublisher.ofInputStream(() -> {
+            opened.set(true);
+            throw new IOException("Unavailable");
+        }, executor).subscribe(subscriber);
+        assertFalse(opened.get());
+
+        subscriber.subscription.request(1);
+        assertInstanceOf(IOException.class, subscriber.take());
+        assertTrue(opened.get());
+    }
+
+    @Test
+    public void testPublishesByteBuffers() throws Exception {
+        var byteBuffer = ByteBuffer.wrap(DATA, 10, 20);
+        var publisher = ByteBufferPublisher.ofByteBuffer(byteBuffer, executor);
+        var subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        var received = new byte[20];
+        var position = 0;
+        Object signal;
+        while ((signal = subscriber.take()) instanceof ByteBuffer buffer) {
+            var remaining = buffer.remaining();
+            buffer.get(received, position, remaining);
+            position += remaining;
+        }
+        assertEquals(RecordingSubscriber.COMPLETE, signal);
+        assertArrayEquals(Arrays.copyOfRange(DATA, 10, 30), received);
+        assertEquals(20, byteBuffer.remaining());
+
+        // Publishers can be subscribed to once
+        var secondSubscriber = new RecordingSubscriber();
+        publisher.subscribe(secondSubscriber);
+        assertInstanceOf(IllegalStateException.class, secondSubscriber.take());
+    }
+
+    @Test
+    public void testRejectsNonPositiveRequests() throws Exception {
+        var subscriber = new RecordingSubscriber();
+        ByteBufferPublisher.ofInputStream(trackedInputStream(), executor).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertInstanceOf(IllegalArgumentException.class, subscriber.take());
+        for (int i = 0; i < 100 && !closed.get(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Subscriber recording its signals, byte buffers followed by a throwable or {@link #COMPLETE}.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        private static final Object COMPLETE = new Object();
+
+        private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            signals.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            signals.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add(COMPLETE);
+        }
+
+        private Object take() throws InterruptedException {
+            var signal = signals.poll(5, TimeUnit.SECONDS);
+            assertTrue(signal != null, "No signal received");
+            return signal;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.object.SftpDataSource;
+
+public class TestChannelPool {
+
+    private static SftpDataSource.Pool createSettings(int maxSessions, int maxChannelsPerSession) {
+        var settings = new SftpDataSource.Pool();
+        settings.setMinSessions(0);
+        settings.setMaxSessions(maxSessions);
+        settings.setMaxChannelsPerSession(maxChannelsPerSession);
+        settings.setMinIdleChannels(0);
+        settings.setBorrowTimeoutSeconds(0);
+        return settings;
+    }
+
+    @Test
+    public void testReusesReturnedChannels() throws IOException {
+        var connector = new FakeConnector();
+        var pool = new ChannelPool<>("test", createSettings(1, 2), connector, () -> {});
+
+        FakeChannel channel;
+        try (var lease = pool.borrow()) {
+            channel = lease.getChannel();
+            assertEquals(1, pool.getActiveChannelCount());
+        }
+        assertEquals(0, pool.getActiveChannelCount());
+        assertEquals(1, pool.getIdleChannelCount());
+
+        try (var lease = pool.borrow()) {
+            assertSame(channel, lease.getChannel());
+        }
+        assertEquals(1, connector.channels.size());
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    @Test
+    public void testOpensChannelsOnExistingSessionsBeforeConnectingNewOnes() throws IOException {
+        var connector = new FakeConnector();
+        var pool = new ChannelPool<>("test", createSettings(2, 2), connector, () -> {});
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        assertSame(first.getChannel().session, second.getChannel().session);
+        assertEquals(1, pool.getSessionCount());
+
+        var third = pool.borrow();
+        assertNotSame(first.getChannel().session, third.getChannel().session);
+        assertEquals(2, pool.getSessionCount());
+        assertEquals(3, pool.getActiveChannelCount());
+    }
+
+    @Test
+    public void testTimesOutWhenExhausted() throws IOException {
+        var pool = new ChannelPool<>("test", createSettings(1, 1), new FakeConnector(), () -> {});
+
+        var lease = pool.borrow();
+        assertThrows(IOException.class, pool::borrow);
+        assertEquals(0, pool.getWaitingBorrowerCount());
+
+        lease.close();
+        pool.borrow().close();
+    }
+
+    @Test
+    public void testWaitingBorrowerReceivesReturnedChannel() throws Exception {
+        var settings = createSettings(1, 1);
+        settings.setBorrowTimeoutSeconds(10);
+        var pool = new ChannelPool<>("test", settings, new FakeConnector(), () -> {});
+
+        var lease = pool.borrow();
+        var borrowed = new ArrayList<FakeChannel>();
+        var borrower = new Thread(() -> {
+            try (var waitingLease = pool.borrow()) {
+                borrowed.add(waitingLease.getChannel());
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        });
+        borrower.start();
+
+        while (pool.getWaitingBorrowerCount() == 0) {
+            Thread.sleep(1);
+        }
+        lease.close();
+        borrower.join(10_000);
+
+        assertEquals(List.of(lease.getChannel()), borrowed);
+    }
+
+    @Test
+    public void testDiscardsUnhealthyChannels() throws IOException {
+        var connector = new FakeConnector();
+        var pool = new ChannelPool<>("test", createSettings(1, 1), connector, () -> {});
+
+        FakeChannel channel;
+        try (var lease = pool.borrow()) {
+            channel = lease.getChannel();
+        }
+        channel.healthy = false;
+
+        try (var lease = pool.borrow()) {
+            assertNotSame(channel, lease.getChannel());
+        }
+        assertTrue(channel.closed);
+        assertEquals(1, pool.getIdleChannelCount());
+    }
+
+    @Test
+    public void testReconnectsDisconnectedSessions() throws IOException {
+        var connector = new FakeConnector();
+        var pool = new ChannelPool<>("test", createSettings(1, 1), connector, () -> {});
+
+        FakeChannel channel;
+        try (var lease = pool.borrow()) {
+            channel = lease.getChannel();
+        }
+        channel.session.connected = false;
+
+        try (var lease = pool.borrow()) {
+            assertNotSame(channel.session, lease.getChannel().session);
+        }
+        assertTrue(channel.session.closed);
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    @Test
+    public void testEvictsIdleChannelsAndSessions() throws IOException {
+        var settings = createSettings(1, 2);
+        settings.setIdleTimeoutSeconds(-1);
+        var connector = new FakeConnector();
+        var pool = new ChannelPool<>("test", settings, connector, () -> {});
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        first.close();
+        second.close();
+        assertEquals(2, pool.getIdleChannelCount());
+
+        pool.evictIdle();
+        assertEquals(0, pool.getIdleChannelCount());
+        assertEquals(0, pool.getActiveChannelCount());
+        assertEquals(0, pool.getSessionCount());
+        assertTrue(connector.channels.stream().allMatch(channel -> channel.closed));
+        assertTrue(first.getChannel().session.closed);
+    }
+
+    @Test
+    public void testKeepsMinimumIdleChannels() throws IOException {
+        var settings = createSettings(1, 2);
+        settings.setIdleTimeoutSeconds(-1);
+        settings.setMinIdleChannels(1);
+        var pool = new ChannelPool<>("test", settings, new FakeConnector(), () -> {});
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        first.close();
+        second.close();
+
+        pool.evictIdle();
+        assertEquals(1, pool.getIdleChannelCount());
+        assertEquals(1, pool.getSessionCount());
+        assertFalse(second.getChannel().closed);
+    }
+
+    @Test
+    public void testReleasesSlotWhenConnectingFails() throws IOException {
+        var connector = new FakeConnector();
+        connector.failConnecting = true;
+        var pool = new ChannelPool<>("test", createSettings(1, 1), connector, () -> {});
+
+        assertThrows(IOException.class, pool::borrow);
+        assertEquals(0, pool.getSessionCount());
+        assertEquals(0, pool.getActiveChannelCount());
+
+        connector.failConnecting = false;
+        pool.borrow().close();
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    private static class FakeSession {
+
+        private boolean connected = true;
+        private boolean closed;
+    }
+
+    private static class FakeChannel {
+
+        private final FakeSession session;
+        private boolean healthy = true;
+        private boolean closed;
+
+        private FakeChannel(FakeSession session) {
+            this.session = session;
+        }
+    }
+
+    private static class FakeConnector implements ChannelPool.Connector<FakeSession, FakeChannel> {
+
+        private final List<FakeChannel> channels = new ArrayList<>();
+        private boolean failConnecting;
+
+        @Override
+        public FakeSession openSession() throws IOException {
+            if (failConnecting) {
+                throw new IOException("Connection refused");
+            }
+            return new FakeSession();
+        }
+
+        @Override
+        public FakeChannel openChannel(FakeSession session) {
+            var channel = new FakeChannel(session);
+            channels.add(channel);
+            return channel;
+        }
+
+        @Override
+        public boolean isConnected(FakeSession session) {
+            return session.connected;
+        }
+
+        @Override
+        public boolean isHealthy(FakeChannel channel, boolean validate) {
+            return channel.healthy;
+        }
+
+        @Override
+        public void closeChannel(FakeChannel channel) {
+            channel.closed = true;
+        }
+
+        @Override
+        public void closeSession(FakeSession session) {
+            session.closed = true;
+        }
+    }
+}
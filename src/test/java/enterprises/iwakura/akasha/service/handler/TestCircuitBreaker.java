@@ -0,0 +1,173 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.config.CircuitBreakerConfiguration;
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.object.SftpDataSource;
+
+public class TestCircuitBreaker {
+
+    private final AtomicLong currentTimeMillis = new AtomicLong(1_000_000);
+
+    private CircuitBreaker createCircuitBreaker() {
+        var settings = new CircuitBreakerConfiguration();
+        settings.setFailureThreshold(3);
+        settings.setInitialBackoffSeconds(1);
+        settings.setMaxBackoffSeconds(3);
+        return new CircuitBreaker("test", settings, () -> {}, currentTimeMillis::get);
+    }
+
+    private static void fail(CircuitBreaker circuitBreaker, int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.onFailure();
+        }
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        var circuitBreaker = createCircuitBreaker();
+
+        fail(circuitBreaker, 2);
+        circuitBreaker.onSuccess();
+        fail(circuitBreaker, 2);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        fail(circuitBreaker, 1);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(1000, circuitBreaker.getRetryAfterMillis());
+    }
+
+    @Test
+    public void testLetsSingleProbeThroughAfterBackoff() {
+        var circuitBreaker = createCircuitBreaker();
+        fail(circuitBreaker, 3);
+
+        currentTimeMillis.addAndGet(1000);
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void testDoublesBackoffUpToMaximumWhenProbeFails() {
+        var circuitBreaker = createCircuitBreaker();
+        fail(circuitBreaker, 3);
+
+        currentTimeMillis.addAndGet(1000);
+        fail(circuitBreaker, 1);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2000, circuitBreaker.getRetryAfterMillis());
+
+        currentTimeMillis.addAndGet(2000);
+        fail(circuitBreaker, 1);
+        assertEquals(3000, circuitBreaker.getRetryAfterMillis());
+
+        currentTimeMillis.addAndGet(3000);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+
+        // Backoff starts over once the breaker closed
+        fail(circuitBreaker, 3);
+        assertEquals(1000, circuitBreaker.getRetryAfterMillis());
+    }
+
+    @Test
+    public void testGuardedHandlerFailsFastWhileOpen() throws IOException {
+        var circuitBreaker = createCircuitBreaker();
+        var calls = new AtomicLong();
+        var rejections = new AtomicLong();
+        var handler = new CircuitBreakingDataSourceHandler<SftpDataSource>(new SftpDataSourceHandler(null) {
+            @Override
+            public List<String> list(SftpDataSource dataSource, String directoryPath) throws IOException {
+                calls.incrementAndGet();
+                if (directoryPath.equals("missing")) {
+                    throw new HandledException("No such path", null).asNotFound();
+                }
+                throw new IOException("Connection refused");
+            }
+        }, dataSource -> circuitBreaker, dataSource -> rejections.incrementAndGet());
+        var dataSource = new SftpDataSource();
+
+        // Missing files mean the data source responded
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HandledException.class, () -> handler.list(dataSource, "missing"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> handler.list(dataSource, "files"));
+        }
+        var exception = assertThrows(HandledException.class, () -> handler.list(dataSource, "files"));
+        assertEquals(503, exception.getStatusCode());
+        assertEquals(1, exception.getRetryAfterSeconds());
+        assertEquals(8, calls.get());
+        assertEquals(1, rejections.get());
+    }
+
+    @Test
+    public void testGuardsRangesOfReadFiles() throws IOException {
+        var circuitBreaker = createCircuitBreaker();
+        var rejections = new AtomicLong();
+        var handler = new CircuitBreakingDataSourceHandler<SftpDataSource>(new SftpDataSourceHandler(null) {
+            @Override
+            public ReadContext read(SftpDataSource dataSource, String path) {
+                var readContext = new ReadContext(InputStream.nullInputStream(), path, 100);
+                readContext.setRangeOpener((offset, length) -> {
+                    throw new IOException("Connection refused");
+                });
+                return readContext;
+            }
+        }, dataSource -> circuitBreaker, dataSource -> rejections.incrementAndGet());
+
+        var readContext = handler.read(new SftpDataSource(), "file");
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> readContext.getRangeOpener().open(0, 10));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        var exception = assertThrows(HandledException.class, () -> readContext.getRangeOpener().open(0, 10));
+        assertEquals(503, exception.getStatusCode());
+        assertEquals(1, rejections.get());
+    }
+
+    @Test
+    public void testRecordsErrorsAsFailures() {
+        var circuitBreaker = createCircuitBreaker();
+        var handler = new CircuitBreakingDataSourceHandler<SftpDataSource>(new SftpDataSourceHandler(null) {
+            @Override
+            public List<String> list(SftpDataSource dataSource, String directoryPath) {
+                throw new StackOverflowError();
+            }
+        }, dataSource -> circuitBreaker, dataSource -> {});
+        var dataSource = new SftpDataSource();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(StackOverflowError.class, () -> handler.list(dataSource, "files"));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // Failed probe opens the breaker again instead of leaving it half-open
+        currentTimeMillis.addAndGet(1000);
+        assertThrows(StackOverflowError.class, () -> handler.list(dataSource, "files"));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        currentTimeMillis.addAndGet(2000);
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+}
@@ -0,0 +1,169 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.HttpDataSource;
+
+public class TestHttpDataSourceHandler {
+
+    private final HttpDataSourceHandler handler = new HttpDataSourceHandler();
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final List<String> requestedPaths = new CopyOnWriteArrayList<>();
+    private volatile boolean rangesSupported = true;
+
+    private HttpServer server;
+    private HttpDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        dataSource = new HttpDataSource();
+        dataSource.setName("origin");
+        dataSource.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/files");
+        dataSource.getHeaders().put("Authorization", "Bearer token");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testReadsFilesFromOrigin() throws IOException {
+        var data = createData(5000);
+        files.put("/files/dir/file name.bin", data);
+
+        var readContext = handler.read(dataSource, "dir/file name.bin");
+        try (var inputStream = readContext.getInputStream()) {
+            assertEquals("file name.bin", readContext.getFileName());
+            assertEquals(data.length, readContext.getFileSizeBytes());
+            assertEquals("\"5000\"", readContext.getEntityTag());
+            assertEquals(784111777000L, readContext.getLastModifiedMillis());
+            assertArrayEquals(data, inputStream.readAllBytes());
+        }
+        assertEquals(List.of("/files/dir/file%20name.bin"), requestedPaths);
+
+        var exception = assertThrows(HandledException.class, () -> handler.read(dataSource, "missing.bin"));
+        assertTrue(exception.isNotFound());
+    }
+
+    @Test
+    public void testReadsFilesOfUnknownSize() throws IOException {
+        var data = createData(5000);
+        files.put("/files/chunked.bin", data);
+
+        var readContext = handler.read(dataSource, "chunked.bin");
+        try (var inputStream = readContext.getInputStream()) {
+            assertEquals(-1, readContext.getFileSizeBytes());
+            assertArrayEquals(data, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testPassesRangesThrough() throws IOException {
+        var data = createData(5000);
+        files.put("/files/file.bin", data);
+
+        try (var inputStream = handler.read(dataSource, "file.bin").getRangeOpener().open(1000, 500)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 1500), inputStream.readAllBytes());
+        }
+
+        // Origins not supporting ranges send the whole file
+        rangesSupported = false;
+        try (var inputStream = handler.read(dataSource, "file.bin", 4000, 1000)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 4000, 5000), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testStatsFilesWithHeadRequests() throws IOException {
+        files.put("/files/file.bin", createData(10));
+        files.put("/files/weak.bin", createData(20));
+
+        var fileMetadata = handler.stat(dataSource, "file.bin");
+        assertEquals(10, fileMetadata.getFileSizeBytes());
+        assertEquals("\"10\"", fileMetadata.getEntityTag());
+        assertFalse(fileMetadata.isDirectory());
+
+        // Weak entity tags cannot validate ranges
+        assertNull(handler.stat(dataSource, "weak.bin").getEntityTag());
+        assertTrue(assertThrows(HandledException.class, () -> handler.stat(dataSource, "missing")).isNotFound());
+    }
+
+    @Test
+    public void testRejectsPathsOutsideOfBaseUrl() {
+        files.put("/secret.bin", createData(10));
+
+        var exception = assertThrows(HandledException.class, () -> handler.read(dataSource, "../secret.bin"));
+        assertFalse(exception.isNotFound());
+        assertTrue(requestedPaths.isEmpty());
+    }
+
+    @Test
+    public void testRejectsWritesAndListings() {
+        assertThrows(HandledException.class, () -> handler.write(dataSource, "file.bin",
+            new ByteArrayInputStream(new byte[1])));
+        assertThrows(HandledException.class, () -> handler.list(dataSource, ""));
+    }
+
+    /**
+     * Stand-in for an origin file server.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var path = exchange.getRequestURI().getPath();
+            requestedPaths.add(exchange.getRequestURI().getRawPath());
+            var data = files.get(path);
+            if (data == null || !"Bearer token".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.sendResponseHeaders(data == null ? 404 : 401, -1);
+                return;
+            }
+
+            var headers = exchange.getResponseHeaders();
+            headers.set("ETag", path.endsWith("weak.bin") ? "W/\"" + data.length + "\"" : "\"" + data.length + "\"");
+            headers.set("Last-Modified", "Sun, 06 Nov 1994 08:49:37 GMT");
+            var range = exchange.getRequestHeaders().getFirst("Range");
+            var statusCode = 200;
+            if (range != null && rangesSupported) {
+                var bounds = range.substring("bytes=".length()).split("-");
+                data = Arrays.copyOfRange(data, Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]) + 1);
+                statusCode = 206;
+            }
+
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                headers.set("Content-Length", String.valueOf(data.length));
+                exchange.sendResponseHeaders(statusCode, -1);
+                return;
+            }
+            // Files named chunked are sent without their size
+            exchange.sendResponseHeaders(statusCode, path.endsWith("chunked.bin") ? 0 : data.length);
+            exchange.getResponseBody().write(data);
+        }
+    }
+}
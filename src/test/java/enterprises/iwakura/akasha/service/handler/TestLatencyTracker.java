@@ -0,0 +1,66 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class TestLatencyTracker {
+
+    private final AtomicLong currentTimeMillis = new AtomicLong(1_000_000);
+    private final LatencyTracker latencyTracker = new LatencyTracker(currentTimeMillis::get);
+
+    @Test
+    public void testAveragesRecordedLatency() {
+        assertEquals(-1, latencyTracker.getAverageMillis());
+
+        latencyTracker.record(100);
+        assertEquals(100, latencyTracker.getAverageMillis(), 0.001);
+        latencyTracker.record(200);
+        assertEquals(120, latencyTracker.getAverageMillis(), 0.001);
+    }
+
+    @Test
+    public void testPenalizesFailures() {
+        latencyTracker.recordFailure();
+        assertEquals(LatencyTracker.FAILURE_PENALTY_MILLIS, latencyTracker.getAverageMillis(), 0.001);
+        latencyTracker.recordFailure();
+        assertEquals(2 * LatencyTracker.FAILURE_PENALTY_MILLIS, latencyTracker.getAverageMillis(), 0.001);
+
+        // Failures do not count as samples
+        assertEquals(-1, latencyTracker.getPercentileMillis(50));
+    }
+
+    @Test
+    public void testForgetsStaleLatency() {
+        latencyTracker.recordFailure();
+        currentTimeMillis.addAndGet(LatencyTracker.FORGET_AFTER_MILLIS + 1);
+        assertEquals(-1, latencyTracker.getAverageMillis());
+
+        latencyTracker.record(10);
+        assertEquals(10, latencyTracker.getAverageMillis(), 0.001);
+    }
+
+    @Test
+    public void testComputesPercentilesOfRecentSamples() {
+        for (int i = 1; i < LatencyTracker.MIN_PERCENTILE_SAMPLES; i++) {
+            latencyTracker.record(i);
+        }
+        assertEquals(-1, latencyTracker.getPercentileMillis(95));
+
+        for (int i = LatencyTracker.MIN_PERCENTILE_SAMPLES; i <= 100; i++) {
+            latencyTracker.record(i);
+        }
+        assertEquals(95, latencyTracker.getPercentileMillis(95));
+        assertEquals(50, latencyTracker.getPercentileMillis(50));
+
+        // Only the most recent samples are kept
+        for (int i = 0; i < LatencyTracker.WINDOW_SIZE; i++) {
+            latencyTracker.record(1000);
+        }
+        assertEquals(1000, latencyTracker.getPercentileMillis(1));
+        assertTrue(latencyTracker.getAverageMillis() > 900);
+    }
+}
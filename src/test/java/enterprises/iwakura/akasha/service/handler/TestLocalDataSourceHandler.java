@@ -0,0 +1,116 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.LocalDataSource;
+
+public class TestLocalDataSourceHandler {
+
+    private final LocalDataSourceHandler handler = new LocalDataSourceHandler();
+
+    @TempDir
+    private Path tempDirectory;
+
+    private Path rootDirectory;
+    private LocalDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        rootDirectory = Files.createDirectories(tempDirectory.resolve("root"));
+        dataSource = new LocalDataSource();
+        dataSource.setName("local");
+        dataSource.setRootDirectory(rootDirectory.toString());
+    }
+
+    @Test
+    public void testReadsFilesAndRanges() throws IOException {
+        Files.createDirectories(rootDirectory.resolve("dir"));
+        Files.writeString(rootDirectory.resolve("dir/file.txt"), "hello world");
+
+        var readContext = handler.read(dataSource, "dir/file.txt");
+        try (var inputStream = readContext.getInputStream()) {
+            assertEquals("file.txt", readContext.getFileName());
+            assertEquals(11, readContext.getFileSizeBytes());
+            assertNotNull(readContext.getFileChannel());
+            assertNotNull(readContext.getEntityTag());
+            assertEquals("hello world", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        try (var inputStream = readContext.getRangeOpener().open(6, 5)) {
+            assertEquals("world", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (var inputStream = handler.read(dataSource, "dir/file.txt", 0, 5)) {
+            assertEquals("hello", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testReportsMissingFilesAsNotFound() {
+        var exception = assertThrows(HandledException.class, () -> handler.stat(dataSource, "missing.txt"));
+        assertTrue(exception.isNotFound());
+        exception = assertThrows(HandledException.class, () -> handler.read(dataSource, "missing.txt"));
+        assertTrue(exception.isNotFound());
+    }
+
+    @Test
+    public void testRejectsPathsOutsideOfRootDirectory() throws IOException {
+        Files.writeString(tempDirectory.resolve("secret.txt"), "secret");
+        Files.createSymbolicLink(rootDirectory.resolve("link.txt"), tempDirectory.resolve("secret.txt"));
+
+        for (var path : List.of("../secret.txt", "dir/../../secret.txt", "link.txt",
+            tempDirectory.resolve("secret.txt").toString())) {
+            var exception = assertThrows(HandledException.class, () -> handler.read(dataSource, path));
+            assertFalse(exception.isNotFound());
+        }
+        assertThrows(HandledException.class, () -> handler.write(dataSource, "../written.txt",
+            new ByteArrayInputStream(new byte[1])));
+        assertFalse(Files.exists(tempDirectory.resolve("written.txt")));
+    }
+
+    @Test
+    public void testWritesFilesAtomically() throws IOException {
+        var data = "new content".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(data.length, handler.write(dataSource, "a/b/file.txt", new ByteArrayInputStream(data)));
+        assertArrayEquals(data, Files.readAllBytes(rootDirectory.resolve("a/b/file.txt")));
+
+        handler.write(dataSource, "a/b/file.txt", new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(rootDirectory.resolve("a/b/file.txt")));
+
+        try (var files = Files.list(rootDirectory.resolve("a/b"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testListsFilesRelativeToRootDirectory() throws IOException {
+        Files.createDirectories(rootDirectory.resolve("dir/nested"));
+        Files.writeString(rootDirectory.resolve("top.txt"), "");
+        Files.writeString(rootDirectory.resolve("dir/file.txt"), "");
+        Files.writeString(rootDirectory.resolve("dir/nested/file.txt"), "");
+        Files.writeString(rootDirectory.resolve("dir/.file.txt.0.tmp"), "");
+
+        assertEquals(List.of("dir/file.txt", "dir/nested/file.txt", "top.txt"),
+            handler.list(dataSource, "").stream().sorted().toList());
+        assertEquals(List.of("dir/file.txt", "dir/nested/file.txt"),
+            handler.list(dataSource, "dir").stream().sorted().toList());
+        assertTrue(assertThrows(HandledException.class, () -> handler.list(dataSource, "missing")).isNotFound());
+    }
+}
@@ -0,0 +1,206 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.DataSource;
+import enterprises.iwakura.akasha.object.FileMetadata;
+import enterprises.iwakura.akasha.object.LocalDataSource;
+import enterprises.iwakura.akasha.object.ReadContext;
+import enterprises.iwakura.akasha.object.ReplicatedDataSource;
+import enterprises.iwakura.akasha.service.PrometheusService;
+
+public class TestReplicatedDataSourceHandler {
+
+    private final Map<String, Long> delaysMillis = new ConcurrentHashMap<>();
+    private final Set<String> failingMembers = ConcurrentHashMap.newKeySet();
+    private final List<String> requestedMembers = new CopyOnWriteArrayList<>();
+    private final MemberHandler memberHandler = new MemberHandler();
+    private final ReplicatedDataSourceHandler handler = new ReplicatedDataSourceHandler(null,
+        new PrometheusService(null), null, null, null, null) {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected DataSourceHandler<DataSource> findMemberHandler(DataSource member) {
+            return (DataSourceHandler<DataSource>) (DataSourceHandler<?>) memberHandler;
+        }
+    };
+
+    @TempDir
+    private Path tempDirectory;
+
+    private ReplicatedDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dataSource = new ReplicatedDataSource();
+        dataSource.setName("replicated");
+        dataSource.getHedging().setMinDelayMillis(10);
+        dataSource.getHedging().setMaxDelayMillis(50);
+        for (var name : List.of("a", "b", "c")) {
+            var rootDirectory = Files.createDirectories(tempDirectory.resolve(name));
+            Files.writeString(rootDirectory.resolve("file.txt"), name);
+            var member = new LocalDataSource();
+            member.setName(name);
+            member.setRootDirectory(rootDirectory.toString());
+            dataSource.getMembers().add(member);
+        }
+    }
+
+    private String readFile() throws IOException {
+        try (var inputStream = handler.read(dataSource, "file.txt").getInputStream()) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testPrefersFastestMember() throws IOException {
+        dataSource.getHedging().setEnabled(false);
+        delaysMillis.put("a", 100L);
+
+        // Members without known latency are probed first
+        assertEquals("a", readFile());
+        assertEquals("b", readFile());
+        assertEquals("c", readFile());
+
+        requestedMembers.clear();
+        for (int i = 0; i < 5; i++) {
+            assertFalse(readFile().equals("a"));
+        }
+        assertFalse(requestedMembers.contains("a"));
+    }
+
+    @Test
+    public void testTracksLatencyPerReplicatedDataSource() throws IOException {
+        dataSource.getHedging().setEnabled(false);
+        delaysMillis.put("a", 100L);
+        for (int i = 0; i < 3; i++) {
+            readFile();
+        }
+
+        // Members of the same name in another replicated data source have no known latency yet
+        var otherDataSource = new ReplicatedDataSource();
+        otherDataSource.setName("other");
+        otherDataSource.getHedging().setEnabled(false);
+        otherDataSource.getMembers().addAll(dataSource.getMembers());
+        try (var inputStream = handler.read(otherDataSource, "file.txt").getInputStream()) {
+            assertEquals("a", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testHedgesSlowMember() throws IOException {
+        delaysMillis.put("a", 2000L);
+
+        var startedAtMillis = System.currentTimeMillis();
+        assertEquals("b", readFile());
+        assertTrue(System.currentTimeMillis() - startedAtMillis < 1000);
+        assertEquals(List.of("a", "b"), requestedMembers);
+    }
+
+    @Test
+    public void testFailsOverToNextMember() throws IOException {
+        dataSource.getHedging().setEnabled(false);
+        failingMembers.add("a");
+
+        assertEquals("b", readFile());
+        assertEquals(List.of("a", "b"), requestedMembers);
+
+        try (var inputStream = handler.read(dataSource, "file.txt", 0, 1)) {
+            assertEquals("c", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        // Failed members are ranked last
+        requestedMembers.clear();
+        assertFalse(readFile().equals("a"));
+        assertFalse(requestedMembers.contains("a"));
+
+        failingMembers.addAll(List.of("b", "c"));
+        assertThrows(IOException.class, this::readFile);
+    }
+
+    @Test
+    public void testReportsMissingFilesAsNotFound() {
+        failingMembers.add("a");
+
+        var exception = assertThrows(HandledException.class, () -> handler.stat(dataSource, "missing.txt"));
+        assertTrue(exception.isNotFound());
+    }
+
+    @Test
+    public void testWritesToQuorumOfMembers() throws IOException {
+        failingMembers.add("c");
+
+        var data = "replicated".getBytes(StandardCharsets.UTF_8);
+        assertEquals(data.length, handler.write(dataSource, "dir/new.txt", new ByteArrayInputStream(data)));
+        for (var member : List.of("a", "b")) {
+            assertEquals("replicated", Files.readString(tempDirectory.resolve(member).resolve("dir/new.txt")));
+        }
+
+        failingMembers.add("b");
+        var exception = assertThrows(IOException.class, () -> handler.write(dataSource, "other.txt",
+            new ByteArrayInputStream(data)));
+        assertEquals(2, exception.getSuppressed().length);
+    }
+
+    /**
+     * Local data source handler delaying or failing requests by member name.
+     */
+    private class MemberHandler extends LocalDataSourceHandler {
+
+        private void request(LocalDataSource dataSource) throws IOException {
+            requestedMembers.add(dataSource.getName());
+            try {
+                Thread.sleep(delaysMillis.getOrDefault(dataSource.getName(), 0L));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            if (failingMembers.contains(dataSource.getName())) {
+                throw new IOException("Member " + dataSource.getName() + " is down");
+            }
+        }
+
+        @Override
+        public ReadContext read(LocalDataSource dataSource, String path) throws IOException {
+            request(dataSource);
+            return super.read(dataSource, path);
+        }
+
+        @Override
+        public InputStream read(LocalDataSource dataSource, String path, long offset, long length)
+            throws IOException {
+            request(dataSource);
+            return super.read(dataSource, path, offset, length);
+        }
+
+        @Override
+        public FileMetadata stat(LocalDataSource dataSource, String path)
+            throws IOException {
+            request(dataSource);
+            return super.stat(dataSource, path);
+        }
+
+        @Override
+        public long write(LocalDataSource dataSource, String path, InputStream data) throws IOException {
+            request(dataSource);
+            return super.write(dataSource, path, data);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import enterprises.iwakura.akasha.exception.HandledException;
+import enterprises.iwakura.akasha.object.S3DataSource;
+
+public class TestS3DataSourceHandler {
+
+    private static final Pattern PART_NUMBER_PATTERN = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    private final S3DataSourceHandler handler = new S3DataSourceHandler();
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadingParts = new AtomicInteger();
+    private final AtomicInteger maxUploadingParts = new AtomicInteger();
+    private final AtomicInteger abortedUploads = new AtomicInteger();
+    private volatile int failingPartNumber;
+
+    private HttpServer server;
+    private S3DataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executorService);
+        server.start();
+
+        dataSource = new S3DataSource();
+        dataSource.setName("s3");
+        dataSource.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        dataSource.setBucket("bucket");
+        dataSource.setKeyPrefix("assets/");
+        dataSource.setAccessKeyId("access-key");
+        dataSource.setSecretAccessKey("secret-key");
+        dataSource.getMultipartUpload().setPartSizeBytes(1024);
+        dataSource.getMultipartUpload().setMaxInFlightParts(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testReadsObjectsAndRanges() throws IOException {
+        var data = createData(5000);
+        objects.put("/bucket/assets/dir/file name.bin", data);
+
+        var readContext = handler.read(dataSource, "dir/file name.bin");
+        try (var inputStream = readContext.getInputStream()) {
+            assertEquals("file name.bin", readContext.getFileName());
+            assertEquals(data.length, readContext.getFileSizeBytes());
+            assertEquals("\"" + data.length + "\"", readContext.getEntityTag());
+            assertTrue(readContext.getLastModifiedMillis() > 0);
+            assertArrayEquals(data, inputStream.readAllBytes());
+        }
+
+        try (var inputStream = readContext.getRangeOpener().open(1000, 500)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 1500), inputStream.readAllBytes());
+        }
+
+        var exception = assertThrows(HandledException.class, () -> handler.read(dataSource, "missing.bin"));
+        assertTrue(exception.isNotFound());
+    }
+
+    @Test
+    public void testStatsObjectsAndDirectories() throws IOException {
+        objects.put("/bucket/assets/dir/file.bin", createData(10));
+
+        var fileMetadata = handler.stat(dataSource, "dir/file.bin");
+        assertEquals(10, fileMetadata.getFileSizeBytes());
+        assertEquals("\"10\"", fileMetadata.getEntityTag());
+        assertTrue(handler.stat(dataSource, "dir").isDirectory());
+        assertTrue(assertThrows(HandledException.class, () -> handler.stat(dataSource, "missing")).isNotFound());
+    }
+
+    @Test
+    public void testWritesSmallObjectsInSingleRequest() throws IOException {
+        var data = createData(100);
+
+        assertEquals(data.length, handler.write(dataSource, "small.bin", new ByteArrayInputStream(data)));
+        assertArrayEquals(data, objects.get("/bucket/assets/small.bin"));
+        assertTrue(uploads.isEmpty());
+    }
+
+    @Test
+    public void testWritesLargeObjectsInParts() throws IOException {
+        var data = createData(10 * 1024 + 10);
+
+        assertEquals(data.length, handler.write(dataSource, "large.bin", new ByteArrayInputStream(data)));
+        assertArrayEquals(data, objects.get("/bucket/assets/large.bin"));
+        assertTrue(maxUploadingParts.get() <= 2);
+        assertTrue(uploads.isEmpty());
+    }
+
+    @Test
+    public void testAbortsFailedUploads() {
+        failingPartNumber = 3;
+
+        assertThrows(IOException.class, () -> handler.write(dataSource, "large.bin",
+            new ByteArrayInputStream(createData(10 * 1024))));
+        assertEquals(1, abortedUploads.get());
+        assertTrue(uploads.isEmpty());
+        assertTrue(objects.isEmpty());
+    }
+
+    @Test
+    public void testListsObjectsAcrossPages() throws IOException {
+        for (var key : List.of("a.bin", "dir/b.bin", "dir/c.bin", "dir/nested/d.bin", "dir/empty/")) {
+            objects.put("/bucket/assets/" + key, new byte[0]);
+        }
+        objects.put("/bucket/other/e.bin", new byte[0]);
+
+        assertEquals(List.of("a.bin", "dir/b.bin", "dir/c.bin", "dir/nested/d.bin"),
+            handler.list(dataSource, "").stream().sorted().toList());
+        assertEquals(List.of("dir/b.bin", "dir/c.bin", "dir/nested/d.bin"),
+            handler.list(dataSource, "dir").stream().sorted().toList());
+        assertTrue(assertThrows(HandledException.class, () -> handler.list(dataSource, "missing")).isNotFound());
+    }
+
+    /**
+     * Stand-in for S3, implementing the subset of the API used by the handler.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!isSignatureValid(exchange)) {
+                respond(exchange, 403, "<Error><Code>SignatureDoesNotMatch</Code></Error>");
+                return;
+            }
+
+            var path = exchange.getRequestURI().getPath();
+            var query = parseQuery(exchange.getRequestURI().getRawQuery());
+            var body = exchange.getRequestBody().readAllBytes();
+
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    if (query.containsKey("list-type")) {
+                        listObjects(exchange, query);
+                    } else {
+                        getObject(exchange, path);
+                    }
+                }
+                case "HEAD" -> getObject(exchange, path);
+                case "PUT" -> {
+                    if (query.containsKey("partNumber")) {
+                        uploadPart(exchange, query, body);
+                    } else {
+                        objects.put(path, body);
+                        respond(exchange, 200, null);
+                    }
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        var uploadId = "upload-" + uploads.size();
+                        uploads.put(uploadId, new ConcurrentHashMap<>());
+                        respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>%s</UploadId>"
+                            .formatted(uploadId) + "</InitiateMultipartUploadResult>");
+                    } else {
+                        completeUpload(exchange, path, query, new String(body, StandardCharsets.UTF_8));
+                    }
+                }
+                case "DELETE" -> {
+                    uploads.remove(query.get("uploadId"));
+                    abortedUploads.incrementAndGet();
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> respond(exchange, 405, null);
+            }
+        }
+    }
+
+    private boolean isSignatureValid(HttpExchange exchange) {
+        var requestHeaders = exchange.getRequestHeaders();
+        var headers = new HashMap<String, String>();
+        if (requestHeaders.containsKey("Range")) {
+            headers.put("range", requestHeaders.getFirst("Range"));
+        }
+        var uri = URI.create("http://" + requestHeaders.getFirst("Host") + exchange.getRequestURI().toString());
+        var now = LocalDateTime.parse(requestHeaders.getFirst("X-Amz-Date"),
+            S3RequestSigner.DATE_TIME_FORMATTER).toInstant(ZoneOffset.UTC);
+        var expectedHeaders = new S3RequestSigner("us-east-1", "access-key", "secret-key")
+            .sign(exchange.getRequestMethod(), uri, headers, requestHeaders.getFirst("X-Amz-Content-Sha256"), now);
+        return expectedHeaders.get("authorization").equals(requestHeaders.getFirst("Authorization"));
+    }
+
+    private void getObject(HttpExchange exchange, String path) throws IOException {
+        var data = objects.get(path);
+        if (data == null) {
+            respond(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+            return;
+        }
+
+        var headers = exchange.getResponseHeaders();
+        headers.set("ETag", "\"" + data.length + "\"");
+        headers.set("Last-Modified", "Sun, 06 Nov 1994 08:49:37 GMT");
+        var range = exchange.getRequestHeaders().getFirst("Range");
+        var statusCode = 200;
+        if (range != null) {
+            var bounds = range.substring("bytes=".length()).split("-");
+            data = Arrays.copyOfRange(data, Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]) + 1);
+            statusCode = 206;
+        }
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            headers.set("Content-Length", String.valueOf(data.length));
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, data.length);
+        exchange.getResponseBody().write(data);
+    }
+
+    private void listObjects(HttpExchange exchange, Map<String, String> query) throws IOException {
+        var prefix = query.getOrDefault("prefix", "");
+        var maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "2"));
+        var startAfter = query.getOrDefault("continuation-token", "");
+        var keys = new TreeMap<>(objects).keySet().stream()
+            .filter(key -> key.startsWith("/bucket/"))
+            .map(key -> key.substring("/bucket/".length()))
+            .filter(key -> key.startsWith(prefix) && key.compareTo(startAfter) > 0)
+            .toList();
+
+        var page = keys.subList(0, Math.min(maxKeys, keys.size()));
+        var body = new StringBuilder("<ListBucketResult>");
+        page.forEach(key -> body.append("<Contents><Key>%s</Key></Contents>".formatted(key)));
+        body.append("<IsTruncated>%s</IsTruncated>".formatted(keys.size() > page.size()));
+        if (keys.size() > page.size()) {
+            body.append("<NextContinuationToken>%s</NextContinuationToken>".formatted(page.get(page.size() - 1)));
+        }
+        respond(exchange, 200, body.append("</ListBucketResult>").toString());
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query, byte[] body) throws IOException {
+        var partNumber = Integer.parseInt(query.get("partNumber"));
+        maxUploadingParts.accumulateAndGet(uploadingParts.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            uploadingParts.decrementAndGet();
+        }
+
+        if (partNumber == failingPartNumber) {
+            respond(exchange, 500, "<Error><Code>InternalError</Code></Error>");
+            return;
+        }
+        uploads.get(query.get("uploadId")).put(partNumber, body);
+        exchange.getResponseHeaders().set("ETag", "\"part-" + partNumber + "\"");
+        respond(exchange, 200, null);
+    }
+
+    private void completeUpload(HttpExchange exchange, String path, Map<String, String> query, String body)
+        throws IOException {
+        var parts = uploads.remove(query.get("uploadId"));
+        var outputStream = new ByteArrayOutputStream();
+        var matcher = PART_NUMBER_PATTERN.matcher(body);
+        while (matcher.find()) {
+            outputStream.write(parts.get(Integer.parseInt(matcher.group(1))));
+        }
+        objects.put(path, outputStream.toByteArray());
+        respond(exchange, 200, "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var query = new HashMap<String, String>();
+        if (rawQuery != null) {
+            for (var parameter : rawQuery.split("&")) {
+                var separatorIndex = parameter.indexOf('=');
+                query.put(separatorIndex == -1 ? parameter : parameter.substring(0, separatorIndex),
+                    separatorIndex == -1 ? "" : URLDecoder.decode(parameter.substring(separatorIndex + 1),
+                        StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        if (body == null || exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,111 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.object.ReadContext;
+
+public class TestSegmentedInputStream {
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testReassemblesSegmentsInOrder() throws IOException {
+        var data = createData(10_000);
+        var random = new Random(7);
+        ReadContext.RangeOpener rangeOpener = (offset, length) -> {
+            // Segments complete out of order
+            sleep(random.nextInt(5));
+            return new ByteArrayInputStream(data, (int) offset, (int) length);
+        };
+
+        try (var inputStream = new SegmentedInputStream(rangeOpener, 1024, 4, executorService, 0, data.length)) {
+            assertArrayEquals(data, inputStream.readAllBytes());
+        }
+        try (var inputStream = new SegmentedInputStream(rangeOpener, 1000, 3, executorService, 1500, 5000)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1500, 6500), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testBoundsSegmentsInFlight() throws IOException {
+        var data = createData(64 * 100);
+        var openSegments = new AtomicInteger();
+        var maxOpenSegments = new AtomicInteger();
+        ReadContext.RangeOpener rangeOpener = (offset, length) -> {
+            maxOpenSegments.accumulateAndGet(openSegments.incrementAndGet(), Math::max);
+            sleep(1);
+            return new ByteArrayInputStream(data, (int) offset, (int) length) {
+                @Override
+                public void close() {
+                    openSegments.decrementAndGet();
+                }
+            };
+        };
+
+        try (var inputStream = new SegmentedInputStream(rangeOpener, 64, 3, executorService, 0, data.length)) {
+            assertArrayEquals(data, inputStream.readAllBytes());
+        }
+        assertTrue(maxOpenSegments.get() <= 3);
+    }
+
+    @Test
+    public void testPropagatesSegmentFailures() {
+        var data = createData(4096);
+        ReadContext.RangeOpener rangeOpener = (offset, length) -> {
+            if (offset == 2048) {
+                throw new IOException("Connection reset");
+            }
+            return new ByteArrayInputStream(data, (int) offset, (int) length);
+        };
+
+        var exception = assertThrows(IOException.class, () -> {
+            try (var inputStream = new SegmentedInputStream(rangeOpener, 1024, 2, executorService, 0, data.length)) {
+                inputStream.readAllBytes();
+            }
+        });
+        assertEquals("Connection reset", exception.getMessage());
+    }
+
+    @Test
+    public void testFailsOnTruncatedSegments() {
+        var data = createData(4096);
+        ReadContext.RangeOpener rangeOpener = (offset, length) ->
+            new ByteArrayInputStream(data, (int) offset, (int) length - 1);
+
+        assertThrows(IOException.class, () -> {
+            try (InputStream inputStream = new SegmentedInputStream(rangeOpener, 1024, 2, executorService, 0,
+                data.length)) {
+                inputStream.readAllBytes();
+            }
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package enterprises.iwakura.akasha.service.handler;
+
+import static enterprises.iwakura.akasha.util.TestDataUtils.createData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import enterprises.iwakura.akasha.object.SftpDataSource;
+import enterprises.iwakura.akasha.service.PrometheusService;
+
+public class TestSftpDataSourceHandler {
+
+    private static final byte[] DATA = createData(100_000);
+
+    private final SftpDataSourceHandler handler = new SftpDataSourceHandler(new PrometheusService(null));
+
+    @TempDir
+    private Path rootDirectory;
+
+    private SshServer server;
+    private SftpDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Files.write(rootDirectory.resolve("file.bin"), DATA);
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, session) -> "password".equals(password));
+        server.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(rootDirectory));
+        server.start();
+
+        dataSource = new SftpDataSource();
+        dataSource.setName("sftp");
+        dataSource.setHostname("127.0.0.1");
+        dataSource.setPort(server.getPort());
+        dataSource.setUsername("user");
+        dataSource.setPassword("password");
+        dataSource.getParallelDownload().setEnabled(false);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.stop(true);
+    }
+
+    @Test
+    public void testReadsRangesShorterThanFile() throws IOException {
+        try (var inputStream = handler.read(dataSource, "file.bin", 1000, 500)) {
+            assertArrayEquals(Arrays.copyOfRange(DATA, 1000, 1500), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testReadsRangesInSegments() throws IOException {
+        var parallelDownload = dataSource.getParallelDownload();
+        parallelDownload.setEnabled(true);
+        parallelDownload.setMinSizeBytes(0);
+        parallelDownload.setSegmentSizeBytes(4096);
+
+        try (var inputStream = handler.read(dataSource, "file.bin", 1000, 50_000)) {
+            assertArrayEquals(Arrays.copyOfRange(DATA, 1000, 51_000), inputStream.readAllBytes());
+        }
+    }
+}
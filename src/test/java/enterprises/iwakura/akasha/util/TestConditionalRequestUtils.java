@@ -0,0 +1,50 @@
+package enterprises.iwakura.akasha.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TestConditionalRequestUtils {
+
+    private static final long LAST_MODIFIED_MILLIS = 1_700_000_000_500L;
+    private static final String LAST_MODIFIED_HTTP_DATE = "Tue, 14 Nov 2023 22:13:20 GMT";
+
+    @Test
+    public void testCreatesEntityTagsAndHttpDates() {
+        assertEquals("\"400-18bcfe56804\"", ConditionalRequestUtils.createEntityTag(1024, 1_700_000_000_004L));
+        assertNull(ConditionalRequestUtils.createEntityTag(1024, 0));
+        assertEquals("\"0102ff\"", ConditionalRequestUtils.createEntityTag(new byte[] {1, 2, -1}));
+        assertEquals(LAST_MODIFIED_HTTP_DATE, ConditionalRequestUtils.formatHttpDate(LAST_MODIFIED_MILLIS));
+        assertEquals("Wed, 01 Nov 2023 00:00:00 GMT", ConditionalRequestUtils.formatHttpDate(1_698_796_800_000L));
+        assertEquals(LAST_MODIFIED_MILLIS / 1000, ConditionalRequestUtils.parseHttpDate(LAST_MODIFIED_HTTP_DATE));
+        assertEquals(-1, ConditionalRequestUtils.parseHttpDate("yesterday"));
+    }
+
+    @Test
+    public void testIfNoneMatchUsesWeakComparison() {
+        var entityTag = "\"abc\"";
+        assertTrue(ConditionalRequestUtils.isNotModified("\"abc\"", null, entityTag, LAST_MODIFIED_MILLIS));
+        assertTrue(ConditionalRequestUtils.isNotModified("\"xyz\", W/\"abc\"", null, entityTag, LAST_MODIFIED_MILLIS));
+        assertTrue(ConditionalRequestUtils.isNotModified("*", null, entityTag, LAST_MODIFIED_MILLIS));
+        assertFalse(ConditionalRequestUtils.isNotModified("\"xyz\"", null, entityTag, LAST_MODIFIED_MILLIS));
+        assertFalse(ConditionalRequestUtils.isNotModified("\"abc\"", null, null, LAST_MODIFIED_MILLIS));
+        // If-None-Match takes precedence over If-Modified-Since
+        assertFalse(ConditionalRequestUtils.isNotModified("\"xyz\"", LAST_MODIFIED_HTTP_DATE, entityTag,
+            LAST_MODIFIED_MILLIS));
+    }
+
+    @Test
+    public void testIfModifiedSinceComparesSeconds() {
+        assertTrue(ConditionalRequestUtils.isNotModified(null, LAST_MODIFIED_HTTP_DATE, null, LAST_MODIFIED_MILLIS));
+        assertTrue(ConditionalRequestUtils.isNotModified(null, "Wed, 15 Nov 2023 00:00:00 GMT", null,
+            LAST_MODIFIED_MILLIS));
+        assertFalse(ConditionalRequestUtils.isNotModified(null, "Tue, 14 Nov 2023 22:13:19 GMT", null,
+            LAST_MODIFIED_MILLIS));
+        assertFalse(ConditionalRequestUtils.isNotModified(null, LAST_MODIFIED_HTTP_DATE, null, 0));
+        assertFalse(ConditionalRequestUtils.isNotModified(null, "garbage", null, LAST_MODIFIED_MILLIS));
+        assertFalse(ConditionalRequestUtils.isNotModified(null, null, "\"abc\"", LAST_MODIFIED_MILLIS));
+    }
+}
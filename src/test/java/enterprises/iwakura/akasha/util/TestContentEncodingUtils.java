@@ -0,0 +1,31 @@
+package enterprises.iwakura.akasha.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TestContentEncodingUtils {
+
+    private static final List<String> SUPPORTED_ENCODINGS = List.of("br", "gzip");
+
+    @Test
+    public void testNegotiatesAcceptedEncodingWithHighestQuality() {
+        assertEquals("gzip", ContentEncodingUtils.negotiate("gzip, deflate", SUPPORTED_ENCODINGS));
+        assertEquals("br", ContentEncodingUtils.negotiate("gzip, deflate, br", SUPPORTED_ENCODINGS));
+        assertEquals("gzip", ContentEncodingUtils.negotiate("br;q=0.5, gzip;q=0.8", SUPPORTED_ENCODINGS));
+        assertEquals("br", ContentEncodingUtils.negotiate("*", SUPPORTED_ENCODINGS));
+        assertEquals("gzip", ContentEncodingUtils.negotiate("*;q=0.5, br;q=0", SUPPORTED_ENCODINGS));
+    }
+
+    @Test
+    public void testFallsBackToIdentity() {
+        assertNull(ContentEncodingUtils.negotiate(null, SUPPORTED_ENCODINGS));
+        assertNull(ContentEncodingUtils.negotiate("", SUPPORTED_ENCODINGS));
+        assertNull(ContentEncodingUtils.negotiate("identity", SUPPORTED_ENCODINGS));
+        assertNull(ContentEncodingUtils.negotiate("gzip;q=0, br;q=0", SUPPORTED_ENCODINGS));
+        assertNull(ContentEncodingUtils.negotiate("gzip;q=abc", SUPPORTED_ENCODINGS));
+    }
+}
@@ -0,0 +1,22 @@
+package enterprises.iwakura.akasha.util;
+
+import java.util.Random;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class TestDataUtils {
+
+    /**
+     * Creates random data, which is the same for the same length across test runs.
+     *
+     * @param length Length of the data
+     *
+     * @return Random data
+     */
+    public static byte[] createData(int length) {
+        var data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
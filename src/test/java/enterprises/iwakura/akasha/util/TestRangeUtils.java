@@ -0,0 +1,54 @@
+package enterprises.iwakura.akasha.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import enterprises.iwakura.akasha.object.ByteRange;
+
+public class TestRangeUtils {
+
+    @Test
+    public void testParsesSingleAndSuffixRanges() {
+        assertEquals(List.of(new ByteRange(0, 99)), RangeUtils.parseRangeHeader("bytes=0-99", 1000));
+        assertEquals(List.of(new ByteRange(900, 999)), RangeUtils.parseRangeHeader("bytes=900-", 1000));
+        assertEquals(List.of(new ByteRange(500, 999)), RangeUtils.parseRangeHeader("bytes=-500", 1000));
+        // Ranges past the end of the file are truncated
+        assertEquals(List.of(new ByteRange(990, 999)), RangeUtils.parseRangeHeader("bytes=990-2000", 1000));
+        assertEquals(List.of(new ByteRange(0, 999)), RangeUtils.parseRangeHeader("bytes=-2000", 1000));
+    }
+
+    @Test
+    public void testMergesOverlappingAndAdjacentRanges() {
+        assertEquals(List.of(new ByteRange(0, 199), new ByteRange(500, 599)),
+            RangeUtils.parseRangeHeader("bytes=500-599, 100-199, 0-99", 1000));
+        assertEquals(List.of(new ByteRange(0, 149)), RangeUtils.parseRangeHeader("bytes=0-99,50-149", 1000));
+    }
+
+    @Test
+    public void testIgnoresInvalidAndUnsatisfiableRanges() {
+        assertNull(RangeUtils.parseRangeHeader(null, 1000));
+        assertNull(RangeUtils.parseRangeHeader("items=0-99", 1000));
+        assertNull(RangeUtils.parseRangeHeader("bytes=abc", 1000));
+        assertNull(RangeUtils.parseRangeHeader("bytes=100-50", 1000));
+        assertTrue(RangeUtils.parseRangeHeader("bytes=1000-", 1000).isEmpty());
+        assertTrue(RangeUtils.parseRangeHeader("bytes=-0", 1000).isEmpty());
+    }
+
+    @Test
+    public void testIfRangeMatchesLastModifiedSecondsOrStrongEntityTag() {
+        var lastModifiedMillis = 1_700_000_000_500L;
+        assertTrue(RangeUtils.isIfRangeSatisfied(null, null, lastModifiedMillis));
+        assertTrue(RangeUtils.isIfRangeSatisfied("Tue, 14 Nov 2023 22:13:20 GMT", null, lastModifiedMillis));
+        assertFalse(RangeUtils.isIfRangeSatisfied("Tue, 14 Nov 2023 22:13:21 GMT", null, lastModifiedMillis));
+        assertFalse(RangeUtils.isIfRangeSatisfied("Tue, 14 Nov 2023 22:13:20 GMT", null, 0));
+        assertTrue(RangeUtils.isIfRangeSatisfied("\"etag\"", "\"etag\"", lastModifiedMillis));
+        assertFalse(RangeUtils.isIfRangeSatisfied("\"other\"", "\"etag\"", lastModifiedMillis));
+        assertFalse(RangeUtils.isIfRangeSatisfied("W/\"etag\"", "\"etag\"", lastModifiedMillis));
+    }
+}